@@ -0,0 +1,195 @@
+package net.chriswareham.jt4000;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * This class stress tests the hand-off of incoming control changes to the
+ * user interface. A producer thread sends control changes for every
+ * parameter to the decoder at 10,000 per second, as a fast knob sweep does,
+ * while the benchmark drains the decoder once per display frame. The time to
+ * drain a frame is measured, and the latency from the oldest undrained
+ * control change to the frame that applies it is reported when the trial
+ * ends. The trial fails if any control change was dropped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InputDecoderBenchmark {
+    /**
+     * The number of nanoseconds between control changes sent by the producer.
+     */
+    private static final long EVENT_INTERVAL = TimeUnit.SECONDS.toNanos(1L) / 10_000L;
+
+    /**
+     * The number of nanoseconds between display frames.
+     */
+    private static final long FRAME_INTERVAL = TimeUnit.SECONDS.toNanos(1L) / 60L;
+
+    /**
+     * The number of control change values.
+     */
+    private static final int CC_VALUES = 128;
+
+    /**
+     * The decoder.
+     */
+    private final InputDecoder decoder = new InputDecoder();
+
+    /**
+     * The patch that control changes are applied to.
+     */
+    private final Patch patch = new Patch();
+
+    /**
+     * The control changes the producer sends, for every value of every
+     * parameter.
+     */
+    private final ShortMessage[] messages = new ShortMessage[Parameter.values().length * CC_VALUES];
+
+    /**
+     * The time, from {@link System#nanoTime()}, the oldest control change that
+     * has not been drained was sent, or zero if there is none.
+     */
+    private final AtomicLong oldestPending = new AtomicLong();
+
+    /**
+     * The number of control changes the producer has sent.
+     */
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * The producer thread.
+     */
+    private Thread producer;
+
+    /**
+     * Whether the producer is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * The time, from {@link System#nanoTime()}, of the next display frame.
+     */
+    private long nextFrame;
+
+    /**
+     * The number of frames that applied control changes.
+     */
+    private long frames;
+
+    /**
+     * The total latency of the frames that applied control changes.
+     */
+    private long totalLatency;
+
+    /**
+     * The maximum latency of the frames that applied control changes.
+     */
+    private long maximumLatency;
+
+    /**
+     * Create the control changes and start the producer.
+     *
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidMidiDataException {
+        patch.initialise();
+        for (Parameter parameter : Parameter.values()) {
+            for (int ccValue = 0; ccValue < CC_VALUES; ++ccValue) {
+                messages[parameter.ordinal() * CC_VALUES + ccValue] = new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, parameter.getCcNumber(), ccValue);
+            }
+        }
+        running = true;
+        producer = new Thread(this::produce, "MIDI input producer");
+        producer.setDaemon(true);
+        producer.start();
+        nextFrame = System.nanoTime();
+    }
+
+    /**
+     * Stop the producer and report the latency.
+     *
+     * @throws InterruptedException if interrupted waiting for the producer
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        producer.join();
+        System.out.printf("%nSent %d control changes, dropped %d; %d frames, latency mean %d us, maximum %d us%n",
+            sent.get(), decoder.getDropped(), frames,
+            frames > 0L ? TimeUnit.NANOSECONDS.toMicros(totalLatency / frames) : 0L,
+            TimeUnit.NANOSECONDS.toMicros(maximumLatency));
+        if (decoder.getDropped() > 0L) {
+            throw new IllegalStateException(decoder.getDropped() + " control changes dropped");
+        }
+    }
+
+    /**
+     * Wait for the next display frame.
+     */
+    @Setup(Level.Invocation)
+    public void awaitFrame() {
+        nextFrame += FRAME_INTERVAL;
+        long delay = nextFrame - System.nanoTime();
+        if (delay > 0L) {
+            LockSupport.parkNanos(delay);
+        } else {
+            nextFrame = System.nanoTime();
+        }
+    }
+
+    /**
+     * Benchmark draining the control changes received during a display frame
+     * and applying them to the patch.
+     *
+     * @return whether the patch was updated
+     */
+    @Benchmark
+    public boolean drainFrame() {
+        long oldest = oldestPending.getAndSet(0L);
+        boolean updated = decoder.drain(patch);
+        if (oldest != 0L) {
+            long latency = System.nanoTime() - oldest;
+            totalLatency += latency;
+            maximumLatency = Math.max(maximumLatency, latency);
+            ++frames;
+        }
+        return updated;
+    }
+
+    /**
+     * Send control changes to the decoder at a fixed rate until stopped.
+     */
+    private void produce() {
+        long next = System.nanoTime();
+        int index = 0;
+        while (running) {
+            next += EVENT_INTERVAL;
+            long delay = next - System.nanoTime();
+            if (delay > 0L) {
+                LockSupport.parkNanos(delay);
+            }
+            long now = System.nanoTime();
+            decoder.send(messages[index], now);
+            oldestPending.compareAndSet(0L, now);
+            sent.incrementAndGet();
+            index = (index + 1) % messages.length;
+        }
+    }
+}
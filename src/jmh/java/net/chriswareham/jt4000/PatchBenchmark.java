@@ -0,0 +1,83 @@
+package net.chriswareham.jt4000;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.SysexMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This class benchmarks encoding a patch as a System Exclusive message and
+ * decoding it back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PatchBenchmark {
+    /**
+     * The patch to encode.
+     */
+    private final Patch patch = new Patch();
+
+    /**
+     * The patch to decode into.
+     */
+    private final Patch decoded = new Patch();
+
+    /**
+     * The buffer to encode into and decode from.
+     */
+    private final byte[] dump = new byte[Patch.DUMP_LENGTH];
+
+    /**
+     * Initialise the patch.
+     */
+    @Setup
+    public void setUp() {
+        patch.initialise();
+        patch.setPatchName("BENCH");
+        patch.serialise(dump, 0);
+        decoded.initialise();
+    }
+
+    /**
+     * Benchmark encoding the patch.
+     *
+     * @return the System Exclusive message
+     * @throws InvalidMidiDataException if the patch data is invalid
+     */
+    @Benchmark
+    public SysexMessage serialise() throws InvalidMidiDataException {
+        return patch.serialise();
+    }
+
+    /**
+     * Benchmark encoding the patch into a buffer.
+     *
+     * @return the buffer
+     */
+    @Benchmark
+    public byte[] serialiseInto() {
+        patch.serialise(dump, 0);
+        return dump;
+    }
+
+    /**
+     * Benchmark decoding the patch from a buffer.
+     *
+     * @return the decoded patch
+     * @throws InvalidMidiDataException if the buffer does not hold a valid patch dump
+     */
+    @Benchmark
+    public Patch deserialise() throws InvalidMidiDataException {
+        decoded.deserialise(dump, 0, dump.length);
+        return decoded;
+    }
+}
@@ -0,0 +1,45 @@
+package net.chriswareham.jt4000;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This class benchmarks scaling parameter values to control change values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueUtilsBenchmark {
+    /**
+     * The next parameter value to scale.
+     */
+    private int value;
+
+    /**
+     * Benchmark scaling a value 0-99.
+     *
+     * @return the scaled value
+     */
+    @Benchmark
+    public int scale99() {
+        value = value < 99 ? value + 1 : 0;
+        return ValueUtils.scale99(value);
+    }
+
+    /**
+     * Benchmark scaling a value 0-24.
+     *
+     * @return the scaled value
+     */
+    @Benchmark
+    public int scale24() {
+        value = value < 24 ? value + 1 : 0;
+        return ValueUtils.scale24(value);
+    }
+}
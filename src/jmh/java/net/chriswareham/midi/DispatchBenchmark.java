@@ -0,0 +1,86 @@
+package net.chriswareham.midi;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiUnavailableException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * This class benchmarks dispatching control changes to an in-memory device,
+ * from enqueueing on the calling thread until the receiver has been sent the
+ * message. Output is not paced, so the benchmark measures the dispatcher
+ * rather than the MIDI link.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    /**
+     * The in-memory device.
+     */
+    private final MemoryMidiDevice device = new MemoryMidiDevice();
+
+    /**
+     * The dispatcher.
+     */
+    private OutputDispatcher dispatcher;
+
+    /**
+     * The next control change value.
+     */
+    private int value;
+
+    /**
+     * Open the dispatcher.
+     *
+     * @throws MidiUnavailableException if the dispatcher cannot be opened
+     */
+    @Setup
+    public void setUp() throws MidiUnavailableException {
+        dispatcher = new OutputDispatcher(new Device(device));
+        dispatcher.setByteRate(0);
+    }
+
+    /**
+     * Close the dispatcher.
+     */
+    @TearDown
+    public void tearDown() {
+        dispatcher.close();
+    }
+
+    /**
+     * Benchmark dispatching a control change and waiting for the receiver to
+     * be sent it.
+     *
+     * @return the number of messages the receiver has been sent
+     */
+    @Benchmark
+    public long sendControlChange() {
+        long count = device.getMessageCount();
+        value = (value + 1) & 0x7F;
+        dispatcher.sendControlChange(0, 74, value);
+        while (device.getMessageCount() == count) {
+            Thread.onSpinWait();
+        }
+        return count;
+    }
+
+    /**
+     * Benchmark enqueueing a control change without waiting for it to be
+     * sent, as the event dispatch thread does when a slider moves.
+     */
+    @Benchmark
+    public void enqueueControlChange() {
+        value = (value + 1) & 0x7F;
+        dispatcher.sendControlChange(0, 74, value);
+    }
+}
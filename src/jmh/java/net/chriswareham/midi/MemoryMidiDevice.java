@@ -0,0 +1,175 @@
+package net.chriswareham.midi;
+
+import java.util.List;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+
+/**
+ * This class provides an in-memory MIDI device for benchmarks, whose receiver
+ * counts the messages and bytes it is sent.
+ */
+public class MemoryMidiDevice implements MidiDevice {
+    /**
+     * The receiver of the device.
+     */
+    private final MemoryReceiver receiver = new MemoryReceiver();
+
+    /**
+     * Whether the device is open.
+     */
+    private boolean open;
+
+    /**
+     * Get the number of messages the receiver has been sent.
+     *
+     * @return the number of messages the receiver has been sent
+     */
+    public long getMessageCount() {
+        return receiver.messageCount;
+    }
+
+    /**
+     * Get the number of bytes the receiver has been sent.
+     *
+     * @return the number of bytes the receiver has been sent
+     */
+    public long getByteCount() {
+        return receiver.byteCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Info getDeviceInfo() {
+        return new MemoryInfo();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open() {
+        open = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMicrosecondPosition() {
+        return -1L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxReceivers() {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxTransmitters() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Receiver getReceiver() {
+        return receiver;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Receiver> getReceivers() {
+        return List.of(receiver);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Transmitter getTransmitter() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Transmitter> getTransmitters() {
+        return List.of();
+    }
+
+    /**
+     * This class describes the in-memory device.
+     */
+    private static class MemoryInfo extends Info {
+        /**
+         * Construct an instance describing the in-memory device.
+         */
+        MemoryInfo() {
+            super("Memory", "chriswareham.net", "In-memory MIDI device", "1.0");
+        }
+    }
+
+    /**
+     * This class provides a receiver that counts the messages and bytes it is
+     * sent.
+     */
+    private static class MemoryReceiver implements Receiver {
+        /**
+         * The number of messages the receiver has been sent.
+         */
+        private volatile long messageCount;
+
+        /**
+         * The number of bytes the receiver has been sent.
+         */
+        private volatile long byteCount;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void send(final MidiMessage message, final long timestamp) {
+            byteCount += message.getLength();
+            ++messageCount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            // empty
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package net.chriswareham.midi;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This class benchmarks creating and formatting control change messages.
+ * The String.format() variant is how messages were logged before the send
+ * path was made allocation free, and is kept for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageBenchmark {
+    /**
+     * The reusable control change message.
+     */
+    private final ShortMessage message = new ShortMessage();
+
+    /**
+     * The next control change value.
+     */
+    private int value;
+
+    /**
+     * Benchmark creating a new control change message.
+     *
+     * @return the message
+     * @throws InvalidMidiDataException if the message is invalid
+     */
+    @Benchmark
+    public ShortMessage createMessage() throws InvalidMidiDataException {
+        value = (value + 1) & 0x7F;
+        return new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 74, value);
+    }
+
+    /**
+     * Benchmark setting a reusable control change message.
+     *
+     * @return the message
+     * @throws InvalidMidiDataException if the message is invalid
+     */
+    @Benchmark
+    public ShortMessage reuseMessage() throws InvalidMidiDataException {
+        value = (value + 1) & 0x7F;
+        message.setMessage(ShortMessage.CONTROL_CHANGE, 0, 74, value);
+        return message;
+    }
+
+    /**
+     * Benchmark formatting a message for logging.
+     *
+     * @return the formatted message
+     */
+    @Benchmark
+    public String formatMessage() {
+        return "Message : " + MidiUtils.toHexString(message);
+    }
+
+    /**
+     * Benchmark formatting a message for logging with String.format().
+     *
+     * @return the formatted message
+     */
+    @Benchmark
+    public String formatMessageWithStringFormat() {
+        byte[] data = message.getMessage();
+        StringBuilder sb = new StringBuilder("Message : ");
+        for (int i = 0; i < data.length; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(String.format("%02X", data[i]));
+        }
+        return sb.toString();
+    }
+}
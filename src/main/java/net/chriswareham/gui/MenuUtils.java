@@ -2,8 +2,10 @@ package net.chriswareham.gui;
 
 import java.awt.event.ActionListener;
 
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JRadioButtonMenuItem;
 
 /**
  * This class provides utility methods for menus.
@@ -75,6 +77,42 @@ public final class MenuUtils {
         return menuItem;
     }
 
+    /**
+     * Create a check box menu item.
+     *
+     * @param label the label text for the menu item
+     * @param mnemonic the mnemonic for the menu item accelerator
+     * @param accessibleDescription the description of the menu item for tool tips, etc.
+     * @param actionListener the listener for when the menu item is selected
+     * @param selected whether the menu item is selected
+     * @return a check box menu item
+     */
+    public static JCheckBoxMenuItem createCheckBoxMenuItem(final String label, final String mnemonic, final String accessibleDescription, final ActionListener actionListener, final boolean selected) {
+        JCheckBoxMenuItem menuItem = new JCheckBoxMenuItem(label, selected);
+        menuItem.setMnemonic(mnemonic.charAt(0));
+        menuItem.getAccessibleContext().setAccessibleDescription(accessibleDescription);
+        menuItem.addActionListener(actionListener);
+        return menuItem;
+    }
+
+    /**
+     * Create a radio button menu item.
+     *
+     * @param label the label text for the menu item
+     * @param mnemonic the mnemonic for the menu item accelerator
+     * @param accessibleDescription the description of the menu item for tool tips, etc.
+     * @param actionListener the listener for when the menu item is selected
+     * @param selected whether the menu item is selected
+     * @return a radio button menu item
+     */
+    public static JRadioButtonMenuItem createRadioButtonMenuItem(final String label, final String mnemonic, final String accessibleDescription, final ActionListener actionListener, final boolean selected) {
+        JRadioButtonMenuItem menuItem = new JRadioButtonMenuItem(label, selected);
+        menuItem.setMnemonic(mnemonic.charAt(0));
+        menuItem.getAccessibleContext().setAccessibleDescription(accessibleDescription);
+        menuItem.addActionListener(actionListener);
+        return menuItem;
+    }
+
     /**
      * Utility class - no public constructor.
      */
@@ -35,6 +35,11 @@ public class SliderPanel extends JPanel {
      */
     private SliderPanelListener listener;
 
+    /**
+     * Whether to notify the listener while the slider is being dragged.
+     */
+    private boolean liveUpdate;
+
     /**
      * Construct an instance of the slider panel.
      *
@@ -102,6 +107,16 @@ public class SliderPanel extends JPanel {
         this.listener = listener;
     }
 
+    /**
+     * Set whether to notify the listener while the slider is being dragged,
+     * rather than only when the slider has finished updating.
+     *
+     * @param liveUpdate whether to notify the listener while the slider is being dragged
+     */
+    public void setLiveUpdate(final boolean liveUpdate) {
+        this.liveUpdate = liveUpdate;
+    }
+
     /**
      * Get the slider value.
      *
@@ -125,7 +140,7 @@ public class SliderPanel extends JPanel {
      */
     private void updateLabel() {
         label.setText(Integer.toString(slider.getValue()));
-        if (!slider.getValueIsAdjusting() && listener != null) {
+        if ((liveUpdate || !slider.getValueIsAdjusting()) && listener != null) {
             listener.updated();
         }
     }
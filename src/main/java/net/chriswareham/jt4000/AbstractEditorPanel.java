@@ -1,9 +1,13 @@
 package net.chriswareham.jt4000;
 
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.LayoutManager;
 
 import javax.swing.JPanel;
 
+import net.chriswareham.gui.SliderPanel;
+
 /**
  * This class provides a base implementation for editor panels.
  */
@@ -13,6 +17,12 @@ public abstract class AbstractEditorPanel extends JPanel {
      */
     private final PatchUpdatedListener listener;
 
+    /**
+     * Whether the listener is not informed of updates, while the panel is
+     * refreshed from a patch that already holds the values.
+     */
+    private boolean quiet;
+
     /**
      * Construct an instance of an editor panel.
      *
@@ -24,6 +34,39 @@ public abstract class AbstractEditorPanel extends JPanel {
         this.listener = listener;
     }
 
+    /**
+     * Set the patch to edit.
+     *
+     * @param patch the patch to edit
+     */
+    public abstract void setPatch(Patch patch);
+
+    /**
+     * Refresh the panel from the patch it edits without informing the
+     * listener, for example when the patch has been updated from the device
+     * and sending the values back would be redundant.
+     *
+     * @param patch the patch to edit
+     */
+    public void refreshPatch(final Patch patch) {
+        quiet = true;
+        try {
+            setPatch(patch);
+        } finally {
+            quiet = false;
+        }
+    }
+
+    /**
+     * Set whether the sliders of the panel inform the listener while they are
+     * being dragged.
+     *
+     * @param liveUpdate whether the sliders inform the listener while being dragged
+     */
+    public void setLiveUpdate(final boolean liveUpdate) {
+        updateSliders(this, liveUpdate);
+    }
+
     /**
      * Inform the listener that a patch has been updated.
      *
@@ -31,8 +74,25 @@ public abstract class AbstractEditorPanel extends JPanel {
      * @param ccValue the value of the control change
      */
     protected void firePatchUpdated(final int ccNumber, final int ccValue) {
-        if (listener != null) {
+        if (listener != null && !quiet) {
             listener.updated(ccNumber, ccValue);
         }
     }
+
+    /**
+     * Set whether the sliders of a container inform the listener while they
+     * are being dragged.
+     *
+     * @param container the container
+     * @param liveUpdate whether the sliders inform the listener while being dragged
+     */
+    private void updateSliders(final Container container, final boolean liveUpdate) {
+        for (Component component : container.getComponents()) {
+            if (component instanceof SliderPanel) {
+                ((SliderPanel) component).setLiveUpdate(liveUpdate);
+            } else if (component instanceof Container) {
+                updateSliders((Container) component, liveUpdate);
+            }
+        }
+    }
 }
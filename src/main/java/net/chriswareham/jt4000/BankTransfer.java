@@ -0,0 +1,417 @@
+package net.chriswareham.jt4000;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.SysexMessage;
+
+import net.chriswareham.midi.OutputDispatcher;
+import net.chriswareham.midi.OutputStatistics;
+
+/**
+ * This class provides transfers of a whole bank of patches to and from a
+ * Behringer JT-4000. Dumping a bank keeps a window of patch dump requests in
+ * flight, so a device that answers them is kept busy answering one while the
+ * next response is on its way, and requests a patch again if its dump fails
+ * its checksum or never arrives. Restoring a bank keeps a window of patch
+ * dumps queued in the dispatcher, which paces them to the byte rate of the
+ * MIDI link. No acknowledgement of a patch dump is known, so a restored patch
+ * counts as transferred once the link has carried it, not once the device
+ * has stored it. A dump is sent again if the dispatcher dropped or failed to
+ * send any message while it was in flight, as the dispatcher does not say
+ * which messages it lost. Dumps use the provisional format described by
+ * {@link Patch}.
+ */
+public class BankTransfer {
+    /**
+     * The default number of patches in flight at once.
+     */
+    public static final int DEFAULT_WINDOW = 4;
+
+    /**
+     * The default number of times to request or send a patch again after
+     * its dump fails.
+     */
+    public static final int DEFAULT_PATCH_RETRIES = 2;
+
+    /**
+     * Read a bank of patches from a System Exclusive file of patch dumps.
+     *
+     * @param file the file
+     * @return the bank of patches
+     * @throws IOException if the file cannot be read or does not hold a bank
+     *         of patch dumps
+     */
+    public static Patch[] readBank(final File file) throws IOException {
+        List<Patch> bank = new ArrayList<>(Patch.BANK_SIZE);
+        new PatchFileReader().read(file.toPath(), bank::add);
+        if (bank.size() != Patch.BANK_SIZE) {
+            throw new IOException("File " + file + " holds " + bank.size() + " valid patches rather than a bank of " + Patch.BANK_SIZE);
+        }
+        return bank.toArray(new Patch[Patch.BANK_SIZE]);
+    }
+
+    /**
+     * Write a bank of patches to a System Exclusive file of patch dumps.
+     *
+     * @param file the file
+     * @param bank the bank of patches
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeBank(final File file, final Patch[] bank) throws IOException {
+        try (PatchFileWriter writer = new PatchFileWriter(file.toPath(), bank.length)) {
+            for (Patch patch : bank) {
+                writer.write(patch);
+            }
+        }
+    }
+
+    /**
+     * The loader to request patch dumps with.
+     */
+    private final PatchLoader loader;
+
+    /**
+     * The dispatcher to send patch dumps with.
+     */
+    private final OutputDispatcher dispatcher;
+
+    /**
+     * The number of patches in flight at once.
+     */
+    private volatile int window = DEFAULT_WINDOW;
+
+    /**
+     * The number of times to request or send a patch again after its dump
+     * fails.
+     */
+    private volatile int patchRetries = DEFAULT_PATCH_RETRIES;
+
+    /**
+     * Construct an instance of a transfer of banks of patches.
+     *
+     * @param loader the loader to request patch dumps with
+     * @param dispatcher the dispatcher to send patch dumps with
+     */
+    public BankTransfer(final PatchLoader loader, final OutputDispatcher dispatcher) {
+        this.loader = loader;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Set the number of patches in flight at once.
+     *
+     * @param window the number of patches in flight at once
+     */
+    public void setWindow(final int window) {
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Set the number of times to request a patch again after its dump fails
+     * its checksum or never arrives, and to send a patch again after the
+     * dispatcher loses a message while its dump is in flight.
+     *
+     * @param patchRetries the number of times to request or send a patch
+     *        again
+     */
+    public void setPatchRetries(final int patchRetries) {
+        this.patchRetries = patchRetries;
+    }
+
+    /**
+     * Dump every patch in the bank of the device.
+     *
+     * @param midiChannel the MIDI channel of the device, 0-15
+     * @param listener the listener to notify as each patch arrives
+     * @return a future that completes with the bank of patches, or fails if a
+     *         patch could not be dumped
+     */
+    public CompletableFuture<Patch[]> dump(final int midiChannel, final BankTransferListener listener) {
+        BankDump bankDump = new BankDump(midiChannel, listener);
+        bankDump.start(window);
+        return bankDump.future;
+    }
+
+    /**
+     * Restore every patch in a bank to the device. Each patch dump carries
+     * its patch number as the slot to write it to.
+     *
+     * @param bank the bank of patches
+     * @param listener the listener to notify as each patch is sent
+     * @return a future that completes with how long the transfer took, once
+     *         the last patch dump has been carried by the link
+     * @throws InvalidMidiDataException if a patch dump cannot be created
+     */
+    public CompletableFuture<Duration> restore(final Patch[] bank, final BankTransferListener listener) throws InvalidMidiDataException {
+        SysexMessage[] dumps = new SysexMessage[bank.length];
+        for (int i = 0; i < bank.length; ++i) {
+            dumps[i] = bank[i].serialise();
+        }
+        BankRestore bankRestore = new BankRestore(bank, dumps, listener);
+        bankRestore.start(window);
+        return bankRestore.future;
+    }
+
+    /**
+     * This class describes a dump of a bank that is in progress.
+     */
+    private final class BankDump {
+        /**
+         * The MIDI channel of the device.
+         */
+        private final int midiChannel;
+
+        /**
+         * The listener to notify as each patch arrives.
+         */
+        private final BankTransferListener listener;
+
+        /**
+         * The patches that have arrived.
+         */
+        private final Patch[] bank = new Patch[Patch.BANK_SIZE];
+
+        /**
+         * The number of times each patch has been requested.
+         */
+        private final int[] attempts = new int[Patch.BANK_SIZE];
+
+        /**
+         * The future that completes with the bank.
+         */
+        private final CompletableFuture<Patch[]> future = new CompletableFuture<>();
+
+        /**
+         * The number of the next patch to request.
+         */
+        private int next;
+
+        /**
+         * The number of patches that have arrived.
+         */
+        private int transferred;
+
+        /**
+         * Construct an instance of a dump of a bank.
+         *
+         * @param midiChannel the MIDI channel of the device
+         * @param listener the listener to notify as each patch arrives
+         */
+        BankDump(final int midiChannel, final BankTransferListener listener) {
+            this.midiChannel = midiChannel;
+            this.listener = listener;
+        }
+
+        /**
+         * Request the first window of patches.
+         *
+         * @param size the size of the window
+         */
+        synchronized void start(final int size) {
+            while (next < Math.min(size, Patch.BANK_SIZE)) {
+                request(next++);
+            }
+        }
+
+        /**
+         * Request a patch.
+         *
+         * @param patchNumber the number of the patch
+         */
+        private void request(final int patchNumber) {
+            ++attempts[patchNumber];
+            try {
+                loader.load(midiChannel, patchNumber).whenComplete((dump, exception) -> received(patchNumber, dump, exception));
+            } catch (InvalidMidiDataException | RuntimeException exception) {
+                future.completeExceptionally(exception);
+            }
+        }
+
+        /**
+         * Handle the dump of a patch, or its failure, and request the next
+         * patch.
+         *
+         * @param patchNumber the number of the patch
+         * @param dump the dump, or null if it failed
+         * @param exception why the dump failed, or null if it did not
+         */
+        private synchronized void received(final int patchNumber, final SysexMessage dump, final Throwable exception) {
+            if (future.isDone()) {
+                return;
+            }
+            Throwable failure = exception;
+            if (failure == null) {
+                try {
+                    Patch patch = new Patch();
+                    patch.initialise();
+                    patch.deserialise(dump);
+                    bank[patchNumber] = patch;
+                } catch (InvalidMidiDataException deserialiseException) {
+                    failure = deserialiseException;
+                }
+            }
+            if (failure instanceof CancellationException) {
+                future.completeExceptionally(failure);
+            } else if (failure != null) {
+                if (attempts[patchNumber] <= patchRetries) {
+                    request(patchNumber);
+                } else {
+                    future.completeExceptionally(new IOException("Patch " + (patchNumber + 1) + " could not be dumped after " + attempts[patchNumber] + " attempts", failure));
+                }
+            } else {
+                listener.transferred(patchNumber, ++transferred);
+                if (transferred == Patch.BANK_SIZE) {
+                    future.complete(bank);
+                } else if (next < Patch.BANK_SIZE) {
+                    request(next++);
+                }
+            }
+        }
+    }
+
+    /**
+     * This class describes a restore of a bank that is in progress.
+     */
+    private final class BankRestore {
+        /**
+         * The patches being restored.
+         */
+        private final Patch[] bank;
+
+        /**
+         * The dumps of the patches being restored.
+         */
+        private final SysexMessage[] dumps;
+
+        /**
+         * The listener to notify as each patch is sent.
+         */
+        private final BankTransferListener listener;
+
+        /**
+         * The future that completes with how long the transfer took.
+         */
+        private final CompletableFuture<Duration> future = new CompletableFuture<>();
+
+        /**
+         * When the transfer started, from {@link System#nanoTime()}.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * The index of the next dump to send.
+         */
+        private int next;
+
+        /**
+         * The number of dumps that have been sent.
+         */
+        private int transferred;
+
+        /**
+         * The number of times each dump has been sent.
+         */
+        private final int[] attempts;
+
+        /**
+         * The number of messages the dispatcher had lost when each dump was
+         * last sent.
+         */
+        private final long[] losses;
+
+        /**
+         * Construct an instance of a restore of a bank.
+         *
+         * @param bank the patches being restored
+         * @param dumps the dumps of the patches being restored
+         * @param listener the listener to notify as each patch is sent
+         */
+        BankRestore(final Patch[] bank, final SysexMessage[] dumps, final BankTransferListener listener) {
+            this.bank = bank;
+            this.dumps = dumps;
+            this.listener = listener;
+            attempts = new int[dumps.length];
+            losses = new long[dumps.length];
+        }
+
+        /**
+         * Queue the first window of dumps.
+         *
+         * @param size the size of the window
+         */
+        synchronized void start(final int size) {
+            if (dumps.length == 0) {
+                future.complete(Duration.ZERO);
+            }
+            while (next < Math.min(size, dumps.length)) {
+                send(next++);
+            }
+        }
+
+        /**
+         * Queue a dump and wait for the link to carry it.
+         *
+         * @param index the index of the dump
+         */
+        private void send(final int index) {
+            ++attempts[index];
+            losses[index] = getLosses();
+            try {
+                dispatcher.send(dumps[index], -1L);
+                dispatcher.flush().whenComplete((ignored, exception) -> sent(index, exception));
+            } catch (RuntimeException exception) {
+                future.completeExceptionally(exception);
+            }
+        }
+
+        /**
+         * Get the number of messages the dispatcher has dropped or failed to
+         * send.
+         *
+         * @return the number of messages lost
+         */
+        private long getLosses() {
+            OutputStatistics statistics = dispatcher.getStatistics();
+            return statistics.getDropped() + statistics.getFailed();
+        }
+
+        /**
+         * Handle a dump that has been carried by the link, or that could not
+         * be, and queue the next dump, sending the dump again if the
+         * dispatcher lost any message while it was in flight.
+         *
+         * @param index the index of the dump
+         * @param exception why the dump could not be carried, or null if it was
+         */
+        private synchronized void sent(final int index, final Throwable exception) {
+            if (future.isDone()) {
+                return;
+            }
+            if (exception != null) {
+                future.completeExceptionally(exception);
+                return;
+            }
+            if (getLosses() != losses[index]) {
+                if (attempts[index] <= patchRetries) {
+                    send(index);
+                } else {
+                    future.completeExceptionally(new IOException("Patch " + (bank[index].getPatchNumber() + 1) + " could not be restored after " + attempts[index] + " attempts"));
+                }
+                return;
+            }
+            listener.transferred(bank[index].getPatchNumber(), ++transferred);
+            if (transferred == dumps.length) {
+                future.complete(Duration.ofNanos(System.nanoTime() - start));
+            } else if (next < dumps.length) {
+                send(next++);
+            }
+        }
+    }
+}
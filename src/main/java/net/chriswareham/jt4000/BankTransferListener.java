@@ -0,0 +1,15 @@
+package net.chriswareham.jt4000;
+
+/**
+ * This interface is implemented by classes that want to be notified of the
+ * progress of a transfer of a bank of patches.
+ */
+public interface BankTransferListener {
+    /**
+     * Notify the listener that a patch has been transferred.
+     *
+     * @param patchNumber the number of the patch, 0-31
+     * @param transferred the number of patches transferred so far
+     */
+    void transferred(int patchNumber, int transferred);
+}
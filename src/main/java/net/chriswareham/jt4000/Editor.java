@@ -1,23 +1,41 @@
 package net.chriswareham.jt4000;
 
 import java.awt.BorderLayout;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import javax.sound.midi.MidiMessage;
-import javax.sound.midi.Receiver;
-import javax.sound.midi.ShortMessage;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.SysexMessage;
 import javax.sound.midi.Transmitter;
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import net.chriswareham.gui.AbstractFrame;
+import net.chriswareham.gui.ErrorDialog;
 import net.chriswareham.gui.GridBagPanel;
 import net.chriswareham.gui.MenuUtils;
 import net.chriswareham.gui.StatusBar;
+import net.chriswareham.midi.BackpressurePolicy;
 import net.chriswareham.midi.Device;
+import net.chriswareham.midi.MidiTrace;
+import net.chriswareham.midi.OutputDispatcher;
+import net.chriswareham.midi.OutputStatistics;
+import net.chriswareham.midi.SysexRequestEngine;
 
 /**
  * This class provides an editor frame for the Behringer JT-4000.
@@ -29,14 +47,40 @@ public class Editor extends AbstractFrame {
     private static final long serialVersionUID = 1L;
 
     /**
-     * The logger.
+     * The format string for the status bar.
      */
-    private static final Logger LOGGER = Logger.getLogger(Editor.class.getName());
+    private static final String STATUS_BAR_FORMAT = "Input device: %s Output device: %s";
 
     /**
-     * The format string for the status bar.
+     * The format string for the status bar after a patch has been sent.
      */
-    private static final String STATUS_BAR_FORMAT = "Input device: %s Output device: %s";
+    private static final String PATCH_SENT_FORMAT = " Patch sent (%d of %d parameters) in %d ms";
+
+    /**
+     * The format string for the status bar while a bank is transferred.
+     */
+    private static final String BANK_PROGRESS_FORMAT = " Bank: %d/%d";
+
+    /**
+     * The format string for the output statistics in the status bar.
+     */
+    private static final String STATISTICS_FORMAT = " Sent: %d Coalesced: %d Dropped: %d Failed: %d Max depth: %d";
+
+    /**
+     * The format string for the message of the output failure dialog.
+     */
+    private static final String FAILURE_FORMAT = "Sending to the output device failed (%d failed, %d dropped)";
+
+    /**
+     * The number of milliseconds between updates of the output statistics.
+     */
+    private static final int STATISTICS_INTERVAL = 500;
+
+    /**
+     * The number of milliseconds between drains of the control changes
+     * received from the input device, about once per display frame.
+     */
+    private static final int INPUT_INTERVAL = 16;
 
     /**
      * Main entry point for running the editor.
@@ -52,16 +96,106 @@ public class Editor extends AbstractFrame {
      */
     private Device inputDevice;
 
+    /**
+     * The transmitter of the current input device.
+     */
+    private Transmitter inputTransmitter;
+
+    /**
+     * The decoder of control changes from the current input device.
+     */
+    private InputDecoder inputDecoder;
+
     /**
      * The current output device.
      */
     private Device outputDevice;
 
+    /**
+     * The dispatcher that sends messages to the current output device.
+     */
+    private OutputDispatcher outputDispatcher;
+
+    /**
+     * The sender that transmits patches to the current output device.
+     */
+    private PatchSender patchSender;
+
+    /**
+     * The engine that sends System Exclusive requests to the current output
+     * device and matches the responses from the current input device.
+     */
+    private SysexRequestEngine requestEngine;
+
+    /**
+     * The loader that requests patches from the current devices.
+     */
+    private PatchLoader patchLoader;
+
+    /**
+     * The transfer of banks of patches to and from the current devices.
+     */
+    private BankTransfer bankTransfer;
+
+    /**
+     * The number of patches transferred in the current or last bank
+     * transfer, or -1 if no bank has been transferred.
+     */
+    private int bankTransferred = -1;
+
+    /**
+     * The policy for messages sent when the output queue is full.
+     */
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.COALESCE;
+
+    /**
+     * How long the last patch took to send in milliseconds, or -1 if no
+     * patch has been sent.
+     */
+    private long patchSentMillis = -1L;
+
+    /**
+     * The number of parameters the last patch sent changed.
+     */
+    private int patchSentParameters;
+
+    /**
+     * The number of failed messages when the output statistics were last
+     * updated.
+     */
+    private long lastFailed;
+
+    /**
+     * Whether output is in a burst of failures that has been reported.
+     */
+    private boolean failing;
+
+    /**
+     * The timer that updates the output statistics.
+     */
+    private final Timer statisticsTimer = new Timer(STATISTICS_INTERVAL, event -> updateStatistics());
+
+    /**
+     * The timer that drains the control changes received from the input
+     * device.
+     */
+    private final Timer inputTimer = new Timer(INPUT_INTERVAL, event -> inputReceived());
+
+    /**
+     * The current MIDI trace.
+     */
+    private MidiTrace trace;
+
     /**
      * The current patch.
      */
     private final Patch patch = new Patch();
 
+    /**
+     * The browse library menu item.
+     */
+    private final JMenuItem browseLibraryMenuItem = MenuUtils.createMenuItem("Browse Library", "W", "Browse and audition the patches in SysEx files", event -> browseLibrary());
+
     /**
      * The load patch menu item.
      */
@@ -72,6 +206,36 @@ public class Editor extends AbstractFrame {
      */
     private final JMenuItem savePatchMenuItem = MenuUtils.createMenuItem("Save Patch", "S", "Save patch", event -> savePatch(), false);
 
+    /**
+     * The morph patch menu item.
+     */
+    private final JMenuItem morphPatchMenuItem = MenuUtils.createMenuItem("Morph Patch", "O", "Morph from the patch to the first patch in a SysEx file", event -> morphPatch(), false);
+
+    /**
+     * The backup bank menu item.
+     */
+    private final JMenuItem backupBankMenuItem = MenuUtils.createMenuItem("Backup Bank", "B", "Save every patch of the device to a file", event -> backupBank(), false);
+
+    /**
+     * The restore bank menu item.
+     */
+    private final JMenuItem restoreBankMenuItem = MenuUtils.createMenuItem("Restore Bank", "R", "Send every patch in a file to the device", event -> restoreBank(), false);
+
+    /**
+     * The running status menu item.
+     */
+    private final JCheckBoxMenuItem runningStatusMenuItem = MenuUtils.createCheckBoxMenuItem("Running Status", "R", "Send bursts of control changes using running status, which some devices and MIDI stacks reject", event -> runningStatus(), false);
+
+    /**
+     * The MIDI trace menu item.
+     */
+    private final JCheckBoxMenuItem traceMenuItem = MenuUtils.createCheckBoxMenuItem("Trace MIDI", "T", "Record MIDI messages to a trace file", event -> trace(), false);
+
+    /**
+     * The live update menu item.
+     */
+    private final JCheckBoxMenuItem liveUpdateMenuItem = MenuUtils.createCheckBoxMenuItem("Live Update", "U", "Send changes while sliders are dragged", event -> liveUpdate(), false);
+
     /**
      * The panel for editing common parameters.
      */
@@ -153,6 +317,7 @@ public class Editor extends AbstractFrame {
     @Override
     protected void populateInterface() {
         initialisePatch();
+        statisticsTimer.start();
     }
 
     /**
@@ -160,8 +325,10 @@ public class Editor extends AbstractFrame {
      */
     @Override
     protected void interfaceClosed() {
+        statisticsTimer.stop();
         closeInputDevice();
         closeOutputDevice();
+        closeTrace();
     }
 
     /**
@@ -176,6 +343,12 @@ public class Editor extends AbstractFrame {
 
         menu.add(MenuUtils.createMenuItem("Device", "D", "Device", event -> device()));
 
+        menu.add(runningStatusMenuItem);
+
+        menu.add(traceMenuItem);
+
+        menu.add(createBackpressureMenu());
+
         menu.addSeparator();
 
         menu.add(MenuUtils.createMenuItem("Exit", "X", "Exit", event -> close()));
@@ -184,11 +357,49 @@ public class Editor extends AbstractFrame {
 
         menu.add(MenuUtils.createMenuItem("Intitialise Patch", "I", "Initialise patch", event -> initialisePatch()));
 
+        menu.add(MenuUtils.createMenuItem("Import Patch", "M", "Import the first patch in a SysEx file", event -> importPatch()));
+
+        menu.add(MenuUtils.createMenuItem("Export Patch", "X", "Export the patch to a SysEx file", event -> exportPatch()));
+
+        menu.add(browseLibraryMenuItem);
+
+        menu.add(loadPatchMenuItem);
+
         menu.add(savePatchMenuItem);
 
+        menu.add(morphPatchMenuItem);
+
+        menu.add(backupBankMenuItem);
+
+        menu.add(restoreBankMenuItem);
+
+        menu.addSeparator();
+
+        menu.add(liveUpdateMenuItem);
+
         return menuBar;
     }
 
+    /**
+     * Create the menu for the policy for messages sent when the output queue
+     * is full. The editor sends from the event dispatch thread, so the
+     * blocking policy, which would freeze the editor while it waits, is not
+     * offered.
+     *
+     * @return the menu
+     */
+    private JMenu createBackpressureMenu() {
+        JMenu menu = MenuUtils.createMenu("Backpressure", "B", "Policy for messages sent when the output queue is full");
+        ButtonGroup buttonGroup = new ButtonGroup();
+        for (BackpressurePolicy policy : EnumSet.complementOf(EnumSet.of(BackpressurePolicy.BLOCK))) {
+            String label = policy.toString();
+            JRadioButtonMenuItem menuItem = MenuUtils.createRadioButtonMenuItem(label, label.substring(0, 1), label, event -> backpressurePolicy(policy), policy == backpressurePolicy);
+            buttonGroup.add(menuItem);
+            menu.add(menuItem);
+        }
+        return menu;
+    }
+
     /**
      * Show the device dialog.
      */
@@ -230,17 +441,53 @@ public class Editor extends AbstractFrame {
                 if (!device.isOpen()) {
                     device.open();
                 }
+                inputDecoder = createInputDecoder(device);
                 inputDevice = device;
+                inputTimer.start();
+                openRequestEngine();
                 updateStatusBar();
             });
         }
     }
 
+    /**
+     * Create a decoder of control changes from an input device and attach it
+     * to the transmitter of the device.
+     *
+     * @param device the input device
+     * @return the decoder
+     * @throws MidiUnavailableException if a transmitter cannot be obtained
+     */
+    private InputDecoder createInputDecoder(final Device device) throws MidiUnavailableException {
+        Transmitter transmitter = device.getTransmitter();
+        if (transmitter == null) {
+            throw new MidiUnavailableException("No transmitter for device " + device);
+        }
+        InputDecoder decoder = new InputDecoder();
+        decoder.setTrace(trace);
+        if (outputDispatcher != null) {
+            decoder.setControllerState(outputDispatcher.getControllerState());
+        }
+        transmitter.setReceiver(decoder);
+        inputTransmitter = transmitter;
+        return decoder;
+    }
+
     /**
      * Close the current input device.
      */
     private void closeInputDevice() {
         if (inputDevice != null) {
+            inputTimer.stop();
+            closeRequestEngine();
+            if (inputTransmitter != null) {
+                inputTransmitter.close();
+                inputTransmitter = null;
+            }
+            if (inputDecoder != null) {
+                inputDecoder.close();
+                inputDecoder = null;
+            }
             if (inputDevice.isOpen()) {
                 inputDevice.close();
             }
@@ -260,25 +507,85 @@ public class Editor extends AbstractFrame {
                 if (!device.isOpen()) {
                     device.open();
                 }
+                outputDispatcher = createOutputDispatcher(device);
+                patchSender = new PatchSender(outputDispatcher);
                 outputDevice = device;
-                loadPatchMenuItem.setEnabled(true);
-                savePatchMenuItem.setEnabled(true);
+                openRequestEngine();
                 updateStatusBar();
             });
         }
     }
 
+    /**
+     * Open the engine that requests System Exclusive dumps, if both an input
+     * and an output device are open.
+     *
+     * @throws MidiUnavailableException if a transmitter cannot be obtained
+     */
+    private void openRequestEngine() throws MidiUnavailableException {
+        if (inputDevice != null && outputDispatcher != null) {
+            requestEngine = new SysexRequestEngine(inputDevice, outputDispatcher);
+            patchLoader = new PatchLoader(requestEngine);
+            bankTransfer = new BankTransfer(patchLoader, outputDispatcher);
+        }
+        updatePatchMenuItems();
+    }
+
+    /**
+     * Close the engine that requests System Exclusive dumps, cancelling any
+     * requests in flight.
+     */
+    private void closeRequestEngine() {
+        if (requestEngine != null) {
+            requestEngine.close();
+            requestEngine = null;
+            patchLoader = null;
+            bankTransfer = null;
+        }
+        updatePatchMenuItems();
+    }
+
+    /**
+     * Create a dispatcher that sends messages to an output device.
+     *
+     * @param device the output device
+     * @return the dispatcher
+     * @throws MidiUnavailableException if a receiver cannot be obtained
+     */
+    private OutputDispatcher createOutputDispatcher(final Device device) throws MidiUnavailableException {
+        OutputDispatcher dispatcher = new OutputDispatcher(device);
+        dispatcher.setRunningStatus(runningStatusMenuItem.isSelected());
+        dispatcher.setBackpressurePolicy(backpressurePolicy);
+        dispatcher.setTrace(trace);
+        if (inputDecoder != null) {
+            inputDecoder.setControllerState(dispatcher.getControllerState());
+        }
+        return dispatcher;
+    }
+
     /**
      * Close the current output device.
      */
     private void closeOutputDevice() {
         if (outputDevice != null) {
+            closeRequestEngine();
+            if (inputDecoder != null) {
+                inputDecoder.setControllerState(null);
+            }
+            if (outputDispatcher != null) {
+                outputDispatcher.close();
+                outputDispatcher = null;
+                patchSender = null;
+            }
+            patchSentMillis = -1L;
+            bankTransferred = -1;
+            lastFailed = 0L;
+            failing = false;
             if (outputDevice.isOpen()) {
                 outputDevice.close();
             }
             outputDevice = null;
-            loadPatchMenuItem.setEnabled(false);
-            savePatchMenuItem.setEnabled(false);
+            updatePatchMenuItems();
             updateStatusBar();
         }
     }
@@ -299,72 +606,500 @@ public class Editor extends AbstractFrame {
     }
 
     /**
-     * Load the current patch via the current output device.
+     * Import the first patch in a System Exclusive file as the current patch,
+     * keeping the MIDI channel and patch number of the current patch, and
+     * switch the current output device to it.
      */
-    private void loadPatch() {
-        if (outputDevice != null) {
+    private void importPatch() {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            if (call(() -> importPatch(fileChooser.getSelectedFile()))) {
+                commonPanel.setPatch(patch);
+                refreshPanels();
+                switchPatch();
+            }
+        }
+    }
+
+    /**
+     * Import the first patch in a System Exclusive file as the current patch,
+     * keeping the MIDI channel and patch number of the current patch.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be read or holds no patch
+     * @throws InvalidMidiDataException if the patch cannot be copied
+     */
+    private void importPatch(final File file) throws IOException, InvalidMidiDataException {
+        Patch imported = readFirstPatch(file);
+        imported.setMidiChannel(patch.getMidiChannel());
+        imported.setPatchNumber(patch.getPatchNumber());
+        copyPatch(imported);
+    }
+
+    /**
+     * Read the first patch in a System Exclusive file.
+     *
+     * @param file the file
+     * @return the patch
+     * @throws IOException if the file cannot be read or holds no patch
+     */
+    private Patch readFirstPatch(final File file) throws IOException {
+        Patch imported = new Patch();
+        imported.initialise();
+        if (!new PatchFileReader().readFirst(file.toPath(), imported)) {
+            throw new IOException("No patch found in " + file);
+        }
+        return imported;
+    }
+
+    /**
+     * Copy a patch into the current patch.
+     *
+     * @param source the patch to copy
+     * @throws InvalidMidiDataException if the patch cannot be copied
+     */
+    private void copyPatch(final Patch source) throws InvalidMidiDataException {
+        byte[] dump = new byte[Patch.DUMP_LENGTH];
+        source.serialise(dump, 0);
+        patch.deserialise(dump, 0, dump.length);
+    }
+
+    /**
+     * Browse the distinct patches in a System Exclusive file, or in every
+     * System Exclusive file under a directory, auditioning them via the
+     * current output device as they are selected. The patches are read on a
+     * background thread without blocking the user interface, as a large
+     * archive can take seconds to read.
+     */
+    private void browseLibrary() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            Path path = fileChooser.getSelectedFile().toPath();
+            browseLibraryMenuItem.setEnabled(false);
+            CompletableFuture.supplyAsync(() -> readLibrary(path), runnable -> {
+                Thread thread = new Thread(runnable, "Library import");
+                thread.setDaemon(true);
+                thread.start();
+            }).whenComplete((bank, exception) -> SwingUtilities.invokeLater(() -> libraryRead(bank, exception)));
+        }
+    }
+
+    /**
+     * Read the distinct patches in a System Exclusive file, or in every System
+     * Exclusive file under a directory.
+     *
+     * @param path the file or directory
+     * @return a bank of the distinct patches
+     */
+    private PatchBank readLibrary(final Path path) {
+        PatchBank bank = new PatchBank();
+        try {
+            new PatchFileReader().readUnique(path, new LongHashSet(), bank);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return bank;
+    }
+
+    /**
+     * Open a dialog for browsing the patches read from a library, or report
+     * why they could not be read.
+     *
+     * @param bank the bank of patches, or null if they could not be read
+     * @param exception why the patches could not be read, or null if they were
+     */
+    private void libraryRead(final PatchBank bank, final Throwable exception) {
+        browseLibraryMenuItem.setEnabled(true);
+        Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+        if (cause instanceof UncheckedIOException) {
+            cause = cause.getCause();
+        }
+        if (cause != null) {
+            ErrorDialog.showDialog(this, "Browse Library", "The library could not be read", cause instanceof Exception ? (Exception) cause : new Exception(cause));
+        } else {
+            new LibraryDialog(this, bank, patchSender, patch)
+                .addPatchSelectedListener(selected -> librarySelected(selected))
+                .open();
+        }
+    }
+
+    /**
+     * Make a patch chosen from a library the current patch, keeping the MIDI
+     * channel and patch number of the current patch, and switch the current
+     * output device to it.
+     *
+     * @param selected the patch chosen
+     */
+    private void librarySelected(final Patch selected) {
+        selected.setMidiChannel(patch.getMidiChannel());
+        selected.setPatchNumber(patch.getPatchNumber());
+        if (call(() -> copyPatch(selected))) {
+            commonPanel.setPatch(patch);
+            refreshPanels();
+            switchPatch();
+        }
+    }
+
+    /**
+     * Export the current patch to a System Exclusive file.
+     */
+    private void exportPatch() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File(patch.getPatchName().isEmpty() ? "patch.syx" : patch.getPatchName().trim() + ".syx"));
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             call(() -> {
-                try (Transmitter transmitter = outputDevice.getTransmitter()) {
-                    // TODO
+                try (PatchFileWriter writer = new PatchFileWriter(fileChooser.getSelectedFile().toPath(), 1)) {
+                    writer.write(patch);
                 }
             });
         }
     }
 
     /**
-     * Save the current patch via the current output device.
+     * Set whether bursts of control changes are sent using running status.
+     */
+    private void runningStatus() {
+        if (outputDispatcher != null) {
+            outputDispatcher.setRunningStatus(runningStatusMenuItem.isSelected());
+        }
+    }
+
+    /**
+     * Set the policy for messages sent when the output queue is full.
+     *
+     * @param policy the policy
+     */
+    private void backpressurePolicy(final BackpressurePolicy policy) {
+        backpressurePolicy = policy;
+        if (outputDispatcher != null) {
+            outputDispatcher.setBackpressurePolicy(policy);
+        }
+    }
+
+    /**
+     * Start or stop recording MIDI messages to a trace file.
+     */
+    private void trace() {
+        if (!traceMenuItem.isSelected()) {
+            closeTrace();
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("jt4000.mtrc"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION || !call(() -> openTrace(fileChooser.getSelectedFile()))) {
+            traceMenuItem.setSelected(false);
+        }
+    }
+
+    /**
+     * Open a MIDI trace.
+     *
+     * @param file the trace file
+     * @throws IOException if the trace file cannot be created
+     */
+    private void openTrace(final File file) throws IOException {
+        trace = new MidiTrace(file.toPath());
+        if (inputDecoder != null) {
+            inputDecoder.setTrace(trace);
+        }
+        if (outputDispatcher != null) {
+            outputDispatcher.setTrace(trace);
+        }
+    }
+
+    /**
+     * Close the current MIDI trace.
+     */
+    private void closeTrace() {
+        if (trace != null) {
+            if (inputDecoder != null) {
+                inputDecoder.setTrace(null);
+            }
+            if (outputDispatcher != null) {
+                outputDispatcher.setTrace(null);
+            }
+            trace.close();
+            trace = null;
+        }
+    }
+
+    /**
+     * Set whether changes are sent while sliders are dragged.
+     */
+    private void liveUpdate() {
+        boolean liveUpdate = liveUpdateMenuItem.isSelected();
+
+        osc1Panel.setLiveUpdate(liveUpdate);
+        osc2Panel.setLiveUpdate(liveUpdate);
+        lfo1Panel.setLiveUpdate(liveUpdate);
+        lfo2Panel.setLiveUpdate(liveUpdate);
+        vcfPanel.setLiveUpdate(liveUpdate);
+        vcaPanel.setLiveUpdate(liveUpdate);
+    }
+
+    /**
+     * Load the current patch by requesting a patch dump via the current output
+     * device. The dump is received from the current input device without
+     * blocking the user interface.
+     */
+    private void loadPatch() {
+        if (patchLoader != null) {
+            call(() -> patchLoader.load(patch.getMidiChannel(), patch.getPatchNumber())
+                .whenComplete((dump, exception) -> SwingUtilities.invokeLater(() -> patchLoaded(dump, exception))));
+        }
+    }
+
+    /**
+     * Apply a patch dump received from the current input device to the
+     * current patch and switch the current output device to it, or report
+     * why it was not received.
+     *
+     * @param dump the patch dump, or null if it was not received
+     * @param exception why the patch dump was not received, or null if it was
+     */
+    private void patchLoaded(final SysexMessage dump, final Throwable exception) {
+        if (exception instanceof CancellationException) {
+            return;
+        }
+        if (exception != null) {
+            ErrorDialog.showDialog(this, "Load Patch", "No patch dump received from the input device", exception instanceof Exception ? (Exception) exception : new Exception(exception));
+        } else if (call(() -> patch.deserialise(dump))) {
+            commonPanel.setPatch(patch);
+            refreshPanels();
+            switchPatch();
+        }
+    }
+
+    /**
+     * Save the current patch via the current output device, by sending every
+     * parameter as a paced burst of control changes, so the device holds the
+     * whole patch whatever it held before.
      */
     private void savePatch() {
-        if (outputDevice != null) {
+        if (patchSender != null) {
+            call(() -> patchSender.send(patch).thenAccept(duration -> SwingUtilities.invokeLater(() -> patchSent(duration))));
+        }
+    }
+
+    /**
+     * Switch the current output device to the current patch, by sending only
+     * the parameters that differ from those the device holds.
+     */
+    private void switchPatch() {
+        if (patchSender != null) {
+            call(() -> patchSender.sendChanges(patch).thenAccept(duration -> SwingUtilities.invokeLater(() -> patchSent(duration))));
+        }
+    }
+
+    /**
+     * Morph via the current output device from the current patch to the
+     * first patch in a System Exclusive file.
+     */
+    private void morphPatch() {
+        JFileChooser fileChooser = new JFileChooser();
+        if (outputDispatcher != null && fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            Patch[] target = new Patch[1];
+            if (call(() -> target[0] = readFirstPatch(fileChooser.getSelectedFile()))) {
+                target[0].setMidiChannel(patch.getMidiChannel());
+                new MorphDialog(this, patch, target[0], outputDispatcher)
+                    .addPatchSelectedListener(morphed -> morphFinished(morphed))
+                    .open();
+            }
+        }
+    }
+
+    /**
+     * Make the patch a morph has left the current output device holding the
+     * current patch, so the editor shows what the device plays.
+     *
+     * @param morphed the patch the morph left the device holding
+     */
+    private void morphFinished(final Patch morphed) {
+        if (call(() -> copyPatch(morphed))) {
+            commonPanel.setPatch(patch);
+            refreshPanels();
+        }
+    }
+
+    /**
+     * Report that the current patch has been sent.
+     *
+     * @param duration how long the transfer took
+     */
+    private void patchSent(final Duration duration) {
+        patchSentMillis = duration.toMillis();
+        patchSentParameters = patchSender != null ? patchSender.getLastSent() : 0;
+        updateStatusBar();
+    }
+
+    /**
+     * Back up the bank of patches of the device to a file. Every patch is
+     * dumped in one pipelined transfer without blocking the user interface,
+     * and the file is written once the last patch has arrived.
+     */
+    private void backupBank() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("jt4000.syx"));
+        if (bankTransfer != null && fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            bankProgress(0);
+            bankTransfer.dump(patch.getMidiChannel(), this::bankProgressLater)
+                .whenComplete((bank, exception) -> SwingUtilities.invokeLater(() -> bankDumped(file, bank, exception)));
+        }
+    }
+
+    /**
+     * Write a bank of patches dumped from the device to a file, or report why
+     * it was not dumped.
+     *
+     * @param file the file
+     * @param bank the bank of patches, or null if it was not dumped
+     * @param exception why the bank was not dumped, or null if it was
+     */
+    private void bankDumped(final File file, final Patch[] bank, final Throwable exception) {
+        if (exception instanceof CancellationException) {
+            return;
+        }
+        if (exception != null) {
+            ErrorDialog.showDialog(this, "Backup Bank", "The bank could not be dumped from the device", exception instanceof Exception ? (Exception) exception : new Exception(exception));
+        } else {
+            call(() -> BankTransfer.writeBank(file, bank));
+        }
+    }
+
+    /**
+     * Restore the bank of patches of the device from a file. Every patch is
+     * sent in one paced transfer without blocking the user interface.
+     */
+    private void restoreBank() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("jt4000.syx"));
+        if (bankTransfer != null && fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             call(() -> {
-                try (Receiver receiver = outputDevice.getReceiver()) {
-                    // TODO
-                }
+                Patch[] bank = BankTransfer.readBank(fileChooser.getSelectedFile());
+                bankProgress(0);
+                bankTransfer.restore(bank, this::bankProgressLater)
+                    .whenComplete((duration, exception) -> SwingUtilities.invokeLater(() -> bankRestored(exception)));
             });
         }
     }
 
+    /**
+     * Report why a bank of patches could not be restored to the device.
+     *
+     * @param exception why the bank was not restored, or null if it was
+     */
+    private void bankRestored(final Throwable exception) {
+        if (exception != null && !(exception instanceof CancellationException)) {
+            ErrorDialog.showDialog(this, "Restore Bank", "The bank could not be restored to the device", exception instanceof Exception ? (Exception) exception : new Exception(exception));
+        }
+    }
+
+    /**
+     * Report the progress of a bank transfer from the thread it is made on.
+     *
+     * @param patchNumber the number of the patch transferred
+     * @param transferred the number of patches transferred so far
+     */
+    private void bankProgressLater(final int patchNumber, final int transferred) {
+        SwingUtilities.invokeLater(() -> bankProgress(transferred));
+    }
+
+    /**
+     * Report the progress of a bank transfer.
+     *
+     * @param transferred the number of patches transferred so far
+     */
+    private void bankProgress(final int transferred) {
+        bankTransferred = transferred;
+        updateStatusBar();
+    }
+
+    /**
+     * Update whether the menu items for loading and saving patches are
+     * enabled.
+     */
+    private void updatePatchMenuItems() {
+        loadPatchMenuItem.setEnabled(patchLoader != null);
+        savePatchMenuItem.setEnabled(patchSender != null);
+        morphPatchMenuItem.setEnabled(patchSender != null);
+        backupBankMenuItem.setEnabled(bankTransfer != null);
+        restoreBankMenuItem.setEnabled(bankTransfer != null);
+    }
+
     /**
      * Update the status bar.
      */
     private void updateStatusBar() {
-        statusBar.setText(String.format(STATUS_BAR_FORMAT, inputDevice != null ? inputDevice : "-", outputDevice != null ? outputDevice : "-"));
+        StringBuilder text = new StringBuilder(String.format(STATUS_BAR_FORMAT, inputDevice != null ? inputDevice : "-", outputDevice != null ? outputDevice : "-"));
+        if (outputDispatcher != null) {
+            OutputStatistics statistics = outputDispatcher.getStatistics();
+            text.append(String.format(STATISTICS_FORMAT, statistics.getSent(), statistics.getCoalesced(), statistics.getDropped(), statistics.getFailed(), statistics.getMaximumDepth()));
+        }
+        if (patchSentMillis >= 0L) {
+            text.append(String.format(PATCH_SENT_FORMAT, patchSentParameters, Parameter.values().length, patchSentMillis));
+        }
+        if (bankTransferred >= 0) {
+            text.append(String.format(BANK_PROGRESS_FORMAT, bankTransferred, Patch.BANK_SIZE));
+        }
+        statusBar.setText(text.toString());
     }
 
     /**
-     * Send a control change via the current output device.
-     *
-     * @param ccNumber the number of the control change
-     * @param ccValue the value of the control change
+     * Update the output statistics in the status bar, and report the first
+     * failure of each burst of failures to send messages.
      */
-    private void patchUpdated(final int ccNumber, final int ccValue) {
-        if (outputDevice != null) {
-            call(() -> {
-                try (Receiver receiver = outputDevice.getReceiver()) {
-                    ShortMessage message = new ShortMessage(ShortMessage.CONTROL_CHANGE | patch.getMidiChannel(), ccNumber, ccValue);
-                    logMessage(message);
-                    receiver.send(message, -1);
-                }
-            });
+    private void updateStatistics() {
+        if (outputDispatcher == null) {
+            return;
+        }
+        updateStatusBar();
+        OutputStatistics statistics = outputDispatcher.getStatistics();
+        boolean failed = statistics.getFailed() > lastFailed;
+        lastFailed = statistics.getFailed();
+        if (failed && !failing) {
+            failing = true;
+            String message = String.format(FAILURE_FORMAT, statistics.getFailed(), statistics.getDropped());
+            ErrorDialog.showDialog(this, "MIDI Output", message, outputDispatcher.getLastFailure());
+        } else if (!failed) {
+            failing = false;
+        }
+    }
+
+    /**
+     * Apply the control changes received from the current input device to
+     * the current patch, and refresh the panels without sending the changes
+     * back to the output device.
+     */
+    private void inputReceived() {
+        if (inputDecoder != null && inputDecoder.drain(patch)) {
+            refreshPanels();
         }
     }
 
     /**
-     * Log a MIDI message.
+     * Refresh the panels from the current patch without sending the changes
+     * to the output device.
+     */
+    private void refreshPanels() {
+        osc1Panel.refreshPatch(patch);
+        osc2Panel.refreshPatch(patch);
+        lfo1Panel.refreshPatch(patch);
+        lfo2Panel.refreshPatch(patch);
+        vcfPanel.refreshPatch(patch);
+        vcaPanel.refreshPatch(patch);
+    }
+
+    /**
+     * Send a control change via the current output device.
      *
-     * @param message the MIDI message to log
-     */
-    private void logMessage(final MidiMessage message) {
-        if (LOGGER.isLoggable(Level.INFO)) {
-            byte[] data = message.getMessage();
-            StringBuilder sb = new StringBuilder("Message : ");
-            for (int i = 0; i < data.length; ++i) {
-                if (i > 0) {
-                    sb.append(' ');
-                }
-                sb.append(String.format("%02X", data[i]));
-            }
-            LOGGER.info(sb.toString());
+     * @param ccNumber the number of the control change
+     * @param ccValue the value of the control change
+     */
+    private void patchUpdated(final int ccNumber, final int ccValue) {
+        if (outputDispatcher != null) {
+            outputDispatcher.sendControlChange(patch.getMidiChannel(), ccNumber, ccValue);
         }
     }
 }
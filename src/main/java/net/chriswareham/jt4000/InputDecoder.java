@@ -0,0 +1,214 @@
+package net.chriswareham.jt4000;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import net.chriswareham.midi.ControllerState;
+import net.chriswareham.midi.EventRing;
+import net.chriswareham.midi.MidiTrace;
+
+/**
+ * This class provides a receiver that decodes the control changes sent by a
+ * Behringer JT-4000 when its knobs are turned. Messages are decoded on the
+ * thread that delivers them, without allocating or blocking, into primitive
+ * events published to a single-producer single-consumer {@link EventRing}.
+ * The event dispatch thread drains the ring once per display frame and
+ * applies only the latest value of each parameter, so a knob sweep never
+ * floods the event queue. The receiver must only be attached to one
+ * transmitter, as the ring has a single producer.
+ *
+ * <p>Every control change received is also written into the shadow of the
+ * values the device holds, if one is set, and a program change from the
+ * device makes the shadow forget what it held for its channel, so knobs
+ * turned and programs changed on the panel are never skipped when only the
+ * parameters that differ are sent. System Exclusive messages from the
+ * device, such as patch dumps, describe what it holds without changing it,
+ * so they leave the shadow as it is.
+ */
+public class InputDecoder implements Receiver {
+    /**
+     * The value of a parameter with no control change drained.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The parameters that are decoded.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * Pack a control change for a parameter into an event.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param parameter the parameter
+     * @param ccValue the control change value, 0-127
+     * @return the event
+     */
+    static int toEvent(final int channel, final Parameter parameter, final int ccValue) {
+        return channel << 16 | parameter.ordinal() << 8 | ccValue;
+    }
+
+    /**
+     * The ring of decoded control changes.
+     */
+    private final EventRing ring;
+
+    /**
+     * The latest control change value of each parameter on the channel being
+     * drained, or {@link #EMPTY} if there is none. Used only by the draining
+     * thread.
+     */
+    private final int[] latest = new int[PARAMETERS.length];
+
+    /**
+     * The channel being drained. Used only by the draining thread.
+     */
+    private int drainChannel;
+
+    /**
+     * The consumer of drained events.
+     */
+    private final IntConsumer eventConsumer = this::collect;
+
+    /**
+     * The trace to record received messages in, or null if they are not traced.
+     */
+    private volatile MidiTrace trace;
+
+    /**
+     * The shadow of the values the device holds, or null if there is none.
+     */
+    private volatile ControllerState controllerState;
+
+    /**
+     * Construct an instance of a receiver that decodes control changes.
+     */
+    public InputDecoder() {
+        this(EventRing.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an instance of a receiver that decodes control changes.
+     *
+     * @param capacity the number of control changes that can wait to be
+     *        drained, which must be a power of two
+     */
+    public InputDecoder(final int capacity) {
+        ring = new EventRing(capacity);
+    }
+
+    /**
+     * Get the number of control changes dropped because too many were
+     * waiting to be drained.
+     *
+     * @return the number of control changes dropped
+     */
+    public long getDropped() {
+        return ring.getDropped();
+    }
+
+    /**
+     * Set the trace to record received messages in.
+     *
+     * @param trace the trace, or null to stop recording received messages
+     */
+    public void setTrace(final MidiTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Set the shadow of the values the device holds, which is kept up to date
+     * with the messages received from the device.
+     *
+     * @param controllerState the shadow, or null to stop updating a shadow
+     */
+    public void setControllerState(final ControllerState controllerState) {
+        this.controllerState = controllerState;
+    }
+
+    /**
+     * Decode a message received from the device. Control changes for patch
+     * parameters are published to the ring, and every control change and
+     * program change updates the shadow of the values the device holds;
+     * other messages are ignored.
+     *
+     * @param message the message
+     * @param timestamp the timestamp of the message, ignored
+     */
+    @Override
+    public void send(final MidiMessage message, final long timestamp) {
+        MidiTrace currentTrace = trace;
+        if (currentTrace != null) {
+            currentTrace.recordIncoming(message);
+        }
+        ControllerState currentControllerState = controllerState;
+        if (!(message instanceof ShortMessage)) {
+            return;
+        }
+        ShortMessage shortMessage = (ShortMessage) message;
+        if (shortMessage.getCommand() == ShortMessage.PROGRAM_CHANGE && currentControllerState != null) {
+            currentControllerState.invalidate(shortMessage.getChannel());
+        }
+        if (shortMessage.getCommand() != ShortMessage.CONTROL_CHANGE) {
+            return;
+        }
+        if (currentControllerState != null) {
+            currentControllerState.set(shortMessage.getChannel(), shortMessage.getData1(), shortMessage.getData2());
+        }
+        Parameter parameter = Parameter.fromCcNumber(shortMessage.getData1());
+        if (parameter != null) {
+            ring.offer(toEvent(shortMessage.getChannel(), parameter, shortMessage.getData2()));
+        }
+    }
+
+    /**
+     * Apply the latest value of each parameter waiting in the ring to a
+     * patch. Only control changes on the MIDI channel of the patch are
+     * applied; those on other channels are discarded. Must only be called by
+     * one thread, normally the event dispatch thread once per display frame.
+     *
+     * @param patch the patch
+     * @return whether any parameter of the patch was updated
+     */
+    public boolean drain(final Patch patch) {
+        Arrays.fill(latest, EMPTY);
+        drainChannel = patch.getMidiChannel();
+        if (ring.drain(eventConsumer) == 0) {
+            return false;
+        }
+        boolean updated = false;
+        for (Parameter parameter : PARAMETERS) {
+            int ccValue = latest[parameter.ordinal()];
+            if (ccValue != EMPTY) {
+                parameter.setCcValue(patch, ccValue);
+                updated = true;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Collect a drained event as the latest value of its parameter, if it is
+     * on the channel being drained.
+     *
+     * @param event the event
+     */
+    private void collect(final int event) {
+        if ((event >>> 16) == drainChannel) {
+            latest[(event >>> 8) & 0xFF] = event & 0x7F;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        trace = null;
+        controllerState = null;
+    }
+}
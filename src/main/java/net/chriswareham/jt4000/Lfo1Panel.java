@@ -70,6 +70,7 @@ public class Lfo1Panel extends AbstractEditorPanel {
      *
      * @param patch the patch to edit
      */
+    @Override
     public void setPatch(final Patch patch) {
         this.patch = patch;
 
@@ -60,6 +60,7 @@ public class Lfo2Panel extends AbstractEditorPanel {
      *
      * @param patch the patch to edit
      */
+    @Override
     public void setPatch(final Patch patch) {
         this.patch = patch;
 
@@ -15,6 +15,22 @@ public enum LfoDestination {
      */
     OSC("OSC", 64);
 
+    /**
+     * The enumeration values, in order of their MIDI control change values.
+     */
+    private static final LfoDestination[] VALUES = values();
+
+    /**
+     * Get the enumeration value with the MIDI control change value nearest
+     * to a control change value.
+     *
+     * @param ccValue the MIDI control change value
+     * @return the enumeration value
+     */
+    public static LfoDestination fromCcValue(final int ccValue) {
+        return ValueUtils.fromCcValue(VALUES, LfoDestination::getCcValue, ccValue);
+    }
+
     /**
      * The description of the enumeration value.
      */
@@ -20,6 +20,22 @@ public enum LfoWave {
      */
     SAW("Saw", 127);
 
+    /**
+     * The enumeration values, in order of their MIDI control change values.
+     */
+    private static final LfoWave[] VALUES = values();
+
+    /**
+     * Get the enumeration value with the MIDI control change value nearest
+     * to a control change value.
+     *
+     * @param ccValue the MIDI control change value
+     * @return the enumeration value
+     */
+    public static LfoWave fromCcValue(final int ccValue) {
+        return ValueUtils.fromCcValue(VALUES, LfoWave::getCcValue, ccValue);
+    }
+
     /**
      * The description of the enumeration value.
      */
@@ -0,0 +1,229 @@
+package net.chriswareham.jt4000;
+
+import java.awt.BorderLayout;
+import java.awt.Window;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.ListSelectionEvent;
+
+import net.chriswareham.gui.AbstractDialog;
+import net.chriswareham.gui.DefaultButton;
+
+/**
+ * This class provides a dialog for browsing a bank of patches. In audition
+ * mode each patch is sent to the device as the user selects it, so the bank
+ * can be stepped through by ear with the arrow keys. If the dialog is closed
+ * without using a patch, the device is switched back to the current patch.
+ */
+public class LibraryDialog extends AbstractDialog {
+    /**
+     * The serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The format string for the status of the dialog.
+     */
+    private static final String STATUS_FORMAT = "%d patches";
+
+    /**
+     * The format string for the status of the dialog after a patch has been
+     * auditioned.
+     */
+    private static final String AUDITION_STATUS_FORMAT = "%d patches, %d parameters sent";
+
+    /**
+     * The bank of patches.
+     */
+    private final PatchBank bank;
+
+    /**
+     * The current patch of the editor.
+     */
+    private final Patch currentPatch;
+
+    /**
+     * The sender to audition patches with, or null if there is no output
+     * device.
+     */
+    private final PatchSender sender;
+
+    /**
+     * The auditioner of the patches, or null if there is no output device.
+     */
+    private final PatchAuditioner auditioner;
+
+    /**
+     * The listeners to inform when a patch has been selected.
+     */
+    private final List<PatchSelectedListener> patchSelectedListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The list of patches.
+     */
+    private final JList<String> patchList = new JList<>();
+
+    /**
+     * The check box for audition mode.
+     */
+    private final JCheckBox auditionCheckBox = new JCheckBox("Audition");
+
+    /**
+     * The status of the dialog.
+     */
+    private final JLabel statusLabel = new JLabel();
+
+    /**
+     * Whether the selection is being changed by the dialog rather than the
+     * user, so the patch selected is not auditioned.
+     */
+    private boolean populating;
+
+    /**
+     * Whether the device holds an auditioned patch rather than the current
+     * patch.
+     */
+    private boolean auditioned;
+
+    /**
+     * Construct an instance of a dialog for browsing a bank of patches.
+     *
+     * @param parent the parent window
+     * @param bank the bank of patches
+     * @param sender the sender to audition patches with, or null if there is
+     *        no output device
+     * @param currentPatch the current patch of the editor, whose MIDI channel
+     *        patches are auditioned on and which the device is switched back
+     *        to if no patch is used
+     */
+    public LibraryDialog(final Window parent, final PatchBank bank, final PatchSender sender, final Patch currentPatch) {
+        super(parent, "Library");
+        this.bank = bank;
+        this.sender = sender;
+        this.currentPatch = currentPatch;
+        auditioner = sender != null ? new PatchAuditioner(bank, sender, currentPatch.getMidiChannel()) : null;
+    }
+
+    /**
+     * Add a listener to inform when a patch has been selected.
+     *
+     * @param listener a listener to inform when a patch has been selected
+     * @return the dialog
+     */
+    public LibraryDialog addPatchSelectedListener(final PatchSelectedListener listener) {
+        patchSelectedListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void createInterface() {
+        getContentPane().setLayout(new BorderLayout(0, 2));
+
+        patchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        patchList.setPrototypeCellValue("MMMMMMMMM");
+        patchList.setVisibleRowCount(20);
+        patchList.addListSelectionListener(this::patchListSelected);
+
+        getContentPane().add(new JScrollPane(patchList), BorderLayout.CENTER);
+
+        auditionCheckBox.setEnabled(auditioner != null);
+        auditionCheckBox.setSelected(auditioner != null);
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(auditionCheckBox);
+        buttonPanel.add(new DefaultButton("Use Patch", event -> usePatch()));
+        buttonPanel.add(new DefaultButton("Close", event -> close()));
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(statusLabel, BorderLayout.NORTH);
+        southPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        getContentPane().add(southPanel, BorderLayout.SOUTH);
+
+        addWindowClosedListener(event -> closed());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void populateInterface() {
+        patchList.setModel(new AbstractListModel<String>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public int getSize() {
+                return bank.size();
+            }
+
+            @Override
+            public String getElementAt(final int index) {
+                return String.format("%6d  %s", index + 1, bank.getPatchName(index));
+            }
+        });
+        statusLabel.setText(String.format(STATUS_FORMAT, bank.size()));
+        if (bank.size() > 0) {
+            populating = true;
+            patchList.setSelectedIndex(0);
+            populating = false;
+        }
+    }
+
+    /**
+     * Audition the selected patch if audition mode is on.
+     *
+     * @param event the selection event
+     */
+    private void patchListSelected(final ListSelectionEvent event) {
+        int index = patchList.getSelectedIndex();
+        if (index >= 0 && !populating && auditioner != null && auditionCheckBox.isSelected()) {
+            int sent = auditioner.select(index);
+            auditioned = true;
+            statusLabel.setText(String.format(AUDITION_STATUS_FORMAT, bank.size(), sent));
+        }
+    }
+
+    /**
+     * Inform the listeners that the selected patch has been chosen, and close
+     * the dialog.
+     */
+    private void usePatch() {
+        int index = patchList.getSelectedIndex();
+        if (index < 0) {
+            return;
+        }
+        Patch patch = new Patch();
+        patch.initialise();
+        bank.get(index, patch);
+        for (PatchSelectedListener listener : patchSelectedListeners) {
+            listener.selected(patch);
+        }
+        auditioned = false;
+        close();
+    }
+
+    /**
+     * Stop auditioning once the dialog has closed, and switch the device back
+     * to the current patch if it holds an auditioned patch that was not used.
+     */
+    private void closed() {
+        if (auditioner != null) {
+            auditioner.close();
+        }
+        if (auditioned) {
+            sender.sendChangesCoalesced(currentPatch);
+            auditioned = false;
+        }
+    }
+}
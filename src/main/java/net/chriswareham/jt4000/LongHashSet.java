@@ -0,0 +1,181 @@
+package net.chriswareham.jt4000;
+
+import java.util.Arrays;
+
+/**
+ * This class provides a set of long values, such as patch fingerprints, held
+ * in a single array with open addressing and linear probing. Values are
+ * never boxed, so the set costs between 10 and 21 bytes per value depending
+ * on how recently it grew, against around 60 for a hash set of boxed longs.
+ * Zero is held outside the table, as it marks an empty slot. The set is not
+ * safe for use by more than one thread.
+ */
+public class LongHashSet {
+    /**
+     * The default number of values the set holds before growing.
+     */
+    public static final int DEFAULT_EXPECTED_SIZE = 1024;
+
+    /**
+     * The multiplier that spreads values over the table, the golden ratio as
+     * a 64 bit fraction.
+     */
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The largest table, which is the largest power of two array length.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The slots of the table, zero where a slot is empty.
+     */
+    private long[] table;
+
+    /**
+     * The number of bits a spread value is shifted right by to give a slot.
+     */
+    private int shift;
+
+    /**
+     * The number of values in the table at which it grows, three quarters
+     * of its length.
+     */
+    private int threshold;
+
+    /**
+     * The number of values in the table.
+     */
+    private int tableSize;
+
+    /**
+     * Whether the set holds zero.
+     */
+    private boolean containsZero;
+
+    /**
+     * Construct an instance of an empty set.
+     */
+    public LongHashSet() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Construct an instance of an empty set that holds a number of values
+     * before growing.
+     *
+     * @param expectedSize the number of values the set holds before growing
+     */
+    public LongHashSet(final int expectedSize) {
+        allocate((int) Math.min(MAXIMUM_CAPACITY, Long.highestOneBit(Math.max(expectedSize, 3) * 4L / 3L - 1L) << 1));
+    }
+
+    /**
+     * Get the number of values in the set.
+     *
+     * @return the number of values in the set
+     */
+    public int size() {
+        return tableSize + (containsZero ? 1 : 0);
+    }
+
+    /**
+     * Get whether the set holds a value.
+     *
+     * @param value the value
+     * @return whether the set holds the value
+     */
+    public boolean contains(final long value) {
+        if (value == 0L) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        for (int slot = slot(value); table[slot] != 0L; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a value to the set.
+     *
+     * @param value the value
+     * @return whether the value was added, which it is not if the set holds
+     *         it already
+     */
+    public boolean add(final long value) {
+        if (value == 0L) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int mask = table.length - 1;
+        int slot = slot(value);
+        while (table[slot] != 0L) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (tableSize == threshold) {
+            grow();
+            return add(value);
+        }
+        table[slot] = value;
+        ++tableSize;
+        return true;
+    }
+
+    /**
+     * Remove every value from the set, keeping its table.
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+        tableSize = 0;
+        containsZero = false;
+    }
+
+    /**
+     * Get the slot a value is first probed for at.
+     *
+     * @param value the value
+     * @return the slot
+     */
+    private int slot(final long value) {
+        return (int) ((value * SPREAD) >>> shift);
+    }
+
+    /**
+     * Allocate an empty table.
+     *
+     * @param capacity the length of the table, a power of two
+     */
+    private void allocate(final int capacity) {
+        table = new long[capacity];
+        shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+        threshold = capacity / 4 * 3;
+    }
+
+    /**
+     * Double the length of the table and insert every value again.
+     */
+    private void grow() {
+        if (table.length == MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Set is full");
+        }
+        long[] old = table;
+        allocate(old.length << 1);
+        int mask = table.length - 1;
+        for (long value : old) {
+            if (value != 0L) {
+                int slot = slot(value);
+                while (table[slot] != 0L) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+}
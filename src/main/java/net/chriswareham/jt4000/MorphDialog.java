@@ -0,0 +1,203 @@
+package net.chriswareham.jt4000;
+
+import java.awt.BorderLayout;
+import java.awt.Window;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+
+import net.chriswareham.gui.AbstractDialog;
+import net.chriswareham.gui.DefaultButton;
+import net.chriswareham.gui.GridBagPanel;
+import net.chriswareham.gui.IntegerSpinner;
+import net.chriswareham.midi.OutputDispatcher;
+
+/**
+ * This class provides a dialog for morphing between the current patch and
+ * another patch on the device, either by moving a slider or over a duration.
+ * When the dialog is closed the listeners are informed of the patch the
+ * morph has left the device holding, so the editor can show it.
+ */
+public class MorphDialog extends AbstractDialog {
+    /**
+     * The serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default duration of a timed morph in milliseconds.
+     */
+    private static final int DEFAULT_DURATION = 2000;
+
+    /**
+     * The longest duration of a timed morph in milliseconds.
+     */
+    private static final int MAXIMUM_DURATION = 60000;
+
+    /**
+     * The patch the morph starts from.
+     */
+    private final Patch from;
+
+    /**
+     * The morph.
+     */
+    private final PatchMorph morph;
+
+    /**
+     * The MIDI channel to play the morph on.
+     */
+    private final int midiChannel;
+
+    /**
+     * The engine that plays the morph.
+     */
+    private final MorphEngine engine;
+
+    /**
+     * The slider for the position of the morph.
+     */
+    private final JSlider positionSlider;
+
+    /**
+     * The spinner for the duration of a timed morph in milliseconds.
+     */
+    private final IntegerSpinner durationSpinner = new IntegerSpinner(new SpinnerNumberModel(DEFAULT_DURATION, 1, MAXIMUM_DURATION, 100));
+
+    /**
+     * The listeners to inform of the patch the morph leaves the device
+     * holding.
+     */
+    private final List<PatchSelectedListener> patchSelectedListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Whether the slider is being moved by the dialog rather than the user,
+     * so the morph is not moved with it.
+     */
+    private boolean updating;
+
+    /**
+     * Construct an instance of a dialog for morphing between two patches.
+     *
+     * @param parent the parent window
+     * @param from the patch to morph from
+     * @param to the patch to morph to
+     * @param dispatcher the dispatcher to send the morph with
+     */
+    public MorphDialog(final Window parent, final Patch from, final Patch to, final OutputDispatcher dispatcher) {
+        super(parent, "Morph");
+        this.from = from;
+        morph = new PatchMorph(from, to);
+        midiChannel = from.getMidiChannel();
+        engine = new MorphEngine(dispatcher);
+        positionSlider = new JSlider(0, morph.getSteps(), 0);
+    }
+
+    /**
+     * Add a listener to inform of the patch the morph leaves the device
+     * holding once the dialog has closed.
+     *
+     * @param listener a listener to inform of the patch the morph leaves the
+     *        device holding
+     * @return the dialog
+     */
+    public MorphDialog addPatchSelectedListener(final PatchSelectedListener listener) {
+        patchSelectedListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void createInterface() {
+        getContentPane().setLayout(new BorderLayout(0, 2));
+
+        positionSlider.addChangeListener(event -> positionChanged());
+
+        GridBagPanel panel = new GridBagPanel()
+            .addCell("Position:")
+            .addCell(positionSlider, true)
+            .endRow()
+            .addCell("Duration (ms):")
+            .addCell(durationSpinner)
+            .endRow();
+
+        getContentPane().add(panel, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(new DefaultButton("Play", event -> play()));
+        buttonPanel.add(new DefaultButton("Stop", event -> engine.stop()));
+        buttonPanel.add(new DefaultButton("Close", event -> close()));
+
+        getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+
+        addWindowClosedListener(event -> closed());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void populateInterface() {
+        engine.setPosition(morph, midiChannel, 0.0);
+    }
+
+    /**
+     * Move the morph to the position of the slider as the user moves it, by
+     * dragging, clicking the track or with the keyboard.
+     */
+    private void positionChanged() {
+        if (!updating) {
+            engine.setPosition(morph, midiChannel, (double) positionSlider.getValue() / morph.getSteps());
+        }
+    }
+
+    /**
+     * Move the slider without moving the morph.
+     *
+     * @param position the position of the slider
+     */
+    private void setSliderPosition(final int position) {
+        updating = true;
+        positionSlider.setValue(position);
+        updating = false;
+    }
+
+    /**
+     * Play the morph over the chosen duration from the start, and move the
+     * slider to the end once it has been played.
+     */
+    private void play() {
+        engine.setPosition(morph, midiChannel, 0.0);
+        setSliderPosition(0);
+        engine.play(morph, midiChannel, Duration.ofMillis((Integer) durationSpinner.getValue()))
+            .thenRun(() -> SwingUtilities.invokeLater(() -> setSliderPosition(morph.getSteps())));
+    }
+
+    /**
+     * Stop the engine once the dialog has closed, and inform the listeners of
+     * the patch the morph has left the device holding, if it has moved from
+     * the patch it started from.
+     */
+    private void closed() {
+        engine.close();
+        int step = engine.getStep();
+        if (step > 0) {
+            Patch patch = new Patch();
+            patch.initialise();
+            patch.setMidiChannel(from.getMidiChannel());
+            patch.setPatchNumber(from.getPatchNumber());
+            patch.setPatchName(from.getPatchName());
+            morph.getPatch(step, patch);
+            for (PatchSelectedListener listener : patchSelectedListeners) {
+                listener.selected(patch);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package net.chriswareham.jt4000;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.chriswareham.midi.ControllerState;
+import net.chriswareham.midi.OutputDispatcher;
+
+/**
+ * This class provides an engine that plays {@link PatchMorph} morphs to a
+ * device, either over a duration or by following the position of a control
+ * such as a slider. Each step sends only the control changes whose values
+ * differ from the step sent before, through the coalescing control change
+ * slots of the dispatcher. The first step of a morph has no step before it,
+ * so it sends only the values that differ from the dispatcher's shadow of
+ * those the device holds, and starting a morph from the patch the device
+ * already has sends nothing. A timed morph is paced by a scheduler that works
+ * out the step due from the time elapsed at each tick, so a tick that runs
+ * late skips ahead rather than falling behind, and a step whose values the
+ * link has not carried yet is replaced by the next rather than queued.
+ */
+public class MorphEngine implements AutoCloseable {
+    /**
+     * The shortest time between the steps of a timed morph.
+     */
+    public static final Duration MINIMUM_STEP_INTERVAL = Duration.ofMillis(5L);
+
+    /**
+     * The parameters morphed.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The dispatcher to send control changes with.
+     */
+    private final OutputDispatcher dispatcher;
+
+    /**
+     * The executor that paces timed morphs.
+     */
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "Patch morph");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The control change numbers of a step.
+     */
+    private final int[] ccNumbers = new int[PARAMETERS.length];
+
+    /**
+     * The control change values of a step.
+     */
+    private final int[] ccValues = new int[PARAMETERS.length];
+
+    /**
+     * The morph being played, or null if none has been. Guarded by the
+     * engine.
+     */
+    private PatchMorph morph;
+
+    /**
+     * The MIDI channel the morph is played on. Guarded by the engine.
+     */
+    private int midiChannel;
+
+    /**
+     * The step of the morph sent last, or -1 if none has been. Guarded by
+     * the engine.
+     */
+    private int step = -1;
+
+    /**
+     * The number of control changes sent. Guarded by the engine.
+     */
+    private long sent;
+
+    /**
+     * The ticks of the timed morph being played, or null if there is none.
+     * Guarded by the engine.
+     */
+    private ScheduledFuture<?> ticks;
+
+    /**
+     * The future of the timed morph being played, or null if there is none.
+     * Guarded by the engine.
+     */
+    private CompletableFuture<Void> future;
+
+    /**
+     * Construct an instance of an engine that plays morphs.
+     *
+     * @param dispatcher the dispatcher to send control changes with
+     */
+    public MorphEngine(final OutputDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Get the number of control changes sent.
+     *
+     * @return the number of control changes sent
+     */
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    /**
+     * Get the step of the morph sent last.
+     *
+     * @return the step sent last, or -1 if none has been
+     */
+    public synchronized int getStep() {
+        return step;
+    }
+
+    /**
+     * Play a morph over a duration, stopping any timed morph being played.
+     *
+     * @param patchMorph the morph
+     * @param channel the MIDI channel to play the morph on
+     * @param duration the duration of the morph
+     * @return a future that completes once the last step has been sent, or
+     *         is cancelled if the morph is stopped first
+     */
+    public synchronized CompletableFuture<Void> play(final PatchMorph patchMorph, final int channel, final Duration duration) {
+        stop();
+        start(patchMorph, channel);
+        CompletableFuture<Void> playing = new CompletableFuture<>();
+        future = playing;
+        long durationNanos = Math.max(1L, duration.toNanos());
+        long interval = Math.max(MINIMUM_STEP_INTERVAL.toNanos(), durationNanos / patchMorph.getSteps());
+        long startTime = System.nanoTime();
+        ticks = timer.scheduleAtFixedRate(() -> tick(playing, startTime, durationNanos), 0L, interval, TimeUnit.NANOSECONDS);
+        return playing;
+    }
+
+    /**
+     * Move a morph to a position, as a slider controlling it is dragged,
+     * stopping any timed morph being played.
+     *
+     * @param patchMorph the morph
+     * @param channel the MIDI channel to play the morph on
+     * @param position the position, from 0 to 1
+     */
+    public synchronized void setPosition(final PatchMorph patchMorph, final int channel, final double position) {
+        stop();
+        start(patchMorph, channel);
+        moveTo((int) Math.round(Math.min(Math.max(position, 0.0), 1.0) * patchMorph.getSteps()));
+    }
+
+    /**
+     * Stop the timed morph being played, if there is one.
+     */
+    public synchronized void stop() {
+        if (ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+        }
+        if (future != null) {
+            future.completeExceptionally(new CancellationException("Morph stopped"));
+            future = null;
+        }
+    }
+
+    /**
+     * Stop the timed morph being played and the scheduler.
+     */
+    @Override
+    public void close() {
+        stop();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Start playing a morph, carrying on from the step sent last if it is
+     * the morph sent last on the same channel. Must be called with the
+     * engine locked.
+     *
+     * @param patchMorph the morph
+     * @param channel the MIDI channel to play the morph on
+     */
+    private void start(final PatchMorph patchMorph, final int channel) {
+        if (patchMorph != morph || channel != midiChannel) {
+            morph = patchMorph;
+            midiChannel = channel;
+            step = -1;
+        }
+    }
+
+    /**
+     * Send the step of a timed morph that is due.
+     *
+     * @param playing the future of the timed morph
+     * @param startTime the time the morph started, from
+     *        {@link System#nanoTime()}
+     * @param durationNanos the duration of the morph in nanoseconds
+     */
+    private synchronized void tick(final CompletableFuture<Void> playing, final long startTime, final long durationNanos) {
+        if (playing != future) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startTime;
+        try {
+            moveTo(elapsed >= durationNanos ? morph.getSteps() : (int) (elapsed * morph.getSteps() / durationNanos));
+        } catch (RuntimeException exception) {
+            finish();
+            playing.completeExceptionally(exception);
+            return;
+        }
+        if (elapsed >= durationNanos) {
+            finish();
+            playing.complete(null);
+        }
+    }
+
+    /**
+     * Stop the ticks of the timed morph being played, leaving its future to
+     * be completed. Must be called with the engine locked.
+     */
+    private void finish() {
+        ticks.cancel(false);
+        ticks = null;
+        future = null;
+    }
+
+    /**
+     * Send the control changes that take the morph to a step, or for the
+     * first step those that the device does not hold already. Must be
+     * called with the engine locked.
+     *
+     * @param toStep the step
+     */
+    private void moveTo(final int toStep) {
+        if (toStep == step) {
+            return;
+        }
+        int count = morph.getChanges(step, toStep, ccNumbers, ccValues);
+        ControllerState controllerState = dispatcher.getControllerState();
+        for (int i = 0; i < count; ++i) {
+            if (step >= 0 || controllerState.get(midiChannel, ccNumbers[i]) != ccValues[i]) {
+                dispatcher.sendControlChange(midiChannel, ccNumbers[i], ccValues[i]);
+                ++sent;
+            }
+        }
+        step = toStep;
+    }
+}
@@ -82,6 +82,7 @@ public class Osc1Panel extends AbstractEditorPanel {
      *
      * @param patch the patch to edit
      */
+    @Override
     public void setPatch(final Patch patch) {
         this.patch = patch;
 
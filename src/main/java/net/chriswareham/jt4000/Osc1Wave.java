@@ -44,6 +44,22 @@ public enum Osc1Wave {
      */
     NOISE("Noise", 126);
 
+    /**
+     * The enumeration values, in order of their MIDI control change values.
+     */
+    private static final Osc1Wave[] VALUES = values();
+
+    /**
+     * Get the enumeration value with the MIDI control change value nearest
+     * to a control change value.
+     *
+     * @param ccValue the MIDI control change value
+     * @return the enumeration value
+     */
+    public static Osc1Wave fromCcValue(final int ccValue) {
+        return ValueUtils.fromCcValue(VALUES, Osc1Wave::getCcValue, ccValue);
+    }
+
     /**
      * The description of the enumeration value.
      */
@@ -65,6 +65,7 @@ public class Osc2Panel extends AbstractEditorPanel {
      *
      * @param patch the patch to edit
      */
+    @Override
     public void setPatch(final Patch patch) {
         this.patch = patch;
 
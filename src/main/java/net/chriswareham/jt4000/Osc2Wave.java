@@ -34,6 +34,22 @@ public enum Osc2Wave {
      */
     NOISE("Noise", 105);
 
+    /**
+     * The enumeration values, in order of their MIDI control change values.
+     */
+    private static final Osc2Wave[] VALUES = values();
+
+    /**
+     * Get the enumeration value with the MIDI control change value nearest
+     * to a control change value.
+     *
+     * @param ccValue the MIDI control change value
+     * @return the enumeration value
+     */
+    public static Osc2Wave fromCcValue(final int ccValue) {
+        return ValueUtils.fromCcValue(VALUES, Osc2Wave::getCcValue, ccValue);
+    }
+
     /**
      * The description of the enumeration value.
      */
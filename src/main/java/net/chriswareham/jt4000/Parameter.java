@@ -0,0 +1,277 @@
+package net.chriswareham.jt4000;
+
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * This enumeration describes the parameters of a Behringer JT-4000 patch that
+ * are sent as MIDI control changes, with the control change number of each
+ * and how its value maps to and from a control change value. The order of
+ * the constants is the order parameters are stored in a patch dump, so new
+ * parameters must only be added at the end.
+ */
+public enum Parameter {
+    /**
+     * The oscillator 1 wave.
+     */
+    OSC1_WAVE(24, patch -> patch.getOsc1Wave().getCcValue(), (patch, ccValue) -> patch.setOsc1Wave(Osc1Wave.fromCcValue(ccValue))),
+
+    /**
+     * The oscillator 1 coarse tune.
+     */
+    OSC1_COARSE_TUNE(115, ParameterScale.SCALE_24, Patch::getOsc1CoarseTune, Patch::setOsc1CoarseTune),
+
+    /**
+     * The oscillator 1 fine tune.
+     */
+    OSC1_FINE_TUNE(111, ParameterScale.SCALE_99, Patch::getOsc1FineTune, Patch::setOsc1FineTune),
+
+    /**
+     * The oscillator 1 modulation amount.
+     */
+    OSC1_MOD_AMOUNT(113, ParameterScale.SCALE_99, Patch::getOsc1ModAmount, Patch::setOsc1ModAmount),
+
+    /**
+     * The oscillator 2 wave.
+     */
+    OSC2_WAVE(25, patch -> patch.getOsc2Wave().getCcValue(), (patch, ccValue) -> patch.setOsc2Wave(Osc2Wave.fromCcValue(ccValue))),
+
+    /**
+     * The oscillator 2 coarse tune.
+     */
+    OSC2_COARSE_TUNE(116, ParameterScale.SCALE_24, Patch::getOsc2CoarseTune, Patch::setOsc2CoarseTune),
+
+    /**
+     * The oscillator 2 fine tune.
+     */
+    OSC2_FINE_TUNE(112, ParameterScale.SCALE_99, Patch::getOsc2FineTune, Patch::setOsc2FineTune),
+
+    /**
+     * The oscillator 2 modulation amount.
+     */
+    OSC2_MOD_AMOUNT(114, ParameterScale.SCALE_99, Patch::getOsc2ModAmount, Patch::setOsc2ModAmount),
+
+    /**
+     * The low frequency oscillator 1 wave.
+     */
+    LFO1_WAVE(54, patch -> patch.getLfo1Wave().getCcValue(), (patch, ccValue) -> patch.setLfo1Wave(LfoWave.fromCcValue(ccValue))),
+
+    /**
+     * The low frequency oscillator 1 rate.
+     */
+    LFO1_RATE(72, ParameterScale.SCALE_99, Patch::getLfo1Rate, Patch::setLfo1Rate),
+
+    /**
+     * The low frequency oscillator 1 amount.
+     */
+    LFO1_AMOUNT(70, ParameterScale.SCALE_99, Patch::getLfo1Amount, Patch::setLfo1Amount),
+
+    /**
+     * The low frequency oscillator 1 destination.
+     */
+    LFO1_DESTINATION(56, patch -> patch.getLfo1Destination().getCcValue(), (patch, ccValue) -> patch.setLfo1Destination(LfoDestination.fromCcValue(ccValue))),
+
+    /**
+     * The low frequency oscillator 2 wave.
+     */
+    LFO2_WAVE(55, patch -> patch.getLfo2Wave().getCcValue(), (patch, ccValue) -> patch.setLfo2Wave(LfoWave.fromCcValue(ccValue))),
+
+    /**
+     * The low frequency oscillator 2 rate.
+     */
+    LFO2_RATE(73, ParameterScale.SCALE_99, Patch::getLfo2Rate, Patch::setLfo2Rate),
+
+    /**
+     * The low frequency oscillator 2 amount.
+     */
+    LFO2_AMOUNT(28, ParameterScale.SCALE_99, Patch::getLfo2Amount, Patch::setLfo2Amount),
+
+    /**
+     * The filter cutoff.
+     */
+    VCF_CUTOFF(74, ParameterScale.SCALE_99, Patch::getVcfCutoff, Patch::setVcfCutoff),
+
+    /**
+     * The filter resonance.
+     */
+    VCF_RESONANCE(71, ParameterScale.SCALE_99, Patch::getVcfResonance, Patch::setVcfResonance),
+
+    /**
+     * The filter envelope amount.
+     */
+    VCF_ENV_AMOUNT(47, ParameterScale.SCALE_99, Patch::getVcfEnvAmount, Patch::setVcfEnvAmount),
+
+    /**
+     * The filter envelope attack.
+     */
+    VCF_ENV_ATTACK(85, ParameterScale.SCALE_99, Patch::getVcfEnvAttack, Patch::setVcfEnvAttack),
+
+    /**
+     * The filter envelope decay.
+     */
+    VCF_ENV_DECAY(86, ParameterScale.SCALE_99, Patch::getVcfEnvDecay, Patch::setVcfEnvDecay),
+
+    /**
+     * The filter envelope sustain.
+     */
+    VCF_ENV_SUSTAIN(87, ParameterScale.SCALE_99, Patch::getVcfEnvSustain, Patch::setVcfEnvSustain),
+
+    /**
+     * The filter envelope release.
+     */
+    VCF_ENV_RELEASE(88, ParameterScale.SCALE_99, Patch::getVcfEnvRelease, Patch::setVcfEnvRelease),
+
+    /**
+     * The amplifier envelope attack.
+     */
+    VCA_ENV_ATTACK(81, ParameterScale.SCALE_99, Patch::getVcaEnvAttack, Patch::setVcaEnvAttack),
+
+    /**
+     * The amplifier envelope decay.
+     */
+    VCA_ENV_DECAY(82, ParameterScale.SCALE_99, Patch::getVcaEnvDecay, Patch::setVcaEnvDecay),
+
+    /**
+     * The amplifier envelope sustain.
+     */
+    VCA_ENV_SUSTAIN(83, ParameterScale.SCALE_99, Patch::getVcaEnvSustain, Patch::setVcaEnvSustain),
+
+    /**
+     * The amplifier envelope release.
+     */
+    VCA_ENV_RELEASE(84, ParameterScale.SCALE_99, Patch::getVcaEnvRelease, Patch::setVcaEnvRelease),
+
+    /**
+     * Whether the ring modulator is enabled.
+     */
+    RING_MOD_ENABLED(96, patch -> patch.isRingModEnabled() ? 65 : 0, (patch, ccValue) -> patch.setRingModEnabled(ccValue >= 64)),
+
+    /**
+     * The ring modulator amount.
+     */
+    RING_MOD_AMOUNT(95, ParameterScale.SCALE_99, Patch::getRingModAmount, Patch::setRingModAmount),
+
+    /**
+     * The portamento time.
+     */
+    PORTAMENTO_TIME(5, ParameterScale.SCALE_99, Patch::getPortamentoTime, Patch::setPortamentoTime);
+
+    /**
+     * The number of MIDI control change numbers.
+     */
+    private static final int CC_NUMBERS = 128;
+
+    /**
+     * The parameter for each MIDI control change number, or null if a control
+     * change number is not a parameter.
+     */
+    private static final Parameter[] BY_CC_NUMBER = new Parameter[CC_NUMBERS];
+
+    static {
+        for (Parameter parameter : values()) {
+            BY_CC_NUMBER[parameter.ccNumber] = parameter;
+        }
+    }
+
+    /**
+     * Get the parameter for a MIDI control change number.
+     *
+     * @param ccNumber the MIDI control change number
+     * @return the parameter, or null if the control change number is not a
+     *         parameter
+     */
+    public static Parameter fromCcNumber(final int ccNumber) {
+        return BY_CC_NUMBER[ccNumber & 0x7F];
+    }
+
+    /**
+     * The MIDI control change number of the parameter.
+     */
+    private final int ccNumber;
+
+    /**
+     * The scale of the parameter, or null if it is not a scaled value.
+     */
+    private final ParameterScale scale;
+
+    /**
+     * The function that gets the control change value of the parameter from a patch.
+     */
+    private final ToIntFunction<Patch> ccValueGetter;
+
+    /**
+     * The function that sets the parameter of a patch from a control change value.
+     */
+    private final ObjIntConsumer<Patch> ccValueSetter;
+
+    /**
+     * Construct an instance of an enumeration value for a parameter whose
+     * value is scaled to a control change value.
+     *
+     * @param ccNumber the MIDI control change number of the parameter
+     * @param scale the scale of the parameter
+     * @param getter the function that gets the value of the parameter from a patch
+     * @param setter the function that sets the value of the parameter of a patch
+     */
+    Parameter(final int ccNumber, final ParameterScale scale, final ToIntFunction<Patch> getter, final ObjIntConsumer<Patch> setter) {
+        this.ccNumber = ccNumber;
+        this.scale = scale;
+        this.ccValueGetter = patch -> scale.toCcValue(getter.applyAsInt(patch));
+        this.ccValueSetter = (patch, ccValue) -> setter.accept(patch, scale.toValue(ccValue));
+    }
+
+    /**
+     * Construct an instance of an enumeration value for a parameter whose
+     * value maps directly to a control change value.
+     *
+     * @param ccNumber the MIDI control change number of the parameter
+     * @param ccValueGetter the function that gets the control change value of
+     *        the parameter from a patch
+     * @param ccValueSetter the function that sets the parameter of a patch from
+     *        a control change value
+     */
+    Parameter(final int ccNumber, final ToIntFunction<Patch> ccValueGetter, final ObjIntConsumer<Patch> ccValueSetter) {
+        this.ccNumber = ccNumber;
+        this.scale = null;
+        this.ccValueGetter = ccValueGetter;
+        this.ccValueSetter = ccValueSetter;
+    }
+
+    /**
+     * Get the MIDI control change number of the parameter.
+     *
+     * @return the MIDI control change number of the parameter
+     */
+    public int getCcNumber() {
+        return ccNumber;
+    }
+
+    /**
+     * Get the scale of the parameter.
+     *
+     * @return the scale of the parameter, or null if it is not a scaled value
+     */
+    public ParameterScale getScale() {
+        return scale;
+    }
+
+    /**
+     * Get the control change value of the parameter from a patch.
+     *
+     * @param patch the patch
+     * @return the control change value, 0-127
+     */
+    public int getCcValue(final Patch patch) {
+        return ccValueGetter.applyAsInt(patch);
+    }
+
+    /**
+     * Set the parameter of a patch from a control change value.
+     *
+     * @param patch the patch
+     * @param ccValue the control change value, 0-127
+     */
+    public void setCcValue(final Patch patch, final int ccValue) {
+        ccValueSetter.accept(patch, ccValue & 0x7F);
+    }
+}
@@ -0,0 +1,140 @@
+package net.chriswareham.jt4000;
+
+/**
+ * This enumeration describes the scales the JT-4000 uses to map parameter
+ * values to control change values. Each scale holds a table for mapping
+ * parameter values to control change values and a table for mapping all 128
+ * control change values back to parameter values. The tables are checked
+ * against each other when the class is loaded.
+ */
+public enum ParameterScale {
+    /**
+     * Parameter values 0-24.
+     */
+    SCALE_24(
+        0x00, 0x06, 0x0B, 0x10, 0x16, 0x1B, 0x20, 0x26, 0x2B, 0x30,
+        0x36, 0x3B, 0x40, 0x46, 0x4B, 0x50, 0x56, 0x5B, 0x60, 0x66,
+        0x6B, 0x70, 0x76, 0x7B, 0x7F
+    ),
+
+    /**
+     * Parameter values 0-99.
+     */
+    SCALE_99(
+        0x00, 0x02, 0x03, 0x04, 0x06, 0x07, 0x08, 0x09, 0x0B, 0x0C,
+        0x0D, 0x0F, 0x10, 0x11, 0x12, 0x14, 0x15, 0x16, 0x18, 0x19,
+        0x1A, 0x1B, 0x1D, 0x1E, 0x1F, 0x21, 0x22, 0x23, 0x24, 0x26,
+        0x27, 0x28, 0x2A, 0x2B, 0x2C, 0x2D, 0x2F, 0x30, 0x31, 0x33,
+        0x34, 0x35, 0x36, 0x38, 0x39, 0x3A, 0x3C, 0x3D, 0x3E, 0x3F,
+        0x41, 0x42, 0x43, 0x44, 0x46, 0x47, 0x48, 0x4A, 0x4B, 0x4C,
+        0x4D, 0x4F, 0x50, 0x51, 0x53, 0x54, 0x55, 0x56, 0x58, 0x59,
+        0x5A, 0x5C, 0x5D, 0x5E, 0x5F, 0x61, 0x62, 0x63, 0x65, 0x66,
+        0x67, 0x68, 0x6A, 0x6B, 0x6C, 0x6E, 0x6F, 0x70, 0x71, 0x73,
+        0x74, 0x75, 0x77, 0x78, 0x79, 0x7A, 0x7C, 0x7D, 0x7E, 0x7F
+    );
+
+    /**
+     * The number of control change values.
+     */
+    private static final int CC_VALUES = 128;
+
+    /**
+     * Create the table that maps control change values to parameter values,
+     * where each control change value maps to the highest parameter value
+     * whose control change value does not exceed it.
+     *
+     * @param ccValues the table that maps parameter values to control change values
+     * @return the table that maps control change values to parameter values
+     */
+    private static byte[] createValues(final byte[] ccValues) {
+        byte[] values = new byte[CC_VALUES];
+        int value = 0;
+        for (int ccValue = 0; ccValue < CC_VALUES; ++ccValue) {
+            while (value + 1 < ccValues.length && ccValues[value + 1] <= ccValue) {
+                ++value;
+            }
+            values[ccValue] = (byte) value;
+        }
+        return values;
+    }
+
+    /**
+     * Check that the tables of a scale map every parameter value to a
+     * distinct control change value in ascending order, spanning the full
+     * range of control change values, and that every parameter value maps
+     * back to itself.
+     *
+     * @param name the name of the scale
+     * @param ccValues the table that maps parameter values to control change values
+     * @param values the table that maps control change values to parameter values
+     */
+    private static void validate(final String name, final byte[] ccValues, final byte[] values) {
+        if (ccValues[0] != 0 || ccValues[ccValues.length - 1] != CC_VALUES - 1) {
+            throw new IllegalStateException(name + " does not span the control change values");
+        }
+        for (int value = 0; value < ccValues.length; ++value) {
+            if (value > 0 && ccValues[value] <= ccValues[value - 1]) {
+                throw new IllegalStateException(name + " is not ascending at parameter value " + value);
+            }
+            if (values[ccValues[value]] != value) {
+                throw new IllegalStateException(name + " does not map parameter value " + value + " back to itself");
+            }
+        }
+    }
+
+    /**
+     * The table that maps parameter values to control change values.
+     */
+    private final byte[] ccValues;
+
+    /**
+     * The table that maps control change values to parameter values.
+     */
+    private final byte[] values;
+
+    /**
+     * Construct an instance of an enumeration value.
+     *
+     * @param ccValues the control change value for each parameter value
+     */
+    ParameterScale(final int... ccValues) {
+        this.ccValues = new byte[ccValues.length];
+        for (int value = 0; value < ccValues.length; ++value) {
+            if (ccValues[value] < 0 || ccValues[value] >= CC_VALUES) {
+                throw new IllegalStateException(name() + " has an invalid control change value for parameter value " + value);
+            }
+            this.ccValues[value] = (byte) ccValues[value];
+        }
+        this.values = createValues(this.ccValues);
+        validate(name(), this.ccValues, this.values);
+    }
+
+    /**
+     * Get the maximum parameter value.
+     *
+     * @return the maximum parameter value
+     */
+    public int getMaximum() {
+        return ccValues.length - 1;
+    }
+
+    /**
+     * Map a parameter value to a control change value.
+     *
+     * @param value the parameter value
+     * @return the control change value, or zero if the parameter value is out of range
+     */
+    public int toCcValue(final int value) {
+        return value >= 0 && value < ccValues.length ? ccValues[value] : 0;
+    }
+
+    /**
+     * Map a control change value to a parameter value.
+     *
+     * @param ccValue the control change value, 0-127
+     * @return the parameter value
+     */
+    public int toValue(final int ccValue) {
+        return values[ccValue & 0x7F];
+    }
+}
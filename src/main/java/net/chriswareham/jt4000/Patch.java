@@ -1,6 +1,7 @@
 package net.chriswareham.jt4000;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.SysexMessage;
@@ -9,6 +10,39 @@ import net.chriswareham.midi.MidiUtils;
 
 /**
  * This class describes a Behringer JT-4000 patch.
+ *
+ * <p>A patch is encoded as a System Exclusive patch dump of
+ * {@link #DUMP_LENGTH} bytes. The JT-4000's own System Exclusive format has
+ * not been documented or captured yet, so only the framing, header and ID
+ * are taken from the dumps the device is known to send. Everything from the
+ * MIDI channel onwards is a provisional format defined by this editor, which
+ * round-trips its own patches but may not match what the device sends or
+ * accepts. It is laid out as follows:
+ *
+ * <pre>
+ *   0        0xF0
+ *   1 -   5  header 0x43 0x00 0x7A 0x00 0x76
+ *   6 -  29  ID "LM  0017  " padded with zeros
+ *  30        MIDI channel, 0-15
+ *  31        patch number, 0-31
+ *  32 -  40  patch name, ASCII padded with zeros
+ *  41 -  69  parameters, one control change value each in the order of
+ *            the {@link Parameter} constants
+ *  70 - 123  reserved, zero
+ * 124        checksum of bytes 30-123, such that their sum with the
+ *            checksum is zero modulo 128
+ * 125        0xF7
+ * </pre>
+ *
+ * <p>Parameters are stored as the control change values the JT-4000 uses for
+ * them, which are seven bit values and map back to the parameter values
+ * exactly.
+ *
+ * <p>A patch dump is requested with a System Exclusive message of
+ * {@link #DUMP_REQUEST_LENGTH} bytes: 0xF0, 0x43, 0x20 plus the MIDI channel,
+ * 0x7A, the first ten bytes of the ID, the patch number and 0xF7. This
+ * request is also provisional and defined by this editor; whether the
+ * JT-4000 answers it, or any request, is not known.
  */
 public class Patch implements Serializable {
     /**
@@ -16,6 +50,66 @@ public class Patch implements Serializable {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The number of patches in a bank.
+     */
+    public static final int BANK_SIZE = 32;
+
+    /**
+     * The length of a System Exclusive patch dump.
+     */
+    public static final int DUMP_LENGTH = 126;
+
+    /**
+     * The length of a System Exclusive patch dump request.
+     */
+    public static final int DUMP_REQUEST_LENGTH = 16;
+
+    /**
+     * The maximum length of a patch name.
+     */
+    public static final int NAME_LENGTH = 9;
+
+    /**
+     * The offset of the header in a patch dump.
+     */
+    private static final int HEADER_OFFSET = 1;
+
+    /**
+     * The offset of the ID in a patch dump.
+     */
+    private static final int ID_OFFSET = 6;
+
+    /**
+     * The offset of the MIDI channel in a patch dump.
+     */
+    private static final int CHANNEL_OFFSET = 30;
+
+    /**
+     * The offset of the patch number in a patch dump.
+     */
+    static final int NUMBER_OFFSET = 31;
+
+    /**
+     * The offset of the patch name in a patch dump.
+     */
+    private static final int NAME_OFFSET = 32;
+
+    /**
+     * The offset of the parameters in a patch dump.
+     */
+    private static final int PARAMETERS_OFFSET = 41;
+
+    /**
+     * The offset of the checksum in a patch dump.
+     */
+    private static final int CHECKSUM_OFFSET = 124;
+
+    /**
+     * The parameters in the order they are stored in a patch dump.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
     /**
      * The patch dump header.
      */
@@ -26,10 +120,139 @@ public class Patch implements Serializable {
      */
     private static final byte[] PATCH_DUMP_ID = {'L', 'M', ' ', ' ', '0', '0', '1', '7', ' ', ' ', 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
 
+    /**
+     * The length of the ID in a patch dump request.
+     */
+    private static final int REQUEST_ID_LENGTH = 10;
+
+    /**
+     * The offset basis of the 64 bit FNV-1a hash that fingerprints are
+     * built on.
+     */
+    private static final long FINGERPRINT_BASIS = 0xCBF29CE484222325L;
+
+    /**
+     * The prime of the 64 bit FNV-1a hash that fingerprints are built on.
+     */
+    private static final long FINGERPRINT_PRIME = 0x100000001B3L;
+
+    /**
+     * The byte hashed between the patch name and the parameters, which no
+     * name character can take.
+     */
+    private static final int FINGERPRINT_SEPARATOR = 0x80;
+
+    /**
+     * The bytes every patch dump starts with.
+     */
+    private static final byte[] DUMP_START = createDumpStart();
+
+    /**
+     * Create the bytes every patch dump starts with.
+     *
+     * @return the bytes every patch dump starts with
+     */
+    private static byte[] createDumpStart() {
+        byte[] start = new byte[HEADER_OFFSET + PATCH_DUMP_HEADER.length];
+        start[0] = MidiUtils.SYSEX_INITIAL_BYTE;
+        System.arraycopy(PATCH_DUMP_HEADER, 0, start, HEADER_OFFSET, PATCH_DUMP_HEADER.length);
+        return start;
+    }
+
+    /**
+     * Get the bytes every patch dump starts with, which identify a message as
+     * a patch dump.
+     *
+     * @return the bytes every patch dump starts with
+     */
+    static byte[] getDumpStart() {
+        return DUMP_START.clone();
+    }
+
+    /**
+     * Get whether a buffer holds a patch dump, judging only by its length,
+     * framing, header and ID.
+     *
+     * @param data the buffer
+     * @param offset the offset of the message in the buffer
+     * @param length the length of the message
+     * @return whether the buffer holds a patch dump
+     */
+    static boolean isDump(final byte[] data, final int offset, final int length) {
+        return length == DUMP_LENGTH
+            && data[offset] == MidiUtils.SYSEX_INITIAL_BYTE
+            && matches(data, offset + HEADER_OFFSET, PATCH_DUMP_HEADER)
+            && matches(data, offset + ID_OFFSET, PATCH_DUMP_ID);
+    }
+
+    /**
+     * Create a System Exclusive message that requests a patch dump, in the
+     * provisional request format described on the class.
+     *
+     * @param midiChannel the MIDI channel, 0-15
+     * @param patchNumber the patch number, 0-31
+     * @return the request
+     * @throws InvalidMidiDataException if the request is invalid
+     */
+    static SysexMessage createDumpRequest(final int midiChannel, final int patchNumber) throws InvalidMidiDataException {
+        byte[] request = new byte[DUMP_REQUEST_LENGTH];
+        request[0] = MidiUtils.SYSEX_INITIAL_BYTE;
+        request[1] = PATCH_DUMP_HEADER[0];
+        request[2] = (byte) (0x20 | midiChannel & 0x0F);
+        request[3] = PATCH_DUMP_HEADER[2];
+        System.arraycopy(PATCH_DUMP_ID, 0, request, 4, REQUEST_ID_LENGTH);
+        request[4 + REQUEST_ID_LENGTH] = (byte) (patchNumber & 0x7F);
+        request[DUMP_REQUEST_LENGTH - 1] = MidiUtils.SYSEX_TERMINATING_BYTE;
+        return new SysexMessage(request, request.length);
+    }
+
+    /**
+     * Calculate the checksum of a patch dump.
+     *
+     * @param data the buffer holding the patch dump
+     * @param offset the offset of the patch dump in the buffer
+     * @return the checksum
+     */
+    private static int checksum(final byte[] data, final int offset) {
+        int sum = 0;
+        for (int i = CHANNEL_OFFSET; i < CHECKSUM_OFFSET; ++i) {
+            sum += data[offset + i];
+        }
+        return -sum & 0x7F;
+    }
+
+    /**
+     * Add a byte to a 64 bit FNV-1a hash.
+     *
+     * @param hash the hash
+     * @param value the byte
+     * @return the hash with the byte added
+     */
+    private static long hash(final long hash, final int value) {
+        return (hash ^ value) * FINGERPRINT_PRIME;
+    }
+
+    /**
+     * Check whether a region of a buffer holds the expected bytes.
+     *
+     * @param data the buffer
+     * @param offset the offset of the region in the buffer
+     * @param expected the expected bytes
+     * @return whether the region holds the expected bytes
+     */
+    private static boolean matches(final byte[] data, final int offset, final byte[] expected) {
+        for (int i = 0; i < expected.length; ++i) {
+            if (data[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * The buffer to encode a System Exclusive patch dump into.
      */
-    private final byte[] buffer = new byte[126];
+    private final byte[] buffer = new byte[DUMP_LENGTH];
 
     /**
      * The MIDI channel.
@@ -814,6 +1037,37 @@ public class Patch implements Serializable {
         this.portamentoTime = portamentoTime;
     }
 
+    /**
+     * Get a 64 bit fingerprint of the sound of the patch, for finding
+     * duplicates. The fingerprint covers the canonical form of the patch as
+     * it would be dumped: the patch name without trailing spaces, and the
+     * control change value of every parameter. The MIDI channel and patch
+     * number are left out, so copies of a patch in different slots or
+     * dumped on different channels have the same fingerprint. The hash is
+     * FNV-1a finished with the MurmurHash3 mixer, so that every bit of the
+     * fingerprint depends on every byte.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        int nameLength = Math.min(patchName.length(), NAME_LENGTH);
+        while (nameLength > 0 && patchName.charAt(nameLength - 1) == ' ') {
+            --nameLength;
+        }
+        long fingerprint = FINGERPRINT_BASIS;
+        for (int i = 0; i < nameLength; ++i) {
+            char c = patchName.charAt(i);
+            fingerprint = hash(fingerprint, c < 0x80 ? c : '?');
+        }
+        fingerprint = hash(fingerprint, FINGERPRINT_SEPARATOR);
+        for (Parameter parameter : PARAMETERS) {
+            fingerprint = hash(fingerprint, parameter.getCcValue(this));
+        }
+        fingerprint = (fingerprint ^ (fingerprint >>> 33)) * 0xFF51AFD7ED558CCDL;
+        fingerprint = (fingerprint ^ (fingerprint >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return fingerprint ^ (fingerprint >>> 33);
+    }
+
     /**
      * Serialise the voice as a System Exclusive voice dump.
      *
@@ -821,9 +1075,103 @@ public class Patch implements Serializable {
      * @throws InvalidMidiDataException if the voice data is invalid
      */
     public SysexMessage serialise() throws InvalidMidiDataException {
-        buffer[30] = (byte) midiChannel;
-        buffer[31] = (byte) patchNumber;
+        serialise(buffer, 0);
 
         return new SysexMessage(buffer, buffer.length);
     }
+
+    /**
+     * Serialise the voice as a System Exclusive voice dump into a buffer,
+     * without allocating.
+     *
+     * @param data the buffer to serialise into
+     * @param offset the offset in the buffer to serialise at, which must
+     *        leave room for {@link #DUMP_LENGTH} bytes
+     */
+    public void serialise(final byte[] data, final int offset) {
+        data[offset] = MidiUtils.SYSEX_INITIAL_BYTE;
+        System.arraycopy(PATCH_DUMP_HEADER, 0, data, offset + HEADER_OFFSET, PATCH_DUMP_HEADER.length);
+        System.arraycopy(PATCH_DUMP_ID, 0, data, offset + ID_OFFSET, PATCH_DUMP_ID.length);
+        data[offset + CHANNEL_OFFSET] = (byte) (midiChannel & 0x0F);
+        data[offset + NUMBER_OFFSET] = (byte) (patchNumber & 0x7F);
+        for (int i = 0; i < NAME_LENGTH; ++i) {
+            char c = i < patchName.length() ? patchName.charAt(i) : 0;
+            data[offset + NAME_OFFSET + i] = (byte) (c < 0x80 ? c : '?');
+        }
+        for (Parameter parameter : PARAMETERS) {
+            data[offset + PARAMETERS_OFFSET + parameter.ordinal()] = (byte) parameter.getCcValue(this);
+        }
+        for (int i = PARAMETERS_OFFSET + PARAMETERS.length; i < CHECKSUM_OFFSET; ++i) {
+            data[offset + i] = 0;
+        }
+        data[offset + CHECKSUM_OFFSET] = (byte) checksum(data, offset);
+        data[offset + DUMP_LENGTH - 1] = MidiUtils.SYSEX_TERMINATING_BYTE;
+    }
+
+    /**
+     * Deserialise the voice from a System Exclusive voice dump. The message
+     * only gives access to a copy of its bytes, so this allocates that copy;
+     * {@link #deserialise(byte[], int, int)} does not allocate.
+     *
+     * @param message the System Exclusive voice dump
+     * @throws InvalidMidiDataException if the message is not a valid voice dump
+     */
+    public void deserialise(final SysexMessage message) throws InvalidMidiDataException {
+        deserialise(message.getMessage(), 0, message.getLength());
+    }
+
+    /**
+     * Deserialise the voice from a System Exclusive voice dump held in a
+     * buffer. The voice is only updated if the dump is valid, and no
+     * allocation takes place unless the patch name changes.
+     *
+     * @param data the buffer holding the voice dump
+     * @param offset the offset of the voice dump in the buffer
+     * @param length the length of the voice dump
+     * @throws InvalidMidiDataException if the buffer does not hold a valid voice dump
+     */
+    public void deserialise(final byte[] data, final int offset, final int length) throws InvalidMidiDataException {
+        if (length != DUMP_LENGTH || offset < 0 || offset + length > data.length) {
+            throw new InvalidMidiDataException("Invalid patch dump length " + length);
+        }
+        if (data[offset] != MidiUtils.SYSEX_INITIAL_BYTE || data[offset + DUMP_LENGTH - 1] != MidiUtils.SYSEX_TERMINATING_BYTE) {
+            throw new InvalidMidiDataException("Patch dump is not a System Exclusive message");
+        }
+        if (!matches(data, offset + HEADER_OFFSET, PATCH_DUMP_HEADER) || !matches(data, offset + ID_OFFSET, PATCH_DUMP_ID)) {
+            throw new InvalidMidiDataException("Patch dump has an unrecognised header");
+        }
+        if (data[offset + CHECKSUM_OFFSET] != checksum(data, offset)) {
+            throw new InvalidMidiDataException("Patch dump has an invalid checksum");
+        }
+        if (data[offset + NUMBER_OFFSET] < 0 || data[offset + NUMBER_OFFSET] >= BANK_SIZE) {
+            throw new InvalidMidiDataException("Patch dump has an invalid patch number " + data[offset + NUMBER_OFFSET]);
+        }
+        midiChannel = data[offset + CHANNEL_OFFSET] & 0x0F;
+        patchNumber = data[offset + NUMBER_OFFSET];
+        deserialiseName(data, offset + NAME_OFFSET);
+        for (Parameter parameter : PARAMETERS) {
+            parameter.setCcValue(this, data[offset + PARAMETERS_OFFSET + parameter.ordinal()]);
+        }
+    }
+
+    /**
+     * Deserialise the patch name, only creating a new string if it differs
+     * from the current name.
+     *
+     * @param data the buffer holding the name
+     * @param offset the offset of the name in the buffer
+     */
+    private void deserialiseName(final byte[] data, final int offset) {
+        int length = 0;
+        while (length < NAME_LENGTH && data[offset + length] != 0) {
+            ++length;
+        }
+        boolean same = length == patchName.length();
+        for (int i = 0; same && i < length; ++i) {
+            same = patchName.charAt(i) == data[offset + i];
+        }
+        if (!same) {
+            patchName = new String(data, offset, length, StandardCharsets.US_ASCII);
+        }
+    }
 }
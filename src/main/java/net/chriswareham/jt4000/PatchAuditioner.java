@@ -0,0 +1,214 @@
+package net.chriswareham.jt4000;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class provides an auditioner that sends the patches of a bank to the
+ * device as they are selected, for browsing a library by ear. Each selected
+ * patch is sent as the parameters that differ from what the device holds,
+ * through the coalescing control change slots of the dispatcher, so
+ * selecting patches faster than the link can carry them never queues stale
+ * values and the device always ends up holding the patch the user lands on.
+ *
+ * <p>The neighbours of each selected patch are decoded on a background
+ * thread, further ahead in the direction the selection is moving, so the
+ * next patch is usually ready to send without touching the bank, which may
+ * be a mapped file whose pages have yet to be read. Prefetches that a newer
+ * selection has overtaken are abandoned.
+ */
+public class PatchAuditioner implements AutoCloseable {
+    /**
+     * The default number of patches to prefetch ahead of the selection.
+     */
+    public static final int DEFAULT_PREFETCH = 8;
+
+    /**
+     * The bank of patches.
+     */
+    private final PatchBank bank;
+
+    /**
+     * The sender to send patches with.
+     */
+    private final PatchSender sender;
+
+    /**
+     * The MIDI channel to send patches on.
+     */
+    private final int midiChannel;
+
+    /**
+     * The number of patches to prefetch ahead of the selection.
+     */
+    private final int prefetch;
+
+    /**
+     * The decoded patches, each in the slot given by its index modulo the
+     * number of slots.
+     */
+    private final AtomicReferenceArray<DecodedPatch> decoded;
+
+    /**
+     * The executor that decodes patches ahead of the selection.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Patch prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The number of patches selected, which prefetches check to see if they
+     * have been overtaken.
+     */
+    private volatile long selections;
+
+    /**
+     * The index of the patch selected, or -1 if none has been.
+     */
+    private int selected = -1;
+
+    /**
+     * Construct an instance of an auditioner of the patches in a bank.
+     *
+     * @param bank the bank of patches
+     * @param sender the sender to send patches with
+     * @param midiChannel the MIDI channel to send patches on
+     */
+    public PatchAuditioner(final PatchBank bank, final PatchSender sender, final int midiChannel) {
+        this(bank, sender, midiChannel, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Construct an instance of an auditioner of the patches in a bank.
+     *
+     * @param bank the bank of patches
+     * @param sender the sender to send patches with
+     * @param midiChannel the MIDI channel to send patches on
+     * @param prefetch the number of patches to prefetch ahead of the
+     *        selection
+     */
+    public PatchAuditioner(final PatchBank bank, final PatchSender sender, final int midiChannel, final int prefetch) {
+        this.bank = bank;
+        this.sender = sender;
+        this.midiChannel = midiChannel;
+        this.prefetch = Math.max(1, prefetch);
+        decoded = new AtomicReferenceArray<>(2 * this.prefetch + 2);
+    }
+
+    /**
+     * Get a patch of the bank, decoding it if it has not been prefetched.
+     * The patch is shared with the auditioner and must not be modified.
+     *
+     * @param index the index of the patch
+     * @return the patch
+     */
+    public Patch getPatch(final int index) {
+        DecodedPatch decodedPatch = decoded.get(index % decoded.length());
+        if (decodedPatch == null || decodedPatch.index != index) {
+            decodedPatch = decode(index);
+        }
+        return decodedPatch.patch;
+    }
+
+    /**
+     * Select a patch and send it to the device, then start prefetching its
+     * neighbours. Must be called from a single thread, such as the event
+     * dispatch thread.
+     *
+     * @param index the index of the patch
+     * @return the number of control changes sent
+     */
+    public int select(final int index) {
+        int direction = index < selected ? -1 : 1;
+        selected = index;
+        int sent = sender.sendChangesCoalesced(getPatch(index));
+        long selection = ++selections;
+        executor.execute(() -> prefetch(index, direction, selection));
+        return sent;
+    }
+
+    /**
+     * Stop prefetching patches.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Decode the neighbours of a selected patch that have not been decoded,
+     * the patches ahead of the selection before those behind it, unless a
+     * newer selection overtakes the prefetch.
+     *
+     * @param index the index of the selected patch
+     * @param direction the direction the selection is moving, 1 or -1
+     * @param selection the number of the selection
+     */
+    private void prefetch(final int index, final int direction, final long selection) {
+        for (int distance = 1; distance <= prefetch && selection == selections; ++distance) {
+            prefetch(index + direction * distance);
+            if (distance <= prefetch / 2) {
+                prefetch(index - direction * distance);
+            }
+        }
+    }
+
+    /**
+     * Decode a patch if it is in the bank and has not been decoded.
+     *
+     * @param index the index of the patch
+     */
+    private void prefetch(final int index) {
+        if (index >= 0 && index < bank.size()) {
+            DecodedPatch decodedPatch = decoded.get(index % decoded.length());
+            if (decodedPatch == null || decodedPatch.index != index) {
+                decode(index);
+            }
+        }
+    }
+
+    /**
+     * Decode a patch into its slot.
+     *
+     * @param index the index of the patch
+     * @return the decoded patch
+     */
+    private DecodedPatch decode(final int index) {
+        Patch patch = new Patch();
+        patch.initialise();
+        bank.get(index, patch);
+        patch.setMidiChannel(midiChannel);
+        DecodedPatch decodedPatch = new DecodedPatch(index, patch);
+        decoded.set(index % decoded.length(), decodedPatch);
+        return decodedPatch;
+    }
+
+    /**
+     * This class describes a patch decoded from the bank.
+     */
+    private static final class DecodedPatch {
+        /**
+         * The index of the patch.
+         */
+        private final int index;
+
+        /**
+         * The patch.
+         */
+        private final Patch patch;
+
+        /**
+         * Construct an instance of a patch decoded from the bank.
+         *
+         * @param index the index of the patch
+         * @param patch the patch
+         */
+        DecodedPatch(final int index, final Patch patch) {
+            this.index = index;
+            this.patch = patch;
+        }
+    }
+}
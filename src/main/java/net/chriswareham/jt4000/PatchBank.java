@@ -0,0 +1,1078 @@
+package net.chriswareham.jt4000;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * This class provides a bank of Behringer JT-4000 patches packed as fixed
+ * width records into a single buffer, for holding far more patches than is
+ * practical as {@link Patch} objects. The accessors mirror those of a patch,
+ * taking the index of the patch as an extra argument, and read and write the
+ * record in place. Each record of {@link #RECORD_LENGTH} bytes is laid out as
+ * follows:
+ *
+ * <pre>
+ *   0       MIDI channel, 0-15
+ *   1       patch number, 0-31
+ *   2 - 10  patch name, ASCII padded with zeros
+ *  11 - 39  parameters, one byte each in the order of the {@link Parameter}
+ *           constants, holding the parameter value, the ordinal of an
+ *           enumerated value, or 0 or 1 for a switch
+ * </pre>
+ *
+ * <p>A bank created with a capacity is held on the heap and grows as patches
+ * are added. A bank can also wrap an existing buffer of records, such as a
+ * mapped file, in which case its capacity is fixed.
+ */
+public class PatchBank {
+    /**
+     * The length of a record.
+     */
+    public static final int RECORD_LENGTH = 40;
+
+    /**
+     * The default number of patches a bank can hold before it grows.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The offset of the MIDI channel in a record.
+     */
+    private static final int CHANNEL_OFFSET = 0;
+
+    /**
+     * The offset of the patch number in a record.
+     */
+    private static final int NUMBER_OFFSET = 1;
+
+    /**
+     * The offset of the patch name in a record.
+     */
+    private static final int NAME_OFFSET = 2;
+
+    /**
+     * The offset of the parameters in a record.
+     */
+    private static final int PARAMETERS_OFFSET = NAME_OFFSET + Patch.NAME_LENGTH;
+
+    /**
+     * The number of bits of a character of a patch name in a name key.
+     */
+    private static final int KEY_BITS = 7;
+
+    /**
+     * The parameters, in the order they are held in a record.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The oscillator 1 waves by ordinal.
+     */
+    private static final Osc1Wave[] OSC1_WAVES = Osc1Wave.values();
+
+    /**
+     * The oscillator 2 waves by ordinal.
+     */
+    private static final Osc2Wave[] OSC2_WAVES = Osc2Wave.values();
+
+    /**
+     * The low frequency oscillator waves by ordinal.
+     */
+    private static final LfoWave[] LFO_WAVES = LfoWave.values();
+
+    /**
+     * The low frequency oscillator destinations by ordinal.
+     */
+    private static final LfoDestination[] LFO_DESTINATIONS = LfoDestination.values();
+
+    /**
+     * Get the highest value stored for a parameter: the maximum value of a
+     * scaled parameter, the highest ordinal of an enumerated value, or 1 for
+     * a switch. The lowest value stored for every parameter is 0.
+     *
+     * @param parameter the parameter
+     * @return the highest value stored for the parameter
+     */
+    public static int getHighestValue(final Parameter parameter) {
+        switch (parameter) {
+        case OSC1_WAVE:
+            return OSC1_WAVES.length - 1;
+        case OSC2_WAVE:
+            return OSC2_WAVES.length - 1;
+        case LFO1_WAVE:
+        case LFO2_WAVE:
+            return LFO_WAVES.length - 1;
+        case LFO1_DESTINATION:
+            return LFO_DESTINATIONS.length - 1;
+        case RING_MOD_ENABLED:
+            return 1;
+        default:
+            return parameter.getScale().getMaximum();
+        }
+    }
+
+    /**
+     * Pack a patch name into a name key, a number whose order is the order of
+     * the names. Each of the characters a patch name holds takes seven bits,
+     * so a key holds a whole name.
+     *
+     * @param patchName the patch name
+     * @return the name key
+     */
+    public static long toNameKey(final String patchName) {
+        long key = 0L;
+        for (int i = 0; i < Patch.NAME_LENGTH; ++i) {
+            char c = i < patchName.length() ? patchName.charAt(i) : 0;
+            key = key << KEY_BITS | (c < 0x80 ? c : '?');
+        }
+        return key;
+    }
+
+    /**
+     * The buffer of records.
+     */
+    private ByteBuffer records;
+
+    /**
+     * Whether the bank grows as patches are added.
+     */
+    private final boolean growable;
+
+    /**
+     * The number of patches in the bank.
+     */
+    private int size;
+
+    /**
+     * Construct an instance of an empty bank of patches.
+     */
+    public PatchBank() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an instance of an empty bank of patches.
+     *
+     * @param capacity the number of patches the bank can hold before it grows
+     */
+    public PatchBank(final int capacity) {
+        records = ByteBuffer.allocate(Math.max(1, capacity) * RECORD_LENGTH);
+        growable = true;
+    }
+
+    /**
+     * Construct an instance of a bank of patches that wraps a buffer of
+     * records. The bank holds every record between the position and the limit
+     * of the buffer, and writes to the bank write to the buffer.
+     *
+     * @param records the buffer of records
+     */
+    public PatchBank(final ByteBuffer records) {
+        if (records.remaining() % RECORD_LENGTH != 0) {
+            throw new IllegalArgumentException("Buffer does not hold whole records: " + records.remaining() + " bytes");
+        }
+        this.records = records.slice();
+        growable = false;
+        size = this.records.capacity() / RECORD_LENGTH;
+    }
+
+    /**
+     * Get the number of patches in the bank.
+     *
+     * @return the number of patches in the bank
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of patches the bank can hold before it grows.
+     *
+     * @return the number of patches the bank can hold
+     */
+    public int capacity() {
+        return records.capacity() / RECORD_LENGTH;
+    }
+
+    /**
+     * Get a read-only view of the records of the patches in the bank.
+     *
+     * @return a buffer of the records
+     */
+    public ByteBuffer getRecords() {
+        return records.asReadOnlyBuffer().limit(size * RECORD_LENGTH);
+    }
+
+    /**
+     * Remove every patch from the bank. Does nothing to a bank that wraps a
+     * buffer of records.
+     */
+    public void clear() {
+        if (growable) {
+            size = 0;
+        }
+    }
+
+    /**
+     * Add a patch to the end of the bank.
+     *
+     * @param patch the patch
+     * @return the index of the patch
+     */
+    public int add(final Patch patch) {
+        if (size == capacity()) {
+            grow();
+        }
+        int index = size++;
+        set(index, patch);
+        return index;
+    }
+
+    /**
+     * Double the capacity of the bank.
+     */
+    private void grow() {
+        if (!growable) {
+            throw new IllegalStateException("Bank wraps a buffer of records and cannot grow");
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.multiplyExact(records.capacity(), 2));
+        grown.put(records.duplicate().clear());
+        records = grown;
+    }
+
+    /**
+     * Copy a patch in the bank into a patch object.
+     *
+     * @param index the index of the patch
+     * @param patch the patch object to copy into
+     */
+    public void get(final int index, final Patch patch) {
+        patch.setMidiChannel(getMidiChannel(index));
+        patch.setPatchNumber(getPatchNumber(index));
+        patch.setPatchName(getPatchName(index));
+        patch.setOsc1Wave(getOsc1Wave(index));
+        patch.setOsc1CoarseTune(getOsc1CoarseTune(index));
+        patch.setOsc1FineTune(getOsc1FineTune(index));
+        patch.setOsc1ModAmount(getOsc1ModAmount(index));
+        patch.setOsc2Wave(getOsc2Wave(index));
+        patch.setOsc2CoarseTune(getOsc2CoarseTune(index));
+        patch.setOsc2FineTune(getOsc2FineTune(index));
+        patch.setOsc2ModAmount(getOsc2ModAmount(index));
+        patch.setLfo1Wave(getLfo1Wave(index));
+        patch.setLfo1Rate(getLfo1Rate(index));
+        patch.setLfo1Amount(getLfo1Amount(index));
+        patch.setLfo1Destination(getLfo1Destination(index));
+        patch.setLfo2Wave(getLfo2Wave(index));
+        patch.setLfo2Rate(getLfo2Rate(index));
+        patch.setLfo2Amount(getLfo2Amount(index));
+        patch.setVcfCutoff(getVcfCutoff(index));
+        patch.setVcfResonance(getVcfResonance(index));
+        patch.setVcfEnvAmount(getVcfEnvAmount(index));
+        patch.setVcfEnvAttack(getVcfEnvAttack(index));
+        patch.setVcfEnvDecay(getVcfEnvDecay(index));
+        patch.setVcfEnvSustain(getVcfEnvSustain(index));
+        patch.setVcfEnvRelease(getVcfEnvRelease(index));
+        patch.setVcaEnvAttack(getVcaEnvAttack(index));
+        patch.setVcaEnvDecay(getVcaEnvDecay(index));
+        patch.setVcaEnvSustain(getVcaEnvSustain(index));
+        patch.setVcaEnvRelease(getVcaEnvRelease(index));
+        patch.setRingModEnabled(isRingModEnabled(index));
+        patch.setRingModAmount(getRingModAmount(index));
+        patch.setPortamentoTime(getPortamentoTime(index));
+    }
+
+    /**
+     * Copy a patch object into a patch in the bank.
+     *
+     * @param index the index of the patch
+     * @param patch the patch object to copy
+     */
+    public void set(final int index, final Patch patch) {
+        setMidiChannel(index, patch.getMidiChannel());
+        setPatchNumber(index, patch.getPatchNumber());
+        setPatchName(index, patch.getPatchName());
+        setOsc1Wave(index, patch.getOsc1Wave());
+        setOsc1CoarseTune(index, patch.getOsc1CoarseTune());
+        setOsc1FineTune(index, patch.getOsc1FineTune());
+        setOsc1ModAmount(index, patch.getOsc1ModAmount());
+        setOsc2Wave(index, patch.getOsc2Wave());
+        setOsc2CoarseTune(index, patch.getOsc2CoarseTune());
+        setOsc2FineTune(index, patch.getOsc2FineTune());
+        setOsc2ModAmount(index, patch.getOsc2ModAmount());
+        setLfo1Wave(index, patch.getLfo1Wave());
+        setLfo1Rate(index, patch.getLfo1Rate());
+        setLfo1Amount(index, patch.getLfo1Amount());
+        setLfo1Destination(index, patch.getLfo1Destination());
+        setLfo2Wave(index, patch.getLfo2Wave());
+        setLfo2Rate(index, patch.getLfo2Rate());
+        setLfo2Amount(index, patch.getLfo2Amount());
+        setVcfCutoff(index, patch.getVcfCutoff());
+        setVcfResonance(index, patch.getVcfResonance());
+        setVcfEnvAmount(index, patch.getVcfEnvAmount());
+        setVcfEnvAttack(index, patch.getVcfEnvAttack());
+        setVcfEnvDecay(index, patch.getVcfEnvDecay());
+        setVcfEnvSustain(index, patch.getVcfEnvSustain());
+        setVcfEnvRelease(index, patch.getVcfEnvRelease());
+        setVcaEnvAttack(index, patch.getVcaEnvAttack());
+        setVcaEnvDecay(index, patch.getVcaEnvDecay());
+        setVcaEnvSustain(index, patch.getVcaEnvSustain());
+        setVcaEnvRelease(index, patch.getVcaEnvRelease());
+        setRingModEnabled(index, patch.isRingModEnabled());
+        setRingModAmount(index, patch.getRingModAmount());
+        setPortamentoTime(index, patch.getPortamentoTime());
+    }
+
+    /**
+     * Check whether the record of a patch holds a valid patch: a MIDI channel
+     * of 0-15, a patch number of 0-31, an ASCII name and a value between 0
+     * and the highest value of each parameter. Records read from a file
+     * should be checked before the patch is read, as reading an enumerated
+     * value from an invalid record fails.
+     *
+     * @param index the index of the patch
+     * @return whether the record holds a valid patch
+     * @see #getHighestValue(Parameter)
+     */
+    public boolean isValid(final int index) {
+        int offset = offset(index);
+        int midiChannel = records.get(offset + CHANNEL_OFFSET);
+        int patchNumber = records.get(offset + NUMBER_OFFSET);
+        if (midiChannel < 0 || midiChannel > 0x0F || patchNumber < 0 || patchNumber >= Patch.BANK_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < Patch.NAME_LENGTH; ++i) {
+            if (records.get(offset + NAME_OFFSET + i) < 0) {
+                return false;
+            }
+        }
+        for (Parameter parameter : PARAMETERS) {
+            int value = records.get(offset + PARAMETERS_OFFSET + parameter.ordinal());
+            if (value < 0 || value > getHighestValue(parameter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the offset of the record of a patch.
+     *
+     * @param index the index of the patch
+     * @return the offset of the record
+     */
+    private int offset(final int index) {
+        return Objects.checkIndex(index, size) * RECORD_LENGTH;
+    }
+
+    /**
+     * Get the value stored for a parameter of a patch: the parameter value,
+     * the ordinal of an enumerated value, or 0 or 1 for a switch.
+     *
+     * @param index the index of the patch
+     * @param parameter the parameter
+     * @return the value stored for the parameter
+     */
+    public int getValue(final int index, final Parameter parameter) {
+        return records.get(offset(index) + PARAMETERS_OFFSET + parameter.ordinal());
+    }
+
+    /**
+     * Set the value stored for a parameter of a patch.
+     *
+     * @param index the index of the patch
+     * @param parameter the parameter
+     * @param value the value stored for the parameter
+     * @see #getValue(int, Parameter)
+     */
+    public void setValue(final int index, final Parameter parameter, final int value) {
+        records.put(offset(index) + PARAMETERS_OFFSET + parameter.ordinal(), (byte) value);
+    }
+
+    /**
+     * Copy the values stored for a parameter of a run of patches into an
+     * array, such as a column of an index.
+     *
+     * @param parameter the parameter
+     * @param from the index of the first patch
+     * @param values the array to copy into
+     * @param offset the offset in the array to copy to
+     * @param length the number of patches
+     */
+    public void getValues(final Parameter parameter, final int from, final byte[] values, final int offset, final int length) {
+        Objects.checkFromIndexSize(from, length, size);
+        int position = from * RECORD_LENGTH + PARAMETERS_OFFSET + parameter.ordinal();
+        for (int i = 0; i < length; ++i) {
+            values[offset + i] = records.get(position);
+            position += RECORD_LENGTH;
+        }
+    }
+
+    /**
+     * Get the MIDI channel of a patch.
+     *
+     * @param index the index of the patch
+     * @return the MIDI channel
+     */
+    public int getMidiChannel(final int index) {
+        return records.get(offset(index) + CHANNEL_OFFSET);
+    }
+
+    /**
+     * Set the MIDI channel of a patch.
+     *
+     * @param index the index of the patch
+     * @param midiChannel the MIDI channel
+     */
+    public void setMidiChannel(final int index, final int midiChannel) {
+        records.put(offset(index) + CHANNEL_OFFSET, (byte) midiChannel);
+    }
+
+    /**
+     * Get the patch number of a patch.
+     *
+     * @param index the index of the patch
+     * @return the patch number
+     */
+    public int getPatchNumber(final int index) {
+        return records.get(offset(index) + NUMBER_OFFSET);
+    }
+
+    /**
+     * Set the patch number of a patch.
+     *
+     * @param index the index of the patch
+     * @param patchNumber the patch number
+     */
+    public void setPatchNumber(final int index, final int patchNumber) {
+        records.put(offset(index) + NUMBER_OFFSET, (byte) patchNumber);
+    }
+
+    /**
+     * Get the patch name of a patch.
+     *
+     * @param index the index of the patch
+     * @return the patch name
+     */
+    public String getPatchName(final int index) {
+        int offset = offset(index) + NAME_OFFSET;
+        byte[] name = new byte[Patch.NAME_LENGTH];
+        int length = 0;
+        while (length < name.length && records.get(offset + length) != 0) {
+            name[length] = records.get(offset + length);
+            ++length;
+        }
+        return new String(name, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the name key of a patch, without creating its name.
+     *
+     * @param index the index of the patch
+     * @return the name key
+     * @see #toNameKey(String)
+     */
+    public long getNameKey(final int index) {
+        int offset = offset(index) + NAME_OFFSET;
+        long key = 0L;
+        for (int i = 0; i < Patch.NAME_LENGTH; ++i) {
+            key = key << KEY_BITS | records.get(offset + i);
+        }
+        return key;
+    }
+
+    /**
+     * Set the patch name of a patch. Only the first {@link Patch#NAME_LENGTH}
+     * characters are kept, and characters that are not ASCII are replaced.
+     *
+     * @param index the index of the patch
+     * @param patchName the patch name
+     */
+    public void setPatchName(final int index, final String patchName) {
+        int offset = offset(index) + NAME_OFFSET;
+        for (int i = 0; i < Patch.NAME_LENGTH; ++i) {
+            char c = i < patchName.length() ? patchName.charAt(i) : 0;
+            records.put(offset + i, (byte) (c < 0x80 ? c : '?'));
+        }
+    }
+
+    /**
+     * Get the oscillator 1 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 1 wave
+     */
+    public Osc1Wave getOsc1Wave(final int index) {
+        return OSC1_WAVES[getValue(index, Parameter.OSC1_WAVE)];
+    }
+
+    /**
+     * Set the oscillator 1 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc1Wave the oscillator 1 wave
+     */
+    public void setOsc1Wave(final int index, final Osc1Wave osc1Wave) {
+        setValue(index, Parameter.OSC1_WAVE, osc1Wave.ordinal());
+    }
+
+    /**
+     * Get the oscillator 1 coarse tune of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 1 coarse tune
+     */
+    public int getOsc1CoarseTune(final int index) {
+        return getValue(index, Parameter.OSC1_COARSE_TUNE);
+    }
+
+    /**
+     * Set the oscillator 1 coarse tune of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc1CoarseTune the oscillator 1 coarse tune
+     */
+    public void setOsc1CoarseTune(final int index, final int osc1CoarseTune) {
+        setValue(index, Parameter.OSC1_COARSE_TUNE, osc1CoarseTune);
+    }
+
+    /**
+     * Get the oscillator 1 fine tune of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 1 fine tune
+     */
+    public int getOsc1FineTune(final int index) {
+        return getValue(index, Parameter.OSC1_FINE_TUNE);
+    }
+
+    /**
+     * Set the oscillator 1 fine tune of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc1FineTune the oscillator 1 fine tune
+     */
+    public void setOsc1FineTune(final int index, final int osc1FineTune) {
+        setValue(index, Parameter.OSC1_FINE_TUNE, osc1FineTune);
+    }
+
+    /**
+     * Get the oscillator 1 modulation amount of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 1 modulation amount
+     */
+    public int getOsc1ModAmount(final int index) {
+        return getValue(index, Parameter.OSC1_MOD_AMOUNT);
+    }
+
+    /**
+     * Set the oscillator 1 modulation amount of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc1ModAmount the oscillator 1 modulation amount
+     */
+    public void setOsc1ModAmount(final int index, final int osc1ModAmount) {
+        setValue(index, Parameter.OSC1_MOD_AMOUNT, osc1ModAmount);
+    }
+
+    /**
+     * Get the oscillator 2 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 2 wave
+     */
+    public Osc2Wave getOsc2Wave(final int index) {
+        return OSC2_WAVES[getValue(index, Parameter.OSC2_WAVE)];
+    }
+
+    /**
+     * Set the oscillator 2 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc2Wave the oscillator 2 wave
+     */
+    public void setOsc2Wave(final int index, final Osc2Wave osc2Wave) {
+        setValue(index, Parameter.OSC2_WAVE, osc2Wave.ordinal());
+    }
+
+    /**
+     * Get the oscillator 2 coarse tune of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 2 coarse tune
+     */
+    public int getOsc2CoarseTune(final int index) {
+        return getValue(index, Parameter.OSC2_COARSE_TUNE);
+    }
+
+    /**
+     * Set the oscillator 2 coarse tune of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc2CoarseTune the oscillator 2 coarse tune
+     */
+    public void setOsc2CoarseTune(final int index, final int osc2CoarseTune) {
+        setValue(index, Parameter.OSC2_COARSE_TUNE, osc2CoarseTune);
+    }
+
+    /**
+     * Get the oscillator 2 fine tune of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 2 fine tune
+     */
+    public int getOsc2FineTune(final int index) {
+        return getValue(index, Parameter.OSC2_FINE_TUNE);
+    }
+
+    /**
+     * Set the oscillator 2 fine tune of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc2FineTune the oscillator 2 fine tune
+     */
+    public void setOsc2FineTune(final int index, final int osc2FineTune) {
+        setValue(index, Parameter.OSC2_FINE_TUNE, osc2FineTune);
+    }
+
+    /**
+     * Get the oscillator 2 modulation amount of a patch.
+     *
+     * @param index the index of the patch
+     * @return the oscillator 2 modulation amount
+     */
+    public int getOsc2ModAmount(final int index) {
+        return getValue(index, Parameter.OSC2_MOD_AMOUNT);
+    }
+
+    /**
+     * Set the oscillator 2 modulation amount of a patch.
+     *
+     * @param index the index of the patch
+     * @param osc2ModAmount the oscillator 2 modulation amount
+     */
+    public void setOsc2ModAmount(final int index, final int osc2ModAmount) {
+        setValue(index, Parameter.OSC2_MOD_AMOUNT, osc2ModAmount);
+    }
+
+    /**
+     * Get the low frequency oscillator 1 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 1 wave
+     */
+    public LfoWave getLfo1Wave(final int index) {
+        return LFO_WAVES[getValue(index, Parameter.LFO1_WAVE)];
+    }
+
+    /**
+     * Set the low frequency oscillator 1 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo1Wave the low frequency oscillator 1 wave
+     */
+    public void setLfo1Wave(final int index, final LfoWave lfo1Wave) {
+        setValue(index, Parameter.LFO1_WAVE, lfo1Wave.ordinal());
+    }
+
+    /**
+     * Get the low frequency oscillator 1 rate of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 1 rate
+     */
+    public int getLfo1Rate(final int index) {
+        return getValue(index, Parameter.LFO1_RATE);
+    }
+
+    /**
+     * Set the low frequency oscillator 1 rate of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo1Rate the low frequency oscillator 1 rate
+     */
+    public void setLfo1Rate(final int index, final int lfo1Rate) {
+        setValue(index, Parameter.LFO1_RATE, lfo1Rate);
+    }
+
+    /**
+     * Get the low frequency oscillator 1 amount of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 1 amount
+     */
+    public int getLfo1Amount(final int index) {
+        return getValue(index, Parameter.LFO1_AMOUNT);
+    }
+
+    /**
+     * Set the low frequency oscillator 1 amount of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo1Amount the low frequency oscillator 1 amount
+     */
+    public void setLfo1Amount(final int index, final int lfo1Amount) {
+        setValue(index, Parameter.LFO1_AMOUNT, lfo1Amount);
+    }
+
+    /**
+     * Get the low frequency oscillator 1 destination of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 1 destination
+     */
+    public LfoDestination getLfo1Destination(final int index) {
+        return LFO_DESTINATIONS[getValue(index, Parameter.LFO1_DESTINATION)];
+    }
+
+    /**
+     * Set the low frequency oscillator 1 destination of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo1Destination the low frequency oscillator 1 destination
+     */
+    public void setLfo1Destination(final int index, final LfoDestination lfo1Destination) {
+        setValue(index, Parameter.LFO1_DESTINATION, lfo1Destination.ordinal());
+    }
+
+    /**
+     * Get the low frequency oscillator 2 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 2 wave
+     */
+    public LfoWave getLfo2Wave(final int index) {
+        return LFO_WAVES[getValue(index, Parameter.LFO2_WAVE)];
+    }
+
+    /**
+     * Set the low frequency oscillator 2 wave of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo2Wave the low frequency oscillator 2 wave
+     */
+    public void setLfo2Wave(final int index, final LfoWave lfo2Wave) {
+        setValue(index, Parameter.LFO2_WAVE, lfo2Wave.ordinal());
+    }
+
+    /**
+     * Get the low frequency oscillator 2 rate of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 2 rate
+     */
+    public int getLfo2Rate(final int index) {
+        return getValue(index, Parameter.LFO2_RATE);
+    }
+
+    /**
+     * Set the low frequency oscillator 2 rate of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo2Rate the low frequency oscillator 2 rate
+     */
+    public void setLfo2Rate(final int index, final int lfo2Rate) {
+        setValue(index, Parameter.LFO2_RATE, lfo2Rate);
+    }
+
+    /**
+     * Get the low frequency oscillator 2 amount of a patch.
+     *
+     * @param index the index of the patch
+     * @return the low frequency oscillator 2 amount
+     */
+    public int getLfo2Amount(final int index) {
+        return getValue(index, Parameter.LFO2_AMOUNT);
+    }
+
+    /**
+     * Set the low frequency oscillator 2 amount of a patch.
+     *
+     * @param index the index of the patch
+     * @param lfo2Amount the low frequency oscillator 2 amount
+     */
+    public void setLfo2Amount(final int index, final int lfo2Amount) {
+        setValue(index, Parameter.LFO2_AMOUNT, lfo2Amount);
+    }
+
+    /**
+     * Get the voltage controlled filter cutoff of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter cutoff
+     */
+    public int getVcfCutoff(final int index) {
+        return getValue(index, Parameter.VCF_CUTOFF);
+    }
+
+    /**
+     * Set the voltage controlled filter cutoff of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfCutoff the voltage controlled filter cutoff
+     */
+    public void setVcfCutoff(final int index, final int vcfCutoff) {
+        setValue(index, Parameter.VCF_CUTOFF, vcfCutoff);
+    }
+
+    /**
+     * Get the voltage controlled filter resonance of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter resonance
+     */
+    public int getVcfResonance(final int index) {
+        return getValue(index, Parameter.VCF_RESONANCE);
+    }
+
+    /**
+     * Set the voltage controlled filter resonance of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfResonance the voltage controlled filter resonance
+     */
+    public void setVcfResonance(final int index, final int vcfResonance) {
+        setValue(index, Parameter.VCF_RESONANCE, vcfResonance);
+    }
+
+    /**
+     * Get the voltage controlled filter envelope amount of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter envelope amount
+     */
+    public int getVcfEnvAmount(final int index) {
+        return getValue(index, Parameter.VCF_ENV_AMOUNT);
+    }
+
+    /**
+     * Set the voltage controlled filter envelope amount of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfEnvAmount the voltage controlled filter envelope amount
+     */
+    public void setVcfEnvAmount(final int index, final int vcfEnvAmount) {
+        setValue(index, Parameter.VCF_ENV_AMOUNT, vcfEnvAmount);
+    }
+
+    /**
+     * Get the voltage controlled filter envelope attack of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter envelope attack
+     */
+    public int getVcfEnvAttack(final int index) {
+        return getValue(index, Parameter.VCF_ENV_ATTACK);
+    }
+
+    /**
+     * Set the voltage controlled filter envelope attack of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfEnvAttack the voltage controlled filter envelope attack
+     */
+    public void setVcfEnvAttack(final int index, final int vcfEnvAttack) {
+        setValue(index, Parameter.VCF_ENV_ATTACK, vcfEnvAttack);
+    }
+
+    /**
+     * Get the voltage controlled filter envelope decay of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter envelope decay
+     */
+    public int getVcfEnvDecay(final int index) {
+        return getValue(index, Parameter.VCF_ENV_DECAY);
+    }
+
+    /**
+     * Set the voltage controlled filter envelope decay of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfEnvDecay the voltage controlled filter envelope decay
+     */
+    public void setVcfEnvDecay(final int index, final int vcfEnvDecay) {
+        setValue(index, Parameter.VCF_ENV_DECAY, vcfEnvDecay);
+    }
+
+    /**
+     * Get the voltage controlled filter envelope sustain of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter envelope sustain
+     */
+    public int getVcfEnvSustain(final int index) {
+        return getValue(index, Parameter.VCF_ENV_SUSTAIN);
+    }
+
+    /**
+     * Set the voltage controlled filter envelope sustain of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfEnvSustain the voltage controlled filter envelope sustain
+     */
+    public void setVcfEnvSustain(final int index, final int vcfEnvSustain) {
+        setValue(index, Parameter.VCF_ENV_SUSTAIN, vcfEnvSustain);
+    }
+
+    /**
+     * Get the voltage controlled filter envelope release of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled filter envelope release
+     */
+    public int getVcfEnvRelease(final int index) {
+        return getValue(index, Parameter.VCF_ENV_RELEASE);
+    }
+
+    /**
+     * Set the voltage controlled filter envelope release of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcfEnvRelease the voltage controlled filter envelope release
+     */
+    public void setVcfEnvRelease(final int index, final int vcfEnvRelease) {
+        setValue(index, Parameter.VCF_ENV_RELEASE, vcfEnvRelease);
+    }
+
+    /**
+     * Get the voltage controlled amplifier envelope attack of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled amplifier envelope attack
+     */
+    public int getVcaEnvAttack(final int index) {
+        return getValue(index, Parameter.VCA_ENV_ATTACK);
+    }
+
+    /**
+     * Set the voltage controlled amplifier envelope attack of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcaEnvAttack the voltage controlled amplifier envelope attack
+     */
+    public void setVcaEnvAttack(final int index, final int vcaEnvAttack) {
+        setValue(index, Parameter.VCA_ENV_ATTACK, vcaEnvAttack);
+    }
+
+    /**
+     * Get the voltage controlled amplifier envelope decay of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled amplifier envelope decay
+     */
+    public int getVcaEnvDecay(final int index) {
+        return getValue(index, Parameter.VCA_ENV_DECAY);
+    }
+
+    /**
+     * Set the voltage controlled amplifier envelope decay of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcaEnvDecay the voltage controlled amplifier envelope decay
+     */
+    public void setVcaEnvDecay(final int index, final int vcaEnvDecay) {
+        setValue(index, Parameter.VCA_ENV_DECAY, vcaEnvDecay);
+    }
+
+    /**
+     * Get the voltage controlled amplifier envelope sustain of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled amplifier envelope sustain
+     */
+    public int getVcaEnvSustain(final int index) {
+        return getValue(index, Parameter.VCA_ENV_SUSTAIN);
+    }
+
+    /**
+     * Set the voltage controlled amplifier envelope sustain of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcaEnvSustain the voltage controlled amplifier envelope sustain
+     */
+    public void setVcaEnvSustain(final int index, final int vcaEnvSustain) {
+        setValue(index, Parameter.VCA_ENV_SUSTAIN, vcaEnvSustain);
+    }
+
+    /**
+     * Get the voltage controlled amplifier envelope release of a patch.
+     *
+     * @param index the index of the patch
+     * @return the voltage controlled amplifier envelope release
+     */
+    public int getVcaEnvRelease(final int index) {
+        return getValue(index, Parameter.VCA_ENV_RELEASE);
+    }
+
+    /**
+     * Set the voltage controlled amplifier envelope release of a patch.
+     *
+     * @param index the index of the patch
+     * @param vcaEnvRelease the voltage controlled amplifier envelope release
+     */
+    public void setVcaEnvRelease(final int index, final int vcaEnvRelease) {
+        setValue(index, Parameter.VCA_ENV_RELEASE, vcaEnvRelease);
+    }
+
+    /**
+     * Get whether the ring modulator of a patch is on.
+     *
+     * @param index the index of the patch
+     * @return whether the ring modulator is on
+     */
+    public boolean isRingModEnabled(final int index) {
+        return getValue(index, Parameter.RING_MOD_ENABLED) != 0;
+    }
+
+    /**
+     * Set whether the ring modulator of a patch is on.
+     *
+     * @param index the index of the patch
+     * @param ringModEnabled whether the ring modulator is on
+     */
+    public void setRingModEnabled(final int index, final boolean ringModEnabled) {
+        setValue(index, Parameter.RING_MOD_ENABLED, ringModEnabled ? 1 : 0);
+    }
+
+    /**
+     * Get the ring modulator amount of a patch.
+     *
+     * @param index the index of the patch
+     * @return the ring modulator amount
+     */
+    public int getRingModAmount(final int index) {
+        return getValue(index, Parameter.RING_MOD_AMOUNT);
+    }
+
+    /**
+     * Set the ring modulator amount of a patch.
+     *
+     * @param index the index of the patch
+     * @param ringModAmount the ring modulator amount
+     */
+    public void setRingModAmount(final int index, final int ringModAmount) {
+        setValue(index, Parameter.RING_MOD_AMOUNT, ringModAmount);
+    }
+
+    /**
+     * Get the portamento time of a patch.
+     *
+     * @param index the index of the patch
+     * @return the portamento time
+     */
+    public int getPortamentoTime(final int index) {
+        return getValue(index, Parameter.PORTAMENTO_TIME);
+    }
+
+    /**
+     * Set the portamento time of a patch.
+     *
+     * @param index the index of the patch
+     * @param portamentoTime the portamento time
+     */
+    public void setPortamentoTime(final int index, final int portamentoTime) {
+        setValue(index, Parameter.PORTAMENTO_TIME, portamentoTime);
+    }
+}
@@ -0,0 +1,212 @@
+package net.chriswareham.jt4000;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import net.chriswareham.midi.SysexFileReader;
+
+/**
+ * This class provides a reader of the patch dumps in System Exclusive files.
+ * Files are scanned by a {@link SysexFileReader}, and each JT-4000 patch dump
+ * is decoded straight from the reused frame buffer; dumps for other devices
+ * are ignored, and dumps that fail their checksum are counted as invalid.
+ * Archives can be deduplicated as they are read, by the fingerprint of each
+ * patch, so that only the first copy of each sound is passed on.
+ */
+public class PatchFileReader {
+    /**
+     * The reader of System Exclusive frames.
+     */
+    private final SysexFileReader reader = new SysexFileReader();
+
+    /**
+     * The number of patch dumps that failed their checksum.
+     */
+    private long invalid;
+
+    /**
+     * The number of patches skipped as duplicates.
+     */
+    private long duplicates;
+
+    /**
+     * Get the number of System Exclusive frames found, including those that
+     * were not patch dumps.
+     *
+     * @return the number of frames found
+     */
+    public long getFrames() {
+        return reader.getFrames();
+    }
+
+    /**
+     * Get the number of patch dumps that failed their checksum.
+     *
+     * @return the number of invalid patch dumps
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Get the number of patches skipped as duplicates of patches read before.
+     *
+     * @return the number of duplicate patches
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Read the patches in a System Exclusive file, or in every System
+     * Exclusive file under a directory, into new patches.
+     *
+     * @param path the file or directory
+     * @param consumer the consumer of each patch
+     * @return the number of patches read
+     * @throws IOException if a file cannot be read
+     */
+    public long read(final Path path, final Consumer<Patch> consumer) throws IOException {
+        long[] count = new long[1];
+        reader.read(path, (data, length) -> {
+            Patch patch = new Patch();
+            patch.initialise();
+            if (decode(data, length, patch)) {
+                ++count[0];
+                consumer.accept(patch);
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Read the patches in a System Exclusive file, or in every System
+     * Exclusive file under a directory, decoding each into the same patch.
+     * Nothing is allocated per patch, so the consumer must copy anything it
+     * needs to keep before it returns.
+     *
+     * @param path the file or directory
+     * @param patch the patch to decode each patch into
+     * @param consumer the consumer of each patch
+     * @return the number of patches read
+     * @throws IOException if a file cannot be read
+     */
+    public long read(final Path path, final Patch patch, final Consumer<Patch> consumer) throws IOException {
+        long[] count = new long[1];
+        reader.read(path, (data, length) -> {
+            if (decode(data, length, patch)) {
+                ++count[0];
+                consumer.accept(patch);
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Read the patches in a System Exclusive file, or in every System
+     * Exclusive file under a directory, onto the end of a packed bank.
+     *
+     * @param path the file or directory
+     * @param bank the bank to add each patch to
+     * @return the number of patches read
+     * @throws IOException if a file cannot be read
+     */
+    public long read(final Path path, final PatchBank bank) throws IOException {
+        Patch patch = new Patch();
+        patch.initialise();
+        return read(path, patch, bank::add);
+    }
+
+    /**
+     * Read the first patch in a System Exclusive file, or in the System
+     * Exclusive files under a directory, stopping at the first valid patch
+     * dump.
+     *
+     * @param path the file or directory
+     * @param patch the patch to decode the first patch into
+     * @return whether a patch was read
+     * @throws IOException if a file cannot be read
+     */
+    public boolean readFirst(final Path path, final Patch patch) throws IOException {
+        boolean[] found = new boolean[1];
+        reader.read(path, (data, length) -> {
+            if (decode(data, length, patch)) {
+                found[0] = true;
+                reader.stop();
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Read the patches in a System Exclusive file, or in every System
+     * Exclusive file under a directory, decoding each into the same patch
+     * and skipping those whose fingerprint has been seen. The fingerprints
+     * of the patches passed on are added to the set, which can be shared by
+     * several reads to deduplicate across archives. As the set holds a long
+     * per distinct patch, the memory a read needs grows with the number of
+     * distinct patches rather than the size of the archive.
+     *
+     * @param path the file or directory
+     * @param fingerprints the fingerprints of the patches seen
+     * @param patch the patch to decode each patch into
+     * @param consumer the consumer of each patch not seen before
+     * @return the number of patches passed on
+     * @throws IOException if a file cannot be read
+     */
+    public long readUnique(final Path path, final LongHashSet fingerprints, final Patch patch, final Consumer<Patch> consumer) throws IOException {
+        long[] count = new long[1];
+        reader.read(path, (data, length) -> {
+            if (decode(data, length, patch)) {
+                if (fingerprints.add(patch.getFingerprint())) {
+                    ++count[0];
+                    consumer.accept(patch);
+                } else {
+                    ++duplicates;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Read the patches in a System Exclusive file, or in every System
+     * Exclusive file under a directory, onto the end of a packed bank,
+     * skipping those whose fingerprint has been seen.
+     *
+     * @param path the file or directory
+     * @param fingerprints the fingerprints of the patches seen
+     * @param bank the bank to add each patch not seen before to
+     * @return the number of patches added
+     * @throws IOException if a file cannot be read
+     */
+    public long readUnique(final Path path, final LongHashSet fingerprints, final PatchBank bank) throws IOException {
+        Patch patch = new Patch();
+        patch.initialise();
+        return readUnique(path, fingerprints, patch, bank::add);
+    }
+
+    /**
+     * Decode a frame into a patch if it is a valid patch dump.
+     *
+     * @param data the buffer holding the frame
+     * @param length the length of the frame
+     * @param patch the patch to decode into
+     * @return whether the frame was a valid patch dump
+     */
+    private boolean decode(final byte[] data, final int length, final Patch patch) {
+        if (!Patch.isDump(data, 0, length)) {
+            return false;
+        }
+        try {
+            patch.deserialise(data, 0, length);
+            return true;
+        } catch (InvalidMidiDataException exception) {
+            ++invalid;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.chriswareham.jt4000;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import net.chriswareham.midi.SysexFileWriter;
+
+/**
+ * This class provides a writer of patch dumps to a System Exclusive file.
+ * Patches are encoded into a reused array and copied into a batch of reused
+ * direct buffers, and each full batch is written with a single gathering
+ * write, which the JDK does not need to copy into a temporary direct buffer.
+ */
+public class PatchFileWriter implements AutoCloseable {
+    /**
+     * The default number of patches written in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The writer of System Exclusive frames.
+     */
+    private final SysexFileWriter writer;
+
+    /**
+     * The array patches are encoded into.
+     */
+    private final byte[] dump = new byte[Patch.DUMP_LENGTH];
+
+    /**
+     * The direct buffers of the batch of patch dumps.
+     */
+    private final ByteBuffer[] batch;
+
+    /**
+     * The number of patch dumps in the batch.
+     */
+    private int count;
+
+    /**
+     * Construct an instance of a writer of patch dumps, replacing the file if
+     * it exists.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be created
+     */
+    public PatchFileWriter(final Path path) throws IOException {
+        this(path, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Construct an instance of a writer of patch dumps, replacing the file if
+     * it exists.
+     *
+     * @param path the path of the file
+     * @param batchSize the number of patches written in a batch, at least one
+     * @throws IOException if the file cannot be created
+     */
+    public PatchFileWriter(final Path path, final int batchSize) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize);
+        }
+        batch = new ByteBuffer[batchSize];
+        for (int i = 0; i < batch.length; ++i) {
+            batch[i] = ByteBuffer.allocateDirect(Patch.DUMP_LENGTH);
+        }
+        writer = new SysexFileWriter(path);
+    }
+
+    /**
+     * Write a patch.
+     *
+     * @param patch the patch
+     * @throws IOException if the batch the patch completes cannot be written
+     */
+    public void write(final Patch patch) throws IOException {
+        patch.serialise(dump, 0);
+        batch[count++].clear().put(dump).flip();
+        if (count == batch.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the patches in the batch.
+     *
+     * @throws IOException if the patches cannot be written
+     */
+    public void flush() throws IOException {
+        writer.write(batch, count);
+        count = 0;
+    }
+
+    /**
+     * Write the patches in the batch and close the file.
+     *
+     * @throws IOException if the patches cannot be written or the file closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.close();
+        }
+    }
+}
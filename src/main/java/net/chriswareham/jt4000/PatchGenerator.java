@@ -0,0 +1,274 @@
+package net.chriswareham.jt4000;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class provides a generator of random patches whose parameters are
+ * constrained by a {@link PatchQuery}, such as a fixed oscillator 1 wave, a
+ * filter cutoff between 40 and 70, or the ring modulator disabled. Each
+ * parameter is drawn uniformly from the values its condition allows, or from
+ * every value of the parameter if it has none.
+ *
+ * <p>Patches are written straight into the records of a {@link PatchBank}
+ * by tasks on the common fork join pool, each filling its own range of the
+ * bank from its own split of a random number generator. The ranges and the
+ * splits depend only on the number of patches, so a seed always generates
+ * the same patches however many threads share the work.
+ */
+public class PatchGenerator {
+    /**
+     * The parameters generated.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The number of patches above which a range of the bank is split between
+     * two tasks.
+     */
+    private static final int PARALLEL_THRESHOLD = 16384;
+
+    /**
+     * Get whether one candidate scores better than another, where the
+     * candidate generated first wins a tie.
+     *
+     * @param scores the scores of the candidates
+     * @param first the index of the first candidate
+     * @param second the index of the second candidate
+     * @return whether the first candidate scores better than the second
+     */
+    private static boolean isBetter(final float[] scores, final int first, final int second) {
+        int comparison = Float.compare(scores[first], scores[second]);
+        return comparison > 0 || comparison == 0 && first < second;
+    }
+
+    /**
+     * Move a candidate towards the root of a heap whose root is the worst
+     * candidate until it is no worse than its parent.
+     *
+     * @param heap the heap
+     * @param position the position of the candidate in the heap
+     * @param scores the scores of the candidates
+     */
+    private static void siftUp(final int[] heap, final int position, final float[] scores) {
+        int candidate = heap[position];
+        int child = position;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (!isBetter(scores, heap[parent], candidate)) {
+                break;
+            }
+            heap[child] = heap[parent];
+            child = parent;
+        }
+        heap[child] = candidate;
+    }
+
+    /**
+     * Move a candidate away from the root of a heap whose root is the worst
+     * candidate until it is no better than its children.
+     *
+     * @param heap the heap
+     * @param position the position of the candidate in the heap
+     * @param size the number of candidates in the heap
+     * @param scores the scores of the candidates
+     */
+    private static void siftDown(final int[] heap, final int position, final int size, final float[] scores) {
+        int candidate = heap[position];
+        int parent = position;
+        while (2 * parent + 1 < size) {
+            int child = 2 * parent + 1;
+            if (child + 1 < size && isBetter(scores, heap[child], heap[child + 1])) {
+                ++child;
+            }
+            if (!isBetter(scores, candidate, heap[child])) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = candidate;
+    }
+
+    /**
+     * Find the candidates with the best scores.
+     *
+     * @param scores the scores of the candidates
+     * @param keep the number of candidates to find
+     * @return the indexes of the candidates found, best first
+     */
+    private static int[] findBest(final float[] scores, final int keep) {
+        int[] heap = new int[Math.min(Math.max(keep, 0), scores.length)];
+        int size = 0;
+        for (int index = 0; index < scores.length && heap.length > 0; ++index) {
+            if (size < heap.length) {
+                heap[size] = index;
+                siftUp(heap, size++, scores);
+            } else if (isBetter(scores, index, heap[0])) {
+                heap[0] = index;
+                siftDown(heap, 0, size, scores);
+            }
+        }
+        for (int end = size - 1; end > 0; --end) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, 0, end, scores);
+        }
+        return heap;
+    }
+
+    /**
+     * The lowest value generated for each parameter.
+     */
+    private final int[] minimums = new int[PARAMETERS.length];
+
+    /**
+     * The number of values generated for each parameter.
+     */
+    private final int[] spans = new int[PARAMETERS.length];
+
+    /**
+     * Construct an instance of a generator of random patches.
+     *
+     * @param query the query whose conditions constrain the parameters of
+     *        the patches generated
+     */
+    public PatchGenerator(final PatchQuery query) {
+        for (Parameter parameter : PARAMETERS) {
+            int i = parameter.ordinal();
+            minimums[i] = Math.max(query.getMinimum(parameter), 0);
+            int maximum = Math.min(query.getMaximum(parameter), PatchBank.getHighestValue(parameter));
+            if (minimums[i] > maximum) {
+                throw new IllegalArgumentException("Query matches no value of " + parameter);
+            }
+            spans[i] = maximum - minimums[i] + 1;
+        }
+    }
+
+    /**
+     * Generate random patches.
+     *
+     * @param count the number of patches to generate
+     * @param seed the seed of the random number generator
+     * @return a bank of the patches generated
+     */
+    public PatchBank generate(final int count, final long seed) {
+        PatchBank bank = new PatchBank(ByteBuffer.allocate(Math.multiplyExact(count, PatchBank.RECORD_LENGTH)));
+        ForkJoinPool.commonPool().invoke(new Generate(bank, null, null, 0, count, new SplittableRandom(seed)));
+        return bank;
+    }
+
+    /**
+     * Generate random candidate patches, score them, and keep those with the
+     * best scores.
+     *
+     * @param candidates the number of candidate patches to generate
+     * @param keep the number of patches to keep
+     * @param scorer the scorer of the candidates, which is called by several
+     *        threads at once
+     * @param seed the seed of the random number generator
+     * @return a bank of the patches kept, best first
+     */
+    public PatchBank generate(final int candidates, final int keep, final PatchScorer scorer, final long seed) {
+        PatchBank bank = new PatchBank(ByteBuffer.allocate(Math.multiplyExact(candidates, PatchBank.RECORD_LENGTH)));
+        float[] scores = new float[candidates];
+        ForkJoinPool.commonPool().invoke(new Generate(bank, scorer, scores, 0, candidates, new SplittableRandom(seed)));
+        int[] best = findBest(scores, keep);
+        PatchBank kept = new PatchBank(best.length);
+        Patch patch = new Patch();
+        patch.initialise();
+        for (int index : best) {
+            bank.get(index, patch);
+            kept.add(patch);
+        }
+        return kept;
+    }
+
+    /**
+     * This class describes the generation of a range of the patches of a
+     * bank.
+     */
+    private final class Generate extends RecursiveAction {
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The bank to write the patches to.
+         */
+        private final PatchBank bank;
+
+        /**
+         * The scorer of the patches, or null if they are not scored.
+         */
+        private final PatchScorer scorer;
+
+        /**
+         * The scores of the patches, or null if they are not scored.
+         */
+        private final float[] scores;
+
+        /**
+         * The index of the first patch of the range.
+         */
+        private final int low;
+
+        /**
+         * The index after the last patch of the range.
+         */
+        private final int high;
+
+        /**
+         * The source of random values.
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Construct an instance of the generation of a range of patches.
+         *
+         * @param bank the bank to write the patches to
+         * @param scorer the scorer of the patches, or null if they are not
+         *        scored
+         * @param scores the scores of the patches, or null if they are not
+         *        scored
+         * @param low the index of the first patch of the range
+         * @param high the index after the last patch of the range
+         * @param random the source of random values
+         */
+        Generate(final PatchBank bank, final PatchScorer scorer, final float[] scores, final int low, final int high, final SplittableRandom random) {
+            this.bank = bank;
+            this.scorer = scorer;
+            this.scores = scores;
+            this.low = low;
+            this.high = high;
+            this.random = random;
+        }
+
+        /**
+         * Generate the range of patches, splitting it between two tasks if
+         * it is large.
+         */
+        @Override
+        protected void compute() {
+            if (high - low > PARALLEL_THRESHOLD) {
+                int middle = (low + high) >>> 1;
+                invokeAll(new Generate(bank, scorer, scores, low, middle, random.split()),
+                    new Generate(bank, scorer, scores, middle, high, random.split()));
+                return;
+            }
+            for (int index = low; index < high; ++index) {
+                for (Parameter parameter : PARAMETERS) {
+                    int i = parameter.ordinal();
+                    bank.setValue(index, parameter, spans[i] > 1 ? minimums[i] + random.nextInt(spans[i]) : minimums[i]);
+                }
+                if (scorer != null) {
+                    scores[index] = scorer.score(bank, index);
+                }
+            }
+        }
+    }
+}
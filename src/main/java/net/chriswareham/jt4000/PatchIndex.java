@@ -0,0 +1,201 @@
+package net.chriswareham.jt4000;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class provides a columnar index of the patches in a
+ * {@link PatchBank}, for answering a {@link PatchQuery} without visiting
+ * patches one by one. The value stored for each parameter is held in a
+ * column of its own, and each value of the parameters that are not scaled,
+ * the enumerated values and switches, also has a bitmap of the patches that
+ * have it. A query intersects the bitmaps of its enumerated values first, and
+ * then narrows the result with a scan of the column of each range, which
+ * tests sixty four patches into a word at a time and skips words that no
+ * longer match.
+ */
+public class PatchIndex {
+    /**
+     * The parameters that are indexed.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The number of patches in a word of a bitmap.
+     */
+    private static final int WORD_BITS = Long.SIZE;
+
+    /**
+     * The number of values a bitmap indexed parameter can have.
+     */
+    private static final int BITMAP_VALUES = 8;
+
+    /**
+     * The column of each parameter.
+     */
+    private final byte[][] columns = new byte[PARAMETERS.length][];
+
+    /**
+     * The bitmaps of each value of each parameter that is not scaled, or null
+     * for parameters that are scaled.
+     */
+    private final long[][][] bitmaps = new long[PARAMETERS.length][][];
+
+    /**
+     * The number of patches indexed.
+     */
+    private int size;
+
+    /**
+     * Construct an instance of an index of the patches in a bank.
+     *
+     * @param bank the bank
+     * @throws IllegalArgumentException if a patch has a value of an
+     *         enumerated value or switch that has no bitmap
+     */
+    public PatchIndex(final PatchBank bank) {
+        for (Parameter parameter : PARAMETERS) {
+            columns[parameter.ordinal()] = new byte[bank.size()];
+            if (parameter.getScale() == null) {
+                bitmaps[parameter.ordinal()] = new long[BITMAP_VALUES][getWords(bank.size())];
+            }
+        }
+        update(bank);
+    }
+
+    /**
+     * Get the number of words of a bitmap of a number of patches.
+     *
+     * @param patches the number of patches
+     * @return the number of words
+     */
+    private static int getWords(final int patches) {
+        return (patches + WORD_BITS - 1) / WORD_BITS;
+    }
+
+    /**
+     * Get the number of patches indexed.
+     *
+     * @return the number of patches indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index the patches added to a bank since the index was created or last
+     * updated.
+     *
+     * @param bank the bank
+     * @throws IllegalArgumentException if a patch added has a value of an
+     *         enumerated value or switch that has no bitmap, in which case
+     *         none of the patches added are indexed
+     */
+    public void update(final PatchBank bank) {
+        int from = size;
+        int to = bank.size();
+        if (to <= from) {
+            return;
+        }
+        for (Parameter parameter : PARAMETERS) {
+            if (bitmaps[parameter.ordinal()] != null) {
+                for (int patch = from; patch < to; ++patch) {
+                    int value = bank.getValue(patch, parameter);
+                    if (value < 0 || value >= BITMAP_VALUES) {
+                        throw new IllegalArgumentException("Patch " + patch + " has an invalid value " + value + " of " + parameter);
+                    }
+                }
+            }
+        }
+        for (Parameter parameter : PARAMETERS) {
+            int i = parameter.ordinal();
+            if (columns[i].length < to) {
+                columns[i] = Arrays.copyOf(columns[i], Math.max(to, columns[i].length * 2));
+            }
+            byte[] column = columns[i];
+            bank.getValues(parameter, from, column, from, to - from);
+            long[][] parameterBitmaps = bitmaps[i];
+            if (parameterBitmaps != null) {
+                for (int value = 0; value < BITMAP_VALUES; ++value) {
+                    if (parameterBitmaps[value].length < getWords(column.length)) {
+                        parameterBitmaps[value] = Arrays.copyOf(parameterBitmaps[value], getWords(column.length));
+                    }
+                }
+                for (int patch = from; patch < to; ++patch) {
+                    parameterBitmaps[column[patch]][patch / WORD_BITS] |= 1L << patch;
+                }
+            }
+        }
+        size = to;
+    }
+
+    /**
+     * Find the patches that match a query.
+     *
+     * @param query the query
+     * @return the indexes of the matching patches in the bank
+     */
+    public BitSet query(final PatchQuery query) {
+        int words = getWords(size);
+        long[] result = new long[words];
+        Arrays.fill(result, -1L);
+        if (size % WORD_BITS != 0) {
+            result[words - 1] = (1L << size) - 1L;
+        }
+        for (Parameter parameter : PARAMETERS) {
+            if (bitmaps[parameter.ordinal()] != null && query.isConstrained(parameter)) {
+                intersect(result, bitmaps[parameter.ordinal()], query.getMinimum(parameter), query.getMaximum(parameter));
+            }
+        }
+        for (Parameter parameter : PARAMETERS) {
+            if (bitmaps[parameter.ordinal()] == null && query.isConstrained(parameter)) {
+                scan(result, columns[parameter.ordinal()], query.getMinimum(parameter), query.getMaximum(parameter));
+            }
+        }
+        return BitSet.valueOf(result);
+    }
+
+    /**
+     * Intersect a result with the union of the bitmaps of a range of values.
+     *
+     * @param result the result
+     * @param parameterBitmaps the bitmaps of each value of a parameter
+     * @param minimum the lowest matching value
+     * @param maximum the highest matching value
+     */
+    private static void intersect(final long[] result, final long[][] parameterBitmaps, final int minimum, final int maximum) {
+        int last = Math.min(maximum, BITMAP_VALUES - 1);
+        for (int w = 0; w < result.length; ++w) {
+            long union = 0L;
+            for (int value = minimum; value <= last; ++value) {
+                union |= parameterBitmaps[value][w];
+            }
+            result[w] &= union;
+        }
+    }
+
+    /**
+     * Narrow a result to the patches whose value in a column is within a
+     * range, scanning only the words of the result that still match.
+     *
+     * @param result the result
+     * @param column the column
+     * @param minimum the lowest matching value
+     * @param maximum the highest matching value
+     */
+    private void scan(final long[] result, final byte[] column, final int minimum, final int maximum) {
+        for (int w = 0; w < result.length; ++w) {
+            if (result[w] == 0L) {
+                continue;
+            }
+            int base = w * WORD_BITS;
+            int end = Math.min(WORD_BITS, size - base);
+            long matches = 0L;
+            for (int bit = 0; bit < end; ++bit) {
+                int value = column[base + bit];
+                matches |= (long) (((value - minimum) | (maximum - value)) >>> 31 ^ 1) << bit;
+            }
+            result[w] &= matches;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package net.chriswareham.jt4000;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * This class provides a library of patches held in a memory mapped file, so
+ * that a library of any size is available as soon as it is opened without
+ * being deserialised. The file is laid out as follows:
+ *
+ * <pre>
+ *   header    {@link #HEADER_LENGTH} bytes
+ *   records   one {@link PatchBank} record per patch
+ *   index     the record number of each patch as an int, in order of name
+ * </pre>
+ *
+ * <p>The header holds the magic number, the version of the format, the
+ * length of a record, the number of records and the number of records the
+ * name index covers. Every record is checked when a library is opened, so a
+ * corrupt or foreign file fails to open rather than failing when a patch is
+ * read from it. Patches are appended by writing their records over the
+ * start of the name index, which is marked as stale in the header first, so
+ * existing records are never rewritten; the index is merged and written
+ * again after the records when the library is flushed or closed, and rebuilt
+ * when a library is opened whose index is stale or corrupt. A library is not
+ * safe for use by more than one thread.
+ */
+public class PatchLibrary implements AutoCloseable {
+    /**
+     * The magic number at the start of a library file, "JTLB".
+     */
+    public static final int MAGIC = 0x4A544C42;
+
+    /**
+     * The version of the library file format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The length of the header of a library file.
+     */
+    public static final int HEADER_LENGTH = 32;
+
+    /**
+     * The offset of the version in the header.
+     */
+    private static final int VERSION_OFFSET = 4;
+
+    /**
+     * The offset of the record length in the header.
+     */
+    private static final int RECORD_LENGTH_OFFSET = 8;
+
+    /**
+     * The offset of the number of records in the header.
+     */
+    private static final int COUNT_OFFSET = 12;
+
+    /**
+     * The offset of the number of records the name index covers in the
+     * header.
+     */
+    private static final int INDEXED_OFFSET = 16;
+
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapping of the header and records of the file.
+     */
+    private MappedByteBuffer mapping;
+
+    /**
+     * The patches in the library, in the mapped records.
+     */
+    private PatchBank patches;
+
+    /**
+     * The number of records.
+     */
+    private int count;
+
+    /**
+     * The record numbers of the indexed patches in order of name.
+     */
+    private int[] index;
+
+    /**
+     * Whether the name index in the file is stale.
+     */
+    private boolean stale;
+
+    /**
+     * Construct an instance of a library of patches, creating the file if it
+     * does not exist.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be opened or is not a library
+     */
+    public PatchLibrary(final Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0L) {
+                writeHeader(0, 0);
+            }
+            open(path);
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Check the header of the file, map the records and read the name index,
+     * rebuilding it if it is stale.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be read or is not a library
+     */
+    private void open(final Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (channel.read(header, 0L) != HEADER_LENGTH || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a patch library: " + path);
+        }
+        if (header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Unsupported patch library version " + header.getInt(VERSION_OFFSET) + ": " + path);
+        }
+        if (header.getInt(RECORD_LENGTH_OFFSET) != PatchBank.RECORD_LENGTH) {
+            throw new IOException("Unsupported patch library record length " + header.getInt(RECORD_LENGTH_OFFSET) + ": " + path);
+        }
+        count = header.getInt(COUNT_OFFSET);
+        int indexed = header.getInt(INDEXED_OFFSET);
+        if (count < 0 || indexed < 0 || indexed > count) {
+            throw new IOException("Corrupt patch library header: " + path);
+        }
+        if (channel.size() < getRecordsEnd() + (long) indexed * Integer.BYTES) {
+            throw new IOException("Truncated patch library: " + path);
+        }
+        map();
+        for (int i = 0; i < count; ++i) {
+            if (!patches.isValid(i)) {
+                throw new IOException("Corrupt patch library record " + i + ": " + path);
+            }
+        }
+        index = new int[indexed];
+        if (indexed > 0) {
+            ByteBuffer buffer = ByteBuffer.allocate(indexed * Integer.BYTES);
+            channel.read(buffer, getRecordsEnd());
+            buffer.flip().asIntBuffer().get(index);
+        }
+        if (indexed != count || !isIndexValid()) {
+            stale = true;
+            index = new int[0];
+            updateIndex();
+        }
+    }
+
+    /**
+     * Check whether the name index read from the file names every record
+     * once, in order of name.
+     *
+     * @return whether the name index is valid
+     */
+    private boolean isIndexValid() {
+        boolean[] named = new boolean[count];
+        long previous = Long.MIN_VALUE;
+        for (int number : index) {
+            if (number < 0 || number >= count || named[number] || patches.getNameKey(number) < previous) {
+                return false;
+            }
+            named[number] = true;
+            previous = patches.getNameKey(number);
+        }
+        return true;
+    }
+
+    /**
+     * Map the header and records of the file.
+     *
+     * @throws IOException if the file cannot be mapped
+     */
+    private void map() throws IOException {
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0L, getRecordsEnd());
+        patches = new PatchBank(mapping.slice(HEADER_LENGTH, count * PatchBank.RECORD_LENGTH));
+    }
+
+    /**
+     * Get the offset of the end of the records in the file.
+     *
+     * @return the offset of the end of the records
+     */
+    private long getRecordsEnd() {
+        return HEADER_LENGTH + (long) count * PatchBank.RECORD_LENGTH;
+    }
+
+    /**
+     * Get the number of patches in the library.
+     *
+     * @return the number of patches in the library
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the patches in the library. The bank reads and writes the mapped
+     * records, and is replaced by a new bank when patches are appended.
+     *
+     * @return the patches in the library
+     */
+    public PatchBank getPatches() {
+        return patches;
+    }
+
+    /**
+     * Append a patch to the library.
+     *
+     * @param patch the patch
+     * @return the index of the patch in the library
+     * @throws IOException if the patch cannot be written
+     */
+    public int append(final Patch patch) throws IOException {
+        PatchBank bank = new PatchBank(1);
+        bank.add(patch);
+        return append(bank);
+    }
+
+    /**
+     * Append every patch in a bank to the library, with a single write.
+     *
+     * @param bank the bank
+     * @return the index in the library of the first patch appended
+     * @throws IOException if the patches cannot be written
+     */
+    public int append(final PatchBank bank) throws IOException {
+        if (!stale) {
+            writeHeader(count, 0);
+            stale = true;
+        }
+        int first = count;
+        ByteBuffer records = bank.getRecords();
+        long position = getRecordsEnd();
+        while (records.hasRemaining()) {
+            position += channel.write(records, position);
+        }
+        count += bank.size();
+        writeHeader(count, 0);
+        map();
+        return first;
+    }
+
+    /**
+     * Find a patch by name.
+     *
+     * @param name the patch name, of which only the characters a patch name
+     *        holds are compared
+     * @return the index of the first patch in order of name with the name, or
+     *         -1 if there is none
+     */
+    public int find(final String name) {
+        long key = PatchBank.toNameKey(name);
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (patches.getNameKey(index[middle]) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < index.length && patches.getNameKey(index[low]) == key) {
+            return index[low];
+        }
+        for (int i = index.length; i < count; ++i) {
+            if (patches.getNameKey(i) == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Merge the patches appended since the name index was last written into
+     * the index, and write the index and header.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    public void flush() throws IOException {
+        if (stale) {
+            updateIndex();
+        }
+        mapping.force();
+        channel.force(false);
+    }
+
+    /**
+     * Sort the patches that are not in the name index by name and merge them
+     * into it, then write the index after the records and mark it as current
+     * in the header.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    private void updateIndex() throws IOException {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; ++i) {
+            keys[i] = patches.getNameKey(i);
+        }
+        int[] appended = IntStream.range(index.length, count)
+            .boxed()
+            .sorted(Comparator.comparingLong(number -> keys[number]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+        int[] merged = Arrays.copyOf(index, count);
+        int i = index.length - 1;
+        int j = appended.length - 1;
+        for (int k = count - 1; j >= 0; --k) {
+            merged[k] = i >= 0 && keys[index[i]] > keys[appended[j]] ? index[i--] : appended[j--];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(count * Integer.BYTES);
+        buffer.asIntBuffer().put(merged);
+        long position = getRecordsEnd();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.truncate(position);
+        index = merged;
+        writeHeader(count, count);
+        stale = false;
+    }
+
+    /**
+     * Write the header.
+     *
+     * @param records the number of records
+     * @param indexed the number of records the name index covers
+     * @throws IOException if the header cannot be written
+     */
+    private void writeHeader(final int records, final int indexed) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).putInt(PatchBank.RECORD_LENGTH).putInt(records).putInt(indexed).clear();
+        channel.write(header, 0L);
+    }
+
+    /**
+     * Flush and close the library.
+     *
+     * @throws IOException if the library cannot be flushed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package net.chriswareham.jt4000;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.SysexMessage;
+
+import net.chriswareham.midi.SysexRequestEngine;
+
+/**
+ * This class provides a loader that requests patch dumps from a Behringer
+ * JT-4000. Each request is matched to its dump by the patch dump header and
+ * the patch number, so several requests can be in flight at once, and is
+ * retried by the engine if the dump does not arrive in time. The requests
+ * and dumps use the provisional format described by {@link Patch}, so a
+ * device that does not understand them leaves every request to time out.
+ */
+public class PatchLoader {
+    /**
+     * The bytes every patch dump starts with.
+     */
+    private static final byte[] DUMP_START = Patch.getDumpStart();
+
+    /**
+     * The engine to send requests with.
+     */
+    private final SysexRequestEngine engine;
+
+    /**
+     * Construct an instance of a loader that requests patch dumps.
+     *
+     * @param engine the engine to send requests with
+     */
+    public PatchLoader(final SysexRequestEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Request a patch dump.
+     *
+     * @param midiChannel the MIDI channel of the device, 0-15
+     * @param patchNumber the patch number, 0-31
+     * @return a future that completes with the patch dump, which can be
+     *         decoded with {@link Patch#deserialise(SysexMessage)}
+     * @throws InvalidMidiDataException if the request is invalid
+     */
+    public CompletableFuture<SysexMessage> load(final int midiChannel, final int patchNumber) throws InvalidMidiDataException {
+        return engine.request(Patch.createDumpRequest(midiChannel, patchNumber), DUMP_START, Patch.NUMBER_OFFSET, patchNumber);
+    }
+}
@@ -0,0 +1,163 @@
+package net.chriswareham.jt4000;
+
+/**
+ * This class describes a morph between two patches, precomputed as the
+ * control change value of every parameter at each of a number of steps.
+ * Scaled parameters are interpolated in their own 0-24 or 0-99 domain and
+ * then scaled, so every step lands on a value the JT-4000 can show, while
+ * enumerated values and switches jump from the first patch to the second at
+ * a configurable point of the morph. The control changes that differ between
+ * any two steps can then be found without interpolating or scaling anything,
+ * which keeps a morph cheap enough to step at the full rate of the link.
+ */
+public class PatchMorph {
+    /**
+     * The default number of steps of a morph.
+     */
+    public static final int DEFAULT_STEPS = 256;
+
+    /**
+     * The default point of a morph, from 0 to 1, at which enumerated values
+     * and switches change.
+     */
+    public static final float DEFAULT_SWITCH_POINT = 0.5f;
+
+    /**
+     * The parameters morphed.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The number of steps.
+     */
+    private final int steps;
+
+    /**
+     * The control change value of each parameter at each step, a row of
+     * {@link #PARAMETERS} values per step.
+     */
+    private final byte[] ccValues;
+
+    /**
+     * The number of control changes that differ from one step to the next,
+     * over the whole morph.
+     */
+    private final int changeCount;
+
+    /**
+     * Construct an instance of a morph between two patches with the default
+     * number of steps and switch point.
+     *
+     * @param from the patch to morph from
+     * @param to the patch to morph to
+     */
+    public PatchMorph(final Patch from, final Patch to) {
+        this(from, to, DEFAULT_STEPS, DEFAULT_SWITCH_POINT);
+    }
+
+    /**
+     * Construct an instance of a morph between two patches.
+     *
+     * @param from the patch to morph from
+     * @param to the patch to morph to
+     * @param steps the number of steps, after the first of which the morph
+     *        has left the patch it morphs from and after the last of which it
+     *        has reached the patch it morphs to
+     * @param switchPoint the point of the morph, from 0 to 1, at which
+     *        enumerated values and switches change
+     */
+    public PatchMorph(final Patch from, final Patch to, final int steps, final float switchPoint) {
+        this.steps = Math.max(1, steps);
+        ccValues = new byte[(this.steps + 1) * PARAMETERS.length];
+        for (Parameter parameter : PARAMETERS) {
+            int fromCcValue = parameter.getCcValue(from);
+            int toCcValue = parameter.getCcValue(to);
+            ParameterScale scale = parameter.getScale();
+            int fromValue = scale != null ? scale.toValue(fromCcValue) : 0;
+            int toValue = scale != null ? scale.toValue(toCcValue) : 0;
+            for (int step = 0; step <= this.steps; ++step) {
+                int ccValue;
+                if (scale != null) {
+                    ccValue = scale.toCcValue(fromValue + Math.round((toValue - fromValue) * (float) step / this.steps));
+                } else {
+                    ccValue = step < switchPoint * this.steps ? fromCcValue : toCcValue;
+                }
+                ccValues[step * PARAMETERS.length + parameter.ordinal()] = (byte) ccValue;
+            }
+        }
+        int count = 0;
+        for (int i = PARAMETERS.length; i < ccValues.length; ++i) {
+            if (ccValues[i] != ccValues[i - PARAMETERS.length]) {
+                ++count;
+            }
+        }
+        changeCount = count;
+    }
+
+    /**
+     * Get the number of steps.
+     *
+     * @return the number of steps
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Get the number of control changes that differ from one step to the
+     * next, over the whole morph.
+     *
+     * @return the number of control changes
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Get the control change value of a parameter at a step.
+     *
+     * @param step the step, from 0 to the number of steps
+     * @param parameter the parameter
+     * @return the control change value
+     */
+    public int getCcValue(final int step, final Parameter parameter) {
+        return ccValues[step * PARAMETERS.length + parameter.ordinal()];
+    }
+
+    /**
+     * Set every parameter of a patch to its value at a step.
+     *
+     * @param step the step, from 0 to the number of steps
+     * @param patch the patch
+     */
+    public void getPatch(final int step, final Patch patch) {
+        for (Parameter parameter : PARAMETERS) {
+            parameter.setCcValue(patch, getCcValue(step, parameter));
+        }
+    }
+
+    /**
+     * Get the control changes that take the morph from one step to another.
+     *
+     * @param fromStep the step the morph is at, or -1 to get every control
+     *        change of the step it moves to
+     * @param toStep the step the morph moves to
+     * @param ccNumbers the array to put the numbers of the control changes
+     *        in, with room for every parameter
+     * @param changedCcValues the array to put the values of the control
+     *        changes in, with room for every parameter
+     * @return the number of control changes
+     */
+    public int getChanges(final int fromStep, final int toStep, final int[] ccNumbers, final int[] changedCcValues) {
+        int to = toStep * PARAMETERS.length;
+        int from = fromStep * PARAMETERS.length;
+        int count = 0;
+        for (int i = 0; i < PARAMETERS.length; ++i) {
+            if (fromStep < 0 || ccValues[from + i] != ccValues[to + i]) {
+                ccNumbers[count] = PARAMETERS[i].getCcNumber();
+                changedCcValues[count++] = ccValues[to + i];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,129 @@
+package net.chriswareham.jt4000;
+
+import java.util.Arrays;
+
+/**
+ * This class describes a query of the patches in a {@link PatchIndex}, as a
+ * conjunction of inclusive ranges of the values stored for parameters. The
+ * values are those of a {@link PatchBank} record: the parameter value, the
+ * ordinal of an enumerated value, or 0 or 1 for a switch. Conditions on the
+ * same parameter narrow its range.
+ */
+public class PatchQuery {
+    /**
+     * The lowest value stored for a parameter.
+     */
+    private static final int MINIMUM = 0;
+
+    /**
+     * The highest value stored for a parameter.
+     */
+    private static final int MAXIMUM = 127;
+
+    /**
+     * The lowest matching value of each parameter.
+     */
+    private final int[] minimums = new int[Parameter.values().length];
+
+    /**
+     * The highest matching value of each parameter.
+     */
+    private final int[] maximums = new int[Parameter.values().length];
+
+    /**
+     * Construct an instance of a query that matches every patch.
+     */
+    public PatchQuery() {
+        Arrays.fill(minimums, MINIMUM);
+        Arrays.fill(maximums, MAXIMUM);
+    }
+
+    /**
+     * Match patches whose parameter is an enumerated value.
+     *
+     * @param parameter the parameter
+     * @param value the enumerated value
+     * @return the query
+     */
+    public PatchQuery equal(final Parameter parameter, final Enum<?> value) {
+        return between(parameter, value.ordinal(), value.ordinal());
+    }
+
+    /**
+     * Match patches whose parameter has a value.
+     *
+     * @param parameter the parameter
+     * @param value the value
+     * @return the query
+     */
+    public PatchQuery equal(final Parameter parameter, final int value) {
+        return between(parameter, value, value);
+    }
+
+    /**
+     * Match patches whose parameter is greater than a value.
+     *
+     * @param parameter the parameter
+     * @param value the value
+     * @return the query
+     */
+    public PatchQuery greaterThan(final Parameter parameter, final int value) {
+        return between(parameter, value + 1, MAXIMUM);
+    }
+
+    /**
+     * Match patches whose parameter is less than a value.
+     *
+     * @param parameter the parameter
+     * @param value the value
+     * @return the query
+     */
+    public PatchQuery lessThan(final Parameter parameter, final int value) {
+        return between(parameter, MINIMUM, value - 1);
+    }
+
+    /**
+     * Match patches whose parameter is within an inclusive range.
+     *
+     * @param parameter the parameter
+     * @param minimum the lowest matching value
+     * @param maximum the highest matching value
+     * @return the query
+     */
+    public PatchQuery between(final Parameter parameter, final int minimum, final int maximum) {
+        int i = parameter.ordinal();
+        minimums[i] = Math.max(minimums[i], minimum);
+        maximums[i] = Math.min(maximums[i], maximum);
+        return this;
+    }
+
+    /**
+     * Get whether the query constrains a parameter.
+     *
+     * @param parameter the parameter
+     * @return whether the query constrains the parameter
+     */
+    public boolean isConstrained(final Parameter parameter) {
+        return minimums[parameter.ordinal()] > MINIMUM || maximums[parameter.ordinal()] < MAXIMUM;
+    }
+
+    /**
+     * Get the lowest matching value of a parameter.
+     *
+     * @param parameter the parameter
+     * @return the lowest matching value
+     */
+    public int getMinimum(final Parameter parameter) {
+        return minimums[parameter.ordinal()];
+    }
+
+    /**
+     * Get the highest matching value of a parameter.
+     *
+     * @param parameter the parameter
+     * @return the highest matching value
+     */
+    public int getMaximum(final Parameter parameter) {
+        return maximums[parameter.ordinal()];
+    }
+}
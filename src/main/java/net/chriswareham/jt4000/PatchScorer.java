@@ -0,0 +1,17 @@
+package net.chriswareham.jt4000;
+
+/**
+ * This interface is implemented by classes that score the patches of a
+ * {@link PatchBank}, such as the candidates of a {@link PatchGenerator}.
+ * Patches may be scored by several threads at once.
+ */
+public interface PatchScorer {
+    /**
+     * Score a patch of a bank.
+     *
+     * @param bank the bank
+     * @param index the index of the patch
+     * @return the score of the patch, where higher is better
+     */
+    float score(PatchBank bank, int index);
+}
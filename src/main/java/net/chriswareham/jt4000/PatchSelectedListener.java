@@ -0,0 +1,14 @@
+package net.chriswareham.jt4000;
+
+/**
+ * This interface is implemented by classes that want to be notified when a
+ * patch has been selected.
+ */
+public interface PatchSelectedListener {
+    /**
+     * Notify the listener that a patch has been selected.
+     *
+     * @param patch the patch that has been selected
+     */
+    void selected(Patch patch);
+}
@@ -0,0 +1,153 @@
+package net.chriswareham.jt4000;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import net.chriswareham.midi.ControllerState;
+import net.chriswareham.midi.OutputDispatcher;
+
+/**
+ * This class provides a sender that transmits every parameter of a patch as a
+ * burst of MIDI control changes. The burst is encoded with running status
+ * where enabled and paced to the byte rate of the MIDI link by the
+ * dispatcher, so the input buffer of the JT-4000 is never overrun.
+ *
+ * <p>Switching to a patch can instead send only the parameters whose values
+ * differ from those the device holds, as shadowed by the dispatcher, which
+ * for related sounds is a handful of control changes rather than all of them.
+ */
+public class PatchSender {
+    /**
+     * The parameters sent for a patch.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The dispatcher to send control changes with.
+     */
+    private final OutputDispatcher dispatcher;
+
+    /**
+     * The control change numbers of a burst.
+     */
+    private final int[] ccNumbers = new int[PARAMETERS.length];
+
+    /**
+     * The control change values of a burst.
+     */
+    private final int[] ccValues = new int[PARAMETERS.length];
+
+    /**
+     * The control change numbers of a burst of changes.
+     */
+    private final int[] changedCcNumbers = new int[PARAMETERS.length];
+
+    /**
+     * The number of control changes in the last burst sent.
+     */
+    private volatile int lastSent;
+
+    /**
+     * Construct an instance of a sender that transmits patches.
+     *
+     * @param dispatcher the dispatcher to send control changes with
+     */
+    public PatchSender(final OutputDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        for (int i = 0; i < PARAMETERS.length; ++i) {
+            ccNumbers[i] = PARAMETERS[i].getCcNumber();
+        }
+    }
+
+    /**
+     * Send every parameter of a patch on the MIDI channel of the patch. Any
+     * changes to the same parameters that are waiting to be sent are
+     * superseded.
+     *
+     * @param patch the patch to send
+     * @return a future that completes with how long the transfer took, once
+     *         the last control change has been carried by the link
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    public CompletableFuture<Duration> send(final Patch patch) throws InvalidMidiDataException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            for (int i = 0; i < PARAMETERS.length; ++i) {
+                ccValues[i] = PARAMETERS[i].getCcValue(patch);
+            }
+            dispatcher.sendControlChanges(patch.getMidiChannel(), ccNumbers, ccValues, PARAMETERS.length);
+            lastSent = PARAMETERS.length;
+        }
+        return dispatcher.flush().thenApply(ignored -> Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Send the parameters of a patch whose values differ from those the
+     * device holds on the MIDI channel of the patch, or that are not known.
+     * Any changes to the same parameters that are waiting to be sent are
+     * superseded.
+     *
+     * @param patch the patch to switch to
+     * @return a future that completes with how long the transfer took, once
+     *         the last control change has been carried by the link
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    public CompletableFuture<Duration> sendChanges(final Patch patch) throws InvalidMidiDataException {
+        long start = System.nanoTime();
+        ControllerState state = dispatcher.getControllerState();
+        int channel = patch.getMidiChannel();
+        synchronized (this) {
+            int count = 0;
+            for (Parameter parameter : PARAMETERS) {
+                int ccValue = parameter.getCcValue(patch);
+                if (state.get(channel, parameter.getCcNumber()) != ccValue) {
+                    changedCcNumbers[count] = parameter.getCcNumber();
+                    ccValues[count++] = ccValue;
+                }
+            }
+            if (count > 0) {
+                dispatcher.sendControlChanges(channel, changedCcNumbers, ccValues, count);
+            }
+            lastSent = count;
+        }
+        return dispatcher.flush().thenApply(ignored -> Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Send the parameters of a patch whose values differ from those the
+     * device holds through the control change slots of the dispatcher,
+     * without waiting for them to be carried by the link. A value still
+     * waiting to be sent for a parameter is replaced rather than queued
+     * behind, so stepping quickly through patches never builds a backlog of
+     * stale values: whatever intermediate values are skipped, the device
+     * ends up holding every parameter of the last patch sent.
+     *
+     * @param patch the patch to switch to
+     * @return the number of control changes sent
+     */
+    public synchronized int sendChangesCoalesced(final Patch patch) {
+        ControllerState state = dispatcher.getControllerState();
+        int channel = patch.getMidiChannel();
+        int count = 0;
+        for (Parameter parameter : PARAMETERS) {
+            int ccValue = parameter.getCcValue(patch);
+            if (state.get(channel, parameter.getCcNumber()) != ccValue) {
+                dispatcher.sendControlChange(channel, parameter.getCcNumber(), ccValue);
+                ++count;
+            }
+        }
+        lastSent = count;
+        return count;
+    }
+
+    /**
+     * Get the number of control changes in the last burst sent.
+     *
+     * @return the number of control changes in the last burst sent
+     */
+    public int getLastSent() {
+        return lastSent;
+    }
+}
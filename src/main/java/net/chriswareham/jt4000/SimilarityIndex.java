@@ -0,0 +1,421 @@
+package net.chriswareham.jt4000;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class provides a vantage point tree of the patches in a
+ * {@link PatchBank}, for finding the patches most similar to a patch in
+ * sub-linear time. Patches are compared as vectors of their parameters: the
+ * distance between two patches is the weighted sum over the parameters of
+ * the difference of a scaled parameter as a fraction of its range, or of one
+ * for an enumerated value or switch that differs. This is a metric as long
+ * as no weight is negative or infinite, which the tree relies on to prune
+ * whole subtrees.
+ *
+ * <p>The tree is held in arrays rather than nodes. The patches of a subtree
+ * occupy a range of the array of patches, starting with its vantage point,
+ * followed by the patches within the threshold distance of the vantage point
+ * and then those beyond it. Subtrees are built in parallel on the common
+ * fork join pool. The index is immutable once built, so it can be searched
+ * by any number of threads.
+ */
+public class SimilarityIndex {
+    /**
+     * The parameters compared.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * The number of patches below which a subtree is built by the thread that
+     * partitions its parent.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * The values stored for the parameters of each patch, a row of
+     * {@link #PARAMETERS} values per patch.
+     */
+    private final byte[] vectors;
+
+    /**
+     * The weight of a difference of one in each parameter.
+     */
+    private final float[] unitWeights;
+
+    /**
+     * Whether each parameter is compared as an enumerated value.
+     */
+    private final boolean[] categorical;
+
+    /**
+     * The patches, ordered as the tree.
+     */
+    private final int[] patches;
+
+    /**
+     * The threshold distance of the subtree starting at each position of the
+     * array of patches.
+     */
+    private final float[] thresholds;
+
+    /**
+     * Construct an instance of a similarity index of the patches in a bank,
+     * weighting every parameter equally.
+     *
+     * @param bank the bank
+     */
+    public SimilarityIndex(final PatchBank bank) {
+        this(bank, Map.of());
+    }
+
+    /**
+     * Construct an instance of a similarity index of the patches in a bank.
+     *
+     * @param bank the bank
+     * @param weights the weight of each parameter, which must be finite and
+     *        not negative, where parameters that are not given have a weight
+     *        of one
+     */
+    public SimilarityIndex(final PatchBank bank, final Map<Parameter, Float> weights) {
+        int size = bank.size();
+        vectors = new byte[size * PARAMETERS.length];
+        unitWeights = new float[PARAMETERS.length];
+        categorical = new boolean[PARAMETERS.length];
+        byte[] column = new byte[size];
+        for (Parameter parameter : PARAMETERS) {
+            int i = parameter.ordinal();
+            float weight = weights.getOrDefault(parameter, 1.0f);
+            if (!(weight >= 0.0f && weight < Float.POSITIVE_INFINITY)) {
+                throw new IllegalArgumentException("Invalid weight " + weight + " of " + parameter);
+            }
+            categorical[i] = parameter.getScale() == null;
+            unitWeights[i] = categorical[i] ? weight : weight / parameter.getScale().getMaximum();
+            bank.getValues(parameter, 0, column, 0, size);
+            for (int patch = 0; patch < size; ++patch) {
+                vectors[patch * PARAMETERS.length + i] = column[patch];
+            }
+        }
+        patches = new int[size];
+        Arrays.setAll(patches, patch -> patch);
+        thresholds = new float[size];
+        ForkJoinPool.commonPool().invoke(new Build(0, size, new float[size], new SplittableRandom(size)));
+    }
+
+    /**
+     * Get the number of patches indexed.
+     *
+     * @return the number of patches indexed
+     */
+    public int size() {
+        return patches.length;
+    }
+
+    /**
+     * Get the distance between two patches in the index.
+     *
+     * @param first the index of the first patch in the bank
+     * @param second the index of the second patch in the bank
+     * @return the distance
+     */
+    public float distance(final int first, final int second) {
+        return measure(vectors, first * PARAMETERS.length, second * PARAMETERS.length);
+    }
+
+    /**
+     * Find the patches most similar to a patch in the index, excluding the
+     * patch itself.
+     *
+     * @param patch the index of the patch in the bank
+     * @param count the number of patches to find
+     * @return the indexes in the bank of the patches found, most similar
+     *         first
+     */
+    public int[] findSimilar(final int patch, final int count) {
+        return search(vectors, patch * PARAMETERS.length, patch, count);
+    }
+
+    /**
+     * Find the patches in the index most similar to a patch.
+     *
+     * @param patch the patch
+     * @param count the number of patches to find
+     * @return the indexes in the bank of the patches found, most similar
+     *         first
+     */
+    public int[] findSimilar(final Patch patch, final int count) {
+        PatchBank bank = new PatchBank(1);
+        bank.add(patch);
+        byte[] vector = new byte[PARAMETERS.length];
+        for (Parameter parameter : PARAMETERS) {
+            vector[parameter.ordinal()] = (byte) bank.getValue(0, parameter);
+        }
+        return search(vector, 0, -1, count);
+    }
+
+    /**
+     * Search the tree for the patches nearest a vector.
+     *
+     * @param query the array holding the vector
+     * @param offset the offset of the vector in the array
+     * @param excluded the index of a patch to exclude, or -1
+     * @param count the number of patches to find
+     * @return the indexes in the bank of the patches found, nearest first
+     */
+    private int[] search(final byte[] query, final int offset, final int excluded, final int count) {
+        Nearest nearest = new Nearest(Math.min(count, patches.length));
+        if (nearest.capacity > 0) {
+            search(query, offset, excluded, 0, patches.length, nearest);
+        }
+        return Arrays.copyOf(nearest.patches, nearest.size);
+    }
+
+    /**
+     * Search a subtree for the patches nearest a vector.
+     *
+     * @param query the array holding the vector
+     * @param offset the offset of the vector in the array
+     * @param excluded the index of a patch to exclude, or -1
+     * @param low the start of the subtree in the array of patches
+     * @param high the end of the subtree in the array of patches
+     * @param nearest the patches found so far
+     */
+    private void search(final byte[] query, final int offset, final int excluded, final int low, final int high, final Nearest nearest) {
+        if (low >= high) {
+            return;
+        }
+        int vantagePoint = patches[low];
+        float d = measure(query, offset, vantagePoint * PARAMETERS.length);
+        if (vantagePoint != excluded) {
+            nearest.offer(vantagePoint, d);
+        }
+        if (high - low == 1) {
+            return;
+        }
+        int middle = (low + 1 + high) >>> 1;
+        float threshold = thresholds[low];
+        if (d < threshold) {
+            search(query, offset, excluded, low + 1, middle, nearest);
+            if (d + nearest.radius() >= threshold) {
+                search(query, offset, excluded, middle, high, nearest);
+            }
+        } else {
+            search(query, offset, excluded, middle, high, nearest);
+            if (d - nearest.radius() <= threshold) {
+                search(query, offset, excluded, low + 1, middle, nearest);
+            }
+        }
+    }
+
+    /**
+     * Get the distance between a vector and the vector of a patch.
+     *
+     * @param query the array holding the vector
+     * @param offset the offset of the vector in the array
+     * @param patchOffset the offset of the vector of the patch
+     * @return the distance
+     */
+    private float measure(final byte[] query, final int offset, final int patchOffset) {
+        float d = 0.0f;
+        for (int i = 0; i < PARAMETERS.length; ++i) {
+            int difference = Math.abs(query[offset + i] - vectors[patchOffset + i]);
+            d += categorical[i] ? (difference != 0 ? unitWeights[i] : 0.0f) : difference * unitWeights[i];
+        }
+        return d;
+    }
+
+    /**
+     * This class describes the build of a subtree, which partitions the
+     * patches of the subtree around a vantage point and builds the two
+     * subtrees that result, in parallel if they are large.
+     */
+    private final class Build extends RecursiveAction {
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The start of the subtree in the array of patches.
+         */
+        private final int low;
+
+        /**
+         * The end of the subtree in the array of patches.
+         */
+        private final int high;
+
+        /**
+         * The distances of the patches to their vantage point, shared by
+         * every build as each uses only the range of its subtree.
+         */
+        private final float[] distances;
+
+        /**
+         * The source of random vantage points.
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Construct an instance of the build of a subtree.
+         *
+         * @param low the start of the subtree in the array of patches
+         * @param high the end of the subtree in the array of patches
+         * @param distances the distances of the patches to their vantage point
+         * @param random the source of random vantage points
+         */
+        Build(final int low, final int high, final float[] distances, final SplittableRandom random) {
+            this.low = low;
+            this.high = high;
+            this.distances = distances;
+            this.random = random;
+        }
+
+        /**
+         * Build the subtree.
+         */
+        @Override
+        protected void compute() {
+            if (high - low <= 1) {
+                return;
+            }
+            swap(low, low + random.nextInt(high - low));
+            int vantagePoint = patches[low] * PARAMETERS.length;
+            for (int i = low + 1; i < high; ++i) {
+                distances[i] = measure(vectors, vantagePoint, patches[i] * PARAMETERS.length);
+            }
+            int middle = (low + 1 + high) >>> 1;
+            select(low + 1, high - 1, middle);
+            thresholds[low] = middle < high ? distances[middle] : 0.0f;
+            Build inside = new Build(low + 1, middle, distances, random.split());
+            Build outside = new Build(middle, high, distances, random.split());
+            if (high - low > PARALLEL_THRESHOLD) {
+                invokeAll(inside, outside);
+            } else {
+                inside.compute();
+                outside.compute();
+            }
+        }
+
+        /**
+         * Partially sort a range of patches by distance so that the patch at
+         * a position has the distance it would have if sorted, with no
+         * greater distances before it and no lesser ones after it.
+         *
+         * @param first the first position of the range
+         * @param last the last position of the range
+         * @param position the position
+         */
+        private void select(final int first, final int last, final int position) {
+            int left = first;
+            int right = last;
+            while (left < right) {
+                float pivot = distances[(left + right) >>> 1];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (distances[i] < pivot) {
+                        ++i;
+                    }
+                    while (distances[j] > pivot) {
+                        --j;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (position <= j) {
+                    right = j;
+                } else if (position >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Swap two patches and their distances.
+         *
+         * @param i the position of the first patch
+         * @param j the position of the second patch
+         */
+        private void swap(final int i, final int j) {
+            int patch = patches[i];
+            patches[i] = patches[j];
+            patches[j] = patch;
+            float distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+        }
+    }
+
+    /**
+     * This class describes the patches nearest a vector found so far, held in
+     * order of distance.
+     */
+    private static final class Nearest {
+        /**
+         * The number of patches to find.
+         */
+        private final int capacity;
+
+        /**
+         * The patches found, nearest first.
+         */
+        private final int[] patches;
+
+        /**
+         * The distances of the patches found.
+         */
+        private final float[] distances;
+
+        /**
+         * The number of patches found.
+         */
+        private int size;
+
+        /**
+         * Construct an instance of the patches nearest a vector.
+         *
+         * @param capacity the number of patches to find
+         */
+        Nearest(final int capacity) {
+            this.capacity = Math.max(0, capacity);
+            patches = new int[this.capacity];
+            distances = new float[this.capacity];
+        }
+
+        /**
+         * Get the distance within which a patch must be to be found.
+         *
+         * @return the distance
+         */
+        float radius() {
+            return size < capacity ? Float.POSITIVE_INFINITY : distances[size - 1];
+        }
+
+        /**
+         * Offer a patch, which is kept if it is nearer than a patch found.
+         *
+         * @param patch the patch
+         * @param distance the distance of the patch
+         */
+        void offer(final int patch, final float distance) {
+            if (distance >= radius()) {
+                return;
+            }
+            int i = size < capacity ? size++ : size - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                patches[i] = patches[i - 1];
+                distances[i] = distances[i - 1];
+                --i;
+            }
+            patches[i] = patch;
+            distances[i] = distance;
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class VcaPanel extends AbstractEditorPanel {
      *
      * @param patch the patch to edit
      */
+    @Override
     public void setPatch(final Patch patch) {
         this.patch = patch;
 
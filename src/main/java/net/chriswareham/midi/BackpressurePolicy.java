@@ -0,0 +1,55 @@
+package net.chriswareham.midi;
+
+/**
+ * This enumeration describes what an {@link OutputDispatcher} does with a
+ * message when its queue is full because the device is not keeping up.
+ */
+public enum BackpressurePolicy {
+    /**
+     * The caller waits for space in the queue, for a limited time after which
+     * the message is dropped. A message sent by the dispatcher's own thread,
+     * such as from a flush callback, is dropped without waiting. This policy
+     * must not be used to send from the event dispatch thread, which would
+     * freeze while it waits.
+     */
+    BLOCK("Block"),
+
+    /**
+     * The oldest message in the queue is dropped to make space.
+     */
+    DROP_OLDEST("Drop Oldest"),
+
+    /**
+     * A queued message with the same status and, for control changes and
+     * polyphonic key pressure, the same first data byte is replaced, so only
+     * the latest value is sent. Only control changes, polyphonic key
+     * pressure, program changes, channel pressure and pitch bend replace
+     * queued messages; notes never do. The oldest message is dropped if there
+     * is no such message.
+     */
+    COALESCE("Coalesce");
+
+    /**
+     * The description of the enumeration value.
+     */
+    private final String description;
+
+    /**
+     * Construct an instance of an enumeration value.
+     *
+     * @param description the description of the enumeration value
+     */
+    BackpressurePolicy(final String description) {
+        this.description = description;
+    }
+
+    /**
+     * Get the description of the enumeration value.
+     *
+     * @return the description of the enumeration value
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,95 @@
+package net.chriswareham.midi;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class describes a shadow of the control change values a device
+ * holds, as far as they are known from what has been sent to it. A value is
+ * {@link #UNKNOWN} until a control change for it is sent, and becomes unknown
+ * again whenever something may have changed it behind the shadow's back, such
+ * as a program change, a System Exclusive message or a message that was
+ * dropped or failed to send. Values can be read and written from any thread.
+ */
+public class ControllerState {
+    /**
+     * The value of a control change that is not known.
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * The number of MIDI channels.
+     */
+    private static final int CHANNELS = 16;
+
+    /**
+     * The number of control change numbers per channel.
+     */
+    private static final int CONTROLLERS = 128;
+
+    /**
+     * Get the index of the value of a control change.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param ccNumber the number of the control change, 0-127
+     * @return the index of the value
+     */
+    private static int slot(final int channel, final int ccNumber) {
+        return (channel & 0x0F) * CONTROLLERS + (ccNumber & 0x7F);
+    }
+
+    /**
+     * The value of each channel and control change number.
+     */
+    private final AtomicIntegerArray values = new AtomicIntegerArray(CHANNELS * CONTROLLERS);
+
+    /**
+     * Construct an instance of a shadow of control change values, all of
+     * which are unknown.
+     */
+    public ControllerState() {
+        invalidate();
+    }
+
+    /**
+     * Get the value of a control change.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param ccNumber the number of the control change, 0-127
+     * @return the value of the control change, or {@link #UNKNOWN}
+     */
+    public int get(final int channel, final int ccNumber) {
+        return values.get(slot(channel, ccNumber));
+    }
+
+    /**
+     * Set the value of a control change.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param ccNumber the number of the control change, 0-127
+     * @param ccValue the value of the control change, 0-127
+     */
+    public void set(final int channel, final int ccNumber, final int ccValue) {
+        values.set(slot(channel, ccNumber), ccValue & 0x7F);
+    }
+
+    /**
+     * Mark every control change value of a channel as unknown.
+     *
+     * @param channel the MIDI channel, 0-15
+     */
+    public void invalidate(final int channel) {
+        int first = slot(channel, 0);
+        for (int i = first; i < first + CONTROLLERS; ++i) {
+            values.set(i, UNKNOWN);
+        }
+    }
+
+    /**
+     * Mark every control change value as unknown.
+     */
+    public void invalidate() {
+        for (int i = 0; i < values.length(); ++i) {
+            values.set(i, UNKNOWN);
+        }
+    }
+}
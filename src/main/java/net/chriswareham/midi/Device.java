@@ -55,6 +55,16 @@ public class Device implements AutoCloseable {
         }
     }
 
+    /**
+     * Get the current time of the device in microseconds.
+     *
+     * @return the current time of the device in microseconds, or -1 if the
+     *         device does not support timestamps
+     */
+    public long getMicrosecondPosition() {
+        return device != null ? device.getMicrosecondPosition() : -1L;
+    }
+
     /**
      * Obtain a receiver through which the device can receive MIDI data.
      *
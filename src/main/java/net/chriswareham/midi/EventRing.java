@@ -0,0 +1,119 @@
+package net.chriswareham.midi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * This class provides a lock-free ring buffer of primitive events, packed
+ * into an int, between a single producer thread and a single consumer thread.
+ * Neither side ever blocks or allocates: the producer drops events if the
+ * ring is full and counts them, and the consumer drains every event that has
+ * been published since it last drained.
+ */
+public class EventRing {
+    /**
+     * The default number of events the ring holds.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The mask applied to a sequence number to get an index.
+     */
+    private final int mask;
+
+    /**
+     * The events.
+     */
+    private final int[] events;
+
+    /**
+     * The sequence number of the next event to be published, written only by
+     * the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The sequence number of the next event to be drained, written only by
+     * the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The producer's copy of the sequence number of the next event to be
+     * drained, refreshed only when the ring appears to be full.
+     */
+    private long cachedHead;
+
+    /**
+     * The number of events dropped because the ring was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Construct an instance of a ring buffer of events.
+     */
+    public EventRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an instance of a ring buffer of events.
+     *
+     * @param capacity the number of events the ring holds, which must be a
+     *        power of two
+     */
+    public EventRing(final int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        events = new int[capacity];
+    }
+
+    /**
+     * Get the number of events dropped because the ring was full.
+     *
+     * @return the number of events dropped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Publish an event. Must only be called by the producer thread.
+     *
+     * @param event the event
+     * @return whether the event was published, otherwise the ring was full
+     *         and the event was dropped
+     */
+    public boolean offer(final int event) {
+        long sequence = tail.get();
+        if (sequence - cachedHead > mask) {
+            cachedHead = head.get();
+            if (sequence - cachedHead > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        events[(int) sequence & mask] = event;
+        tail.lazySet(sequence + 1);
+        return true;
+    }
+
+    /**
+     * Drain every event published so far, in the order they were published.
+     * Must only be called by the consumer thread.
+     *
+     * @param consumer the consumer of the events
+     * @return the number of events drained
+     */
+    public int drain(final IntConsumer consumer) {
+        long sequence = head.get();
+        long end = tail.get();
+        for (long next = sequence; next < end; ++next) {
+            consumer.accept(events[(int) next & mask]);
+        }
+        head.lazySet(end);
+        return (int) (end - sequence);
+    }
+}
@@ -0,0 +1,387 @@
+package net.chriswareham.midi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * This class provides a trace of the MIDI messages sent to and received from
+ * devices. Messages are recorded with a timestamp into a lock-free ring buffer
+ * that any number of threads can record into, and a background thread writes
+ * them in batches to a binary trace file, so recording never waits for I/O.
+ * If the ring buffer is full, messages are dropped and counted.
+ *
+ * <p>The trace file starts with a header of the magic number {@code MTRC}, a
+ * version byte and the wall clock time the trace started at in milliseconds.
+ * Each message follows as the nanoseconds since the latest message before it
+ * as a variable length quantity, or zero if it was recorded earlier than that
+ * message, then a flags byte, then the length of the message as a variable
+ * length quantity, and then the bytes of the message. Messages longer than {@link #SLOT_SIZE} bytes are
+ * truncated and flagged as such. {@link MidiTraceReader} converts a trace
+ * file to text.
+ */
+public class MidiTrace implements AutoCloseable {
+    /**
+     * The magic number at the start of a trace file.
+     */
+    static final int MAGIC = 0x4D545243;
+
+    /**
+     * The version of the trace file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The flag for a message received from a device.
+     */
+    static final int FLAG_INCOMING = 0x01;
+
+    /**
+     * The flag for a message that was truncated.
+     */
+    static final int FLAG_TRUNCATED = 0x02;
+
+    /**
+     * The default number of messages the ring buffer holds.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The maximum number of bytes of a message that are recorded.
+     */
+    public static final int SLOT_SIZE = 128;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(MidiTrace.class.getName());
+
+    /**
+     * The number of nanoseconds the writer waits for messages when the ring
+     * buffer is empty.
+     */
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(20L);
+
+    /**
+     * The size of the buffer messages are written to the file from.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of bytes a recorded message takes in the file.
+     */
+    private static final int MAXIMUM_RECORD_SIZE = 10 + 1 + 2 + SLOT_SIZE;
+
+    /**
+     * The number of milliseconds to wait for the writer thread to finish.
+     */
+    private static final long JOIN_TIMEOUT = 5000L;
+
+    /**
+     * The mask applied to a sequence number to get a ring buffer index.
+     */
+    private final int mask;
+
+    /**
+     * The timestamp of each message, from {@link System#nanoTime()}.
+     */
+    private final long[] timestamps;
+
+    /**
+     * The flags of each message.
+     */
+    private final byte[] flags;
+
+    /**
+     * The number of bytes recorded for each message.
+     */
+    private final int[] lengths;
+
+    /**
+     * The bytes of each message.
+     */
+    private final byte[] data;
+
+    /**
+     * The sequence number plus one of the message published in each slot.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The sequence number of the next message to be recorded.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next message to be written.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of messages dropped because the ring buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The channel of the trace file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The buffer messages are written to the file from.
+     */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    /**
+     * The latest timestamp of the messages written to the file, which the
+     * time of each record is written relative to. A message recorded
+     * concurrently with a later one may be written after it, with a time of
+     * zero, so this never moves back.
+     */
+    private long lastTimestamp;
+
+    /**
+     * The thread that writes messages to the file.
+     */
+    private final Thread thread;
+
+    /**
+     * Whether the trace is open.
+     */
+    private volatile boolean open;
+
+    /**
+     * Construct an instance of a trace that writes to a file.
+     *
+     * @param path the path of the trace file
+     * @throws IOException if the trace file cannot be created
+     */
+    public MidiTrace(final Path path) throws IOException {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an instance of a trace that writes to a file.
+     *
+     * @param path the path of the trace file
+     * @param capacity the number of messages the ring buffer holds, which
+     *        must be a power of two
+     * @throws IOException if the trace file cannot be created
+     */
+    public MidiTrace(final Path path, final int capacity) throws IOException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        timestamps = new long[capacity];
+        flags = new byte[capacity];
+        lengths = new int[capacity];
+        data = new byte[capacity * SLOT_SIZE];
+        published = new AtomicLongArray(capacity);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        lastTimestamp = System.nanoTime();
+        writeBuffer.putInt(MAGIC).put((byte) VERSION).putLong(System.currentTimeMillis());
+        thread = new Thread(this::write, "MIDI trace: " + path.getFileName());
+        thread.setDaemon(true);
+        open = true;
+        thread.start();
+    }
+
+    /**
+     * Get the number of messages dropped because the ring buffer was full.
+     *
+     * @return the number of messages dropped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Record a message sent to a device.
+     *
+     * @param message the message
+     */
+    public void recordOutgoing(final MidiMessage message) {
+        recordMessage(0, message);
+    }
+
+    /**
+     * Record a message received from a device.
+     *
+     * @param message the message
+     */
+    public void recordIncoming(final MidiMessage message) {
+        recordMessage(FLAG_INCOMING, message);
+    }
+
+    /**
+     * Stop recording, write the messages that have been recorded and close
+     * the trace file.
+     */
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(JOIN_TIMEOUT);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Record a message. Short messages are recorded without allocating. The
+     * message is timestamped before its slot is claimed, so the records
+     * claimed by concurrent callers are close to the order of their times.
+     *
+     * @param direction the flag for the direction of the message
+     * @param message the message
+     */
+    private void recordMessage(final int direction, final MidiMessage message) {
+        if (!open) {
+            return;
+        }
+        long timestamp = System.nanoTime();
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        int offset = index * SLOT_SIZE;
+        int length = message.getLength();
+        int flag = direction;
+        timestamps[index] = timestamp;
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            data[offset] = (byte) shortMessage.getStatus();
+            if (length > 1) {
+                data[offset + 1] = (byte) shortMessage.getData1();
+            }
+            if (length > 2) {
+                data[offset + 2] = (byte) shortMessage.getData2();
+            }
+        } else {
+            if (length > SLOT_SIZE) {
+                length = SLOT_SIZE;
+                flag |= FLAG_TRUNCATED;
+            }
+            System.arraycopy(message.getMessage(), 0, data, offset, length);
+        }
+        flags[index] = (byte) flag;
+        lengths[index] = length;
+        published.lazySet(index, sequence + 1);
+    }
+
+    /**
+     * Write recorded messages to the trace file in batches until the trace is
+     * closed.
+     */
+    private void write() {
+        try {
+            boolean running = true;
+            while (running) {
+                running = open;
+                if (!drain()) {
+                    flush();
+                    if (running) {
+                        LockSupport.parkNanos(this, FLUSH_INTERVAL);
+                    }
+                }
+            }
+            while (drain()) {
+                flush();
+            }
+            flush();
+        } catch (IOException exception) {
+            open = false;
+            LOGGER.log(Level.WARNING, "Failed to write MIDI trace", exception);
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Close the trace file.
+     */
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Failed to close MIDI trace", exception);
+        }
+    }
+
+    /**
+     * Move published messages from the ring buffer into the write buffer,
+     * writing the write buffer to the file whenever it fills.
+     *
+     * @return whether any messages were moved
+     * @throws IOException if the trace file cannot be written to
+     */
+    private boolean drain() throws IOException {
+        long sequence = tail.get();
+        long first = sequence;
+        int index = (int) sequence & mask;
+        while (published.get(index) == sequence + 1) {
+            if (writeBuffer.remaining() < MAXIMUM_RECORD_SIZE) {
+                flush();
+            }
+            long timestamp = timestamps[index];
+            putVarLong(timestamp - lastTimestamp);
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            writeBuffer.put(flags[index]);
+            putVarLong(lengths[index]);
+            writeBuffer.put(data, index * SLOT_SIZE, lengths[index]);
+            ++sequence;
+            tail.lazySet(sequence);
+            index = (int) sequence & mask;
+        }
+        return sequence != first;
+    }
+
+    /**
+     * Write the write buffer to the trace file.
+     *
+     * @throws IOException if the trace file cannot be written to
+     */
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Put a non-negative value into the write buffer as a variable length
+     * quantity of seven bits per byte, least significant first.
+     *
+     * @param value the value
+     */
+    private void putVarLong(final long value) {
+        long remaining = Math.max(value, 0L);
+        while (remaining >= 0x80L) {
+            writeBuffer.put((byte) (remaining & 0x7F | 0x80));
+            remaining >>>= 7;
+        }
+        writeBuffer.put((byte) remaining);
+    }
+}
@@ -0,0 +1,126 @@
+package net.chriswareham.midi;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * This class provides a reader that converts a binary trace file written by
+ * {@link MidiTrace} to text, with a line per message giving the seconds since
+ * the trace started, the direction of the message and its bytes in
+ * hexadecimal.
+ */
+public final class MidiTraceReader {
+    /**
+     * Main entry point for converting a trace file to text.
+     *
+     * @param args the path of the trace file, and optionally the path of the
+     *        text file to write, otherwise the text is written to standard output
+     * @throws IOException if the trace file cannot be read or the text written
+     */
+    public static void main(final String... args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: MidiTraceReader <trace file> [<text file>]");
+            System.exit(1);
+        }
+        if (args.length == 2) {
+            try (Writer writer = Files.newBufferedWriter(Path.of(args[1]), StandardCharsets.UTF_8)) {
+                convert(Path.of(args[0]), writer);
+            }
+        } else {
+            Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            convert(Path.of(args[0]), writer);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Convert a trace file to text.
+     *
+     * @param path the path of the trace file
+     * @param writer the writer to write the text to
+     * @throws IOException if the trace file cannot be read or the text written
+     */
+    public static void convert(final Path path, final Writer writer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MidiTrace.MAGIC) {
+                throw new IOException("Not a MIDI trace file: " + path);
+            }
+            int version = in.readUnsignedByte();
+            if (version != MidiTrace.VERSION) {
+                throw new IOException("Unsupported MIDI trace version " + version + ": " + path);
+            }
+            PrintWriter out = new PrintWriter(writer);
+            out.printf("# MIDI trace started %s%n", Instant.ofEpochMilli(in.readLong()));
+            long time = 0L;
+            byte[] data = new byte[MidiTrace.SLOT_SIZE];
+            while (true) {
+                long delta = readVarLong(in, true);
+                if (delta < 0L) {
+                    break;
+                }
+                time += delta;
+                int flags = in.readUnsignedByte();
+                int length = (int) readVarLong(in, false);
+                if (length > data.length) {
+                    throw new IOException("Invalid message length " + length + ": " + path);
+                }
+                in.readFully(data, 0, length);
+                out.printf("%14.6f %-3s %s%s%n",
+                    time / 1.0E9,
+                    (flags & MidiTrace.FLAG_INCOMING) != 0 ? "IN" : "OUT",
+                    MidiUtils.toHexString(data, length),
+                    (flags & MidiTrace.FLAG_TRUNCATED) != 0 ? " ..." : "");
+            }
+            out.flush();
+            if (out.checkError()) {
+                throw new IOException("Failed to write MIDI trace text");
+            }
+        }
+    }
+
+    /**
+     * Read a variable length quantity of seven bits per byte, least
+     * significant first.
+     *
+     * @param in the stream to read from
+     * @param endAllowed whether the end of the stream may be reached before
+     *        the first byte
+     * @return the value, or -1 if the end of the stream was reached before the
+     *         first byte and that is allowed
+     * @throws IOException if the stream cannot be read
+     */
+    private static long readVarLong(final InputStream in, final boolean endAllowed) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0 && endAllowed) {
+                    return -1L;
+                }
+                throw new EOFException("Truncated MIDI trace");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable length quantity in MIDI trace");
+    }
+
+    /**
+     * Private constructor to prevent instantiation of utility class.
+     */
+    private MidiTraceReader() {
+        super();
+    }
+}
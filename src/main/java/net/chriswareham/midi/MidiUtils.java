@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Sequencer;
@@ -23,6 +24,11 @@ public final class MidiUtils {
      */
     public static final byte SYSEX_TERMINATING_BYTE = (byte) 0xF7;
 
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     /**
      * Get the devices that can be used to receive MIDI data.
      *
@@ -105,6 +111,39 @@ public final class MidiUtils {
             && device.getMaxReceivers() != 0;
     }
 
+    /**
+     * Format the bytes of a MIDI message as hexadecimal pairs separated by
+     * spaces.
+     *
+     * @param message the MIDI message
+     * @return the formatted bytes
+     */
+    public static String toHexString(final MidiMessage message) {
+        return toHexString(message.getMessage(), message.getLength());
+    }
+
+    /**
+     * Format bytes as hexadecimal pairs separated by spaces.
+     *
+     * @param data the bytes
+     * @param length the number of bytes to format
+     * @return the formatted bytes
+     */
+    public static String toHexString(final byte[] data, final int length) {
+        if (length == 0) {
+            return "";
+        }
+        char[] chars = new char[length * 3 - 1];
+        for (int i = 0; i < length; ++i) {
+            if (i > 0) {
+                chars[i * 3 - 1] = ' ';
+            }
+            chars[i * 3] = HEX_DIGITS[(data[i] >> 4) & 0x0F];
+            chars[i * 3 + 1] = HEX_DIGITS[data[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
     /**
      * Private constructor to prevent instantiation of utility class.
      */
@@ -0,0 +1,1237 @@
+package net.chriswareham.midi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+/**
+ * This class provides a dispatcher that sends MIDI messages to a device from a
+ * dedicated thread. A single receiver is obtained from the device when the
+ * dispatcher is created and is held until the dispatcher is closed, so callers
+ * such as the event dispatch thread only ever enqueue messages.
+ *
+ * <p>Control changes sent with {@link #sendControlChange(int, int, int)} are
+ * held in a slot per channel and control change number, where a newer value
+ * replaces one that has not yet been sent. Output is paced to the byte rate of
+ * the MIDI link, so a fast stream of changes to one control never builds a
+ * backlog and only the latest value is sent once the link is free.
+ *
+ * <p>Bursts of control changes for the same channel can be sent using
+ * running status. It is off by default, as some devices and MIDI stacks,
+ * such as CoreMIDI, reject running status within a packet.
+ *
+ * <p>Messages sent with a timestamp are scheduled for delivery at that time,
+ * in microseconds on the timeline given by {@link #getMicrosecondPosition()}.
+ * That is the time of the device where it supports timestamps, and otherwise a
+ * high resolution clock. The sender thread parks until shortly before a
+ * scheduled message is due and then spins until it is, and records how late
+ * each scheduled message was actually sent.
+ *
+ * <p>When the queue is full because the device is not keeping up, the
+ * {@link BackpressurePolicy} decides whether the caller waits, the oldest
+ * message is dropped or a queued message for the same control is replaced.
+ * Counters of what was enqueued, sent, coalesced, dropped and failed are
+ * available from {@link #getStatistics()}. They count messages, so a burst
+ * of control changes encoded with running status counts as one message
+ * however many control changes it carries.
+ *
+ * <p>The dispatcher keeps a {@link ControllerState} shadow of the control
+ * change values the device holds, updated by every control change it
+ * accepts, so that callers can send only the values that differ from what
+ * the device already has. The shadow is invalidated whenever a message is
+ * dropped or fails to send, and by program changes and System Exclusive
+ * messages, which change values without control changes. Requests sent with
+ * {@link #sendRequest(MidiMessage)}, such as dump requests, only ask the
+ * device for data and leave the shadow as it is.
+ *
+ * <p>Control changes taken from slots are sent without allocating: a message
+ * is created once for each channel and control change number and then reused,
+ * so receivers must not hold on to the messages they are sent.
+ */
+public class OutputDispatcher implements Receiver {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(OutputDispatcher.class.getName());
+
+    /**
+     * The default capacity of the message queue.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The number of bytes per second a 31.25 kbaud MIDI link can carry, with
+     * ten bits on the wire per byte.
+     */
+    public static final int MIDI_BYTE_RATE = 3125;
+
+    /**
+     * The number of MIDI channels.
+     */
+    private static final int CHANNELS = 16;
+
+    /**
+     * The number of control change numbers per channel.
+     */
+    private static final int CONTROLLERS = 128;
+
+    /**
+     * The value of a control change slot that has nothing to send.
+     */
+    private static final int EMPTY_SLOT = -1;
+
+    /**
+     * The number of milliseconds to wait for the sender thread to finish.
+     */
+    private static final long JOIN_TIMEOUT = 1000L;
+
+    /**
+     * The number of nanoseconds before a scheduled message is due that the
+     * sender thread stops parking and spins.
+     */
+    private static final long SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(250L);
+
+    /**
+     * The number of nanoseconds a caller waits for space in the queue under
+     * the {@link BackpressurePolicy#BLOCK} policy before its message is
+     * dropped.
+     */
+    private static final long BLOCK_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(500L);
+
+    /**
+     * The device.
+     */
+    private final Device device;
+
+    /**
+     * Whether the device supports timestamps.
+     */
+    private final boolean deviceTime;
+
+    /**
+     * The time, from {@link System#nanoTime()}, that the timeline starts at if
+     * the device does not support timestamps.
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * The receiver of the device.
+     */
+    private final Receiver receiver;
+
+    /**
+     * The capacity of the message queue.
+     */
+    private final int capacity;
+
+    /**
+     * The queue of messages waiting to be sent.
+     */
+    private final Deque<MidiMessage> queue;
+
+    /**
+     * The number of messages that have been added to the queue.
+     */
+    private long queueAdded;
+
+    /**
+     * The number of messages that have been taken from the queue.
+     */
+    private long queueTaken;
+
+    /**
+     * The flushes waiting for queued messages to be sent, in the order they
+     * were requested.
+     */
+    private final Deque<PendingFlush> flushes = new ArrayDeque<>();
+
+    /**
+     * The messages scheduled to be sent, in the order they are due.
+     */
+    private final PriorityQueue<ScheduledMessage> scheduled = new PriorityQueue<>();
+
+    /**
+     * The number of messages that have been scheduled, used to send messages
+     * due at the same time in the order they were scheduled.
+     */
+    private long scheduledSequence;
+
+    /**
+     * The timestamp to send the message taken by the sender thread with.
+     */
+    private long sendTimestamp = -1L;
+
+    /**
+     * The time, from {@link System#nanoTime()}, the message taken by the
+     * sender thread was due, or zero if it was not scheduled.
+     */
+    private long sendDueTime;
+
+    /**
+     * The number of scheduled messages that have been sent.
+     */
+    private volatile long scheduledSent;
+
+    /**
+     * The total number of nanoseconds scheduled messages were sent late by.
+     */
+    private volatile long totalLateness;
+
+    /**
+     * The maximum number of nanoseconds a scheduled message was sent late by.
+     */
+    private volatile long maximumLateness;
+
+    /**
+     * The value waiting to be sent for each channel and control change
+     * number, or {@link #EMPTY_SLOT} if there is none.
+     */
+    private final int[] slotValues = new int[CHANNELS * CONTROLLERS];
+
+    /**
+     * The slots waiting to be sent, in the order they were first updated.
+     */
+    private final int[] slotOrder = new int[CHANNELS * CONTROLLERS];
+
+    /**
+     * Whether each slot is in the order of slots waiting to be sent.
+     */
+    private final boolean[] slotQueued = new boolean[CHANNELS * CONTROLLERS];
+
+    /**
+     * The index of the first slot waiting to be sent.
+     */
+    private int slotHead;
+
+    /**
+     * The number of entries in the order of slots waiting to be sent, which
+     * includes slots emptied by a burst of control changes until they are
+     * reached.
+     */
+    private int slotCount;
+
+    /**
+     * The number of slots that hold a value waiting to be sent.
+     */
+    private int slotsHeld;
+
+    /**
+     * The number of messages that have been accepted to be sent.
+     */
+    private long enqueued;
+
+    /**
+     * The number of messages that were replaced by a newer message before
+     * they could be sent.
+     */
+    private long coalesced;
+
+    /**
+     * The number of messages that were dropped because the dispatcher was
+     * full.
+     */
+    private long dropped;
+
+    /**
+     * The maximum number of messages that have been waiting to be sent.
+     */
+    private long maximumDepth;
+
+    /**
+     * The number of messages that have been sent.
+     */
+    private volatile long sent;
+
+    /**
+     * The number of messages that the receiver failed to send.
+     */
+    private volatile long failed;
+
+    /**
+     * The most recent failure to send a message, or null if there has been
+     * none.
+     */
+    private volatile Exception lastFailure;
+
+    /**
+     * The policy for messages sent when the queue is full.
+     */
+    private volatile BackpressurePolicy backpressurePolicy = BackpressurePolicy.COALESCE;
+
+    /**
+     * The lock guarding the queue, the control change slots and the
+     * counters of messages waiting to be sent.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The condition signalled when a message is taken from the queue.
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * The encoder for control changes taken from slots.
+     */
+    private final RunningStatusEncoder encoder = new RunningStatusEncoder();
+
+    /**
+     * The buffer to encode control changes taken from slots into.
+     */
+    private final byte[] encoderBuffer = new byte[encoder.getRefreshInterval() * RunningStatusEncoder.MAXIMUM_LENGTH];
+
+    /**
+     * The reusable message for control changes taken from slots and encoded
+     * with running status.
+     */
+    private final RawMidiMessage encoderMessage = new RawMidiMessage(encoderBuffer.length);
+
+    /**
+     * The reusable message for each channel and control change number,
+     * created when a control change is first taken from its slot.
+     */
+    private final ShortMessage[] slotMessages = new ShortMessage[CHANNELS * CONTROLLERS];
+
+    /**
+     * Whether control changes are sent using running status.
+     */
+    private volatile boolean runningStatus;
+
+    /**
+     * The number of nanoseconds it takes the link to carry a byte, or zero if
+     * output is not paced.
+     */
+    private volatile long nanosPerByte;
+
+    /**
+     * The time, from {@link System#nanoTime()}, at which the link will have
+     * carried everything sent so far.
+     */
+    private long linkFreeTime;
+
+    /**
+     * The shadow of the control change values the device holds.
+     */
+    private final ControllerState controllerState = new ControllerState();
+
+    /**
+     * The trace to record sent messages in, or null if they are not traced.
+     */
+    private volatile MidiTrace trace;
+
+    /**
+     * The thread that sends messages to the receiver.
+     */
+    private final Thread thread;
+
+    /**
+     * Whether the dispatcher is open.
+     */
+    private volatile boolean open;
+
+    /**
+     * Construct an instance of a dispatcher that sends MIDI messages to a
+     * device.
+     *
+     * @param device the device to send messages to
+     * @throws MidiUnavailableException if a receiver cannot be obtained
+     */
+    public OutputDispatcher(final Device device) throws MidiUnavailableException {
+        this(device, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an instance of a dispatcher that sends MIDI messages to a
+     * device.
+     *
+     * @param device the device to send messages to
+     * @param capacity the capacity of the message queue
+     * @throws MidiUnavailableException if a receiver cannot be obtained
+     */
+    public OutputDispatcher(final Device device, final int capacity) throws MidiUnavailableException {
+        this.device = device;
+        receiver = device.getReceiver();
+        if (receiver == null) {
+            throw new MidiUnavailableException("No receiver for device " + device);
+        }
+        deviceTime = device.getMicrosecondPosition() >= 0L;
+        this.capacity = capacity;
+        queue = new ArrayDeque<>(capacity);
+        Arrays.fill(slotValues, EMPTY_SLOT);
+        setByteRate(MIDI_BYTE_RATE);
+        thread = new Thread(this::dispatch, "MIDI output: " + device);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        open = true;
+        thread.start();
+    }
+
+    /**
+     * Get whether the dispatcher is open.
+     *
+     * @return whether the dispatcher is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Get the current time of the timeline that scheduled messages are
+     * timestamped against.
+     *
+     * @return the current time in microseconds
+     */
+    public long getMicrosecondPosition() {
+        if (deviceTime) {
+            long position = device.getMicrosecondPosition();
+            if (position >= 0L) {
+                return position;
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - origin);
+    }
+
+    /**
+     * Get whether the timeline is the time of the device, rather than a high
+     * resolution clock.
+     *
+     * @return whether the timeline is the time of the device
+     */
+    public boolean isDeviceTime() {
+        return deviceTime;
+    }
+
+    /**
+     * Get the policy for messages sent when the queue is full.
+     *
+     * @return the policy
+     */
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    /**
+     * Set the policy for messages sent when the queue is full.
+     * {@link BackpressurePolicy#BLOCK} must not be used by callers that send
+     * from the event dispatch thread, which it can stall.
+     *
+     * @param backpressurePolicy the policy
+     */
+    public void setBackpressurePolicy(final BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    /**
+     * Get a snapshot of the counters of the dispatcher.
+     *
+     * @return the snapshot
+     */
+    public OutputStatistics getStatistics() {
+        long scheduledCount = scheduledSent;
+        long meanLateness = scheduledCount > 0L ? TimeUnit.NANOSECONDS.toMicros(totalLateness / scheduledCount) : 0L;
+        lock.lock();
+        try {
+            return new OutputStatistics(enqueued, sent, coalesced, dropped, failed, getDepth(), maximumDepth,
+                scheduledCount, meanLateness, TimeUnit.NANOSECONDS.toMicros(maximumLateness));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the shadow of the control change values the device holds, as far
+     * as they are known from the messages the dispatcher has accepted.
+     *
+     * @return the shadow of the control change values
+     */
+    public ControllerState getControllerState() {
+        return controllerState;
+    }
+
+    /**
+     * Get the most recent failure to send a message.
+     *
+     * @return the most recent failure, or null if there has been none
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Set the number of bytes per second to pace output to.
+     *
+     * @param byteRate the number of bytes per second, or zero to send as fast
+     *        as the receiver accepts messages
+     */
+    public void setByteRate(final int byteRate) {
+        nanosPerByte = byteRate > 0 ? TimeUnit.SECONDS.toNanos(1) / byteRate : 0L;
+    }
+
+    /**
+     * Get whether bursts of control changes are sent using running status.
+     *
+     * @return whether bursts of control changes are sent using running status
+     */
+    public boolean isRunningStatus() {
+        return runningStatus;
+    }
+
+    /**
+     * Set whether bursts of control changes are sent using running status.
+     * This should be disabled for devices that do not handle it correctly.
+     *
+     * @param runningStatus whether bursts of control changes are sent using running status
+     */
+    public void setRunningStatus(final boolean runningStatus) {
+        this.runningStatus = runningStatus;
+    }
+
+    /**
+     * Set the trace to record sent messages in.
+     *
+     * @param trace the trace, or null to stop recording sent messages
+     */
+    public void setTrace(final MidiTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Enqueue a control change to be sent to the device. If a value for the
+     * same channel and control change number is still waiting to be sent, it
+     * is replaced by this one. This method never blocks.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param ccNumber the number of the control change, 0-127
+     * @param ccValue the value of the control change, 0-127
+     */
+    public void sendControlChange(final int channel, final int ccNumber, final int ccValue) {
+        if (!open) {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+        int slot = (channel & 0x0F) * CONTROLLERS + (ccNumber & 0x7F);
+        lock.lock();
+        try {
+            if (!slotQueued[slot]) {
+                slotQueued[slot] = true;
+                slotOrder[(slotHead + slotCount) % slotOrder.length] = slot;
+                ++slotCount;
+            }
+            if (slotValues[slot] != EMPTY_SLOT) {
+                ++coalesced;
+            } else {
+                ++slotsHeld;
+            }
+            slotValues[slot] = ccValue & 0x7F;
+            controllerState.set(channel, ccNumber, ccValue);
+            ++enqueued;
+            updateMaximumDepth();
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Enqueue a burst of control changes for a channel to be sent to the
+     * device in order. Values for the same control change numbers that are
+     * waiting to be sent are replaced by the burst. If the queue is full the
+     * backpressure policy is applied to each message of the burst.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param ccNumbers the numbers of the control changes
+     * @param ccValues the values of the control changes
+     * @param count the number of control changes
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    public void sendControlChanges(final int channel, final int[] ccNumbers, final int[] ccValues, final int count) throws InvalidMidiDataException {
+        if (!open) {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+        List<MidiMessage> messages = encodeControlChanges(channel & 0x0F, ccNumbers, ccValues, count);
+        lock.lock();
+        try {
+            for (int i = 0; i < count; ++i) {
+                int slot = (channel & 0x0F) * CONTROLLERS + (ccNumbers[i] & 0x7F);
+                if (slotValues[slot] != EMPTY_SLOT) {
+                    slotValues[slot] = EMPTY_SLOT;
+                    --slotsHeld;
+                    ++coalesced;
+                }
+                controllerState.set(channel, ccNumbers[i], ccValues[i]);
+            }
+            for (MidiMessage message : messages) {
+                enqueue(message);
+            }
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Enqueue a message to be sent to the device, either as soon as possible
+     * or at a time. The message must not be modified once it is enqueued.
+     * If the queue is full the backpressure policy is applied; scheduled
+     * messages are dropped if the schedule is full.
+     *
+     * @param message the message to send
+     * @param timestamp the time to send the message at in microseconds, on
+     *        the timeline given by {@link #getMicrosecondPosition()}, or -1 to
+     *        send it as soon as possible
+     */
+    @Override
+    public void send(final MidiMessage message, final long timestamp) {
+        if (!open) {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+        updateControllerState(message);
+        if (timestamp >= 0L) {
+            schedule(message, timestamp);
+            return;
+        }
+        enqueueNow(message);
+    }
+
+    /**
+     * Enqueue a request to be sent to the device as soon as possible, such
+     * as a request for a dump. A request asks the device for data rather than
+     * writing to it, so unlike {@link #send(MidiMessage, long)} it leaves the
+     * shadow of the control change values the device holds as it is. The
+     * message must not be modified once it is enqueued.
+     *
+     * @param message the request to send
+     */
+    public void sendRequest(final MidiMessage message) {
+        if (!open) {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+        enqueueNow(message);
+    }
+
+    /**
+     * Enqueue a message to be sent to the device as soon as possible and wake
+     * the sender thread.
+     *
+     * @param message the message to send
+     */
+    private void enqueueNow(final MidiMessage message) {
+        lock.lock();
+        try {
+            enqueue(message);
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Update the shadow of the control change values the device holds for a
+     * message about to be enqueued.
+     *
+     * @param message the message
+     */
+    private void updateControllerState(final MidiMessage message) {
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            if (shortMessage.getCommand() == ShortMessage.CONTROL_CHANGE) {
+                controllerState.set(shortMessage.getChannel(), shortMessage.getData1(), shortMessage.getData2());
+            } else if (shortMessage.getCommand() == ShortMessage.PROGRAM_CHANGE) {
+                controllerState.invalidate(shortMessage.getChannel());
+            }
+        } else if (message instanceof SysexMessage) {
+            controllerState.invalidate();
+        }
+    }
+
+    /**
+     * Schedule a message to be sent to the device at a time.
+     *
+     * @param message the message to send
+     * @param timestamp the time to send the message at in microseconds
+     */
+    private void schedule(final MidiMessage message, final long timestamp) {
+        long dueTime = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(timestamp - getMicrosecondPosition());
+        lock.lock();
+        try {
+            if (scheduled.size() < capacity) {
+                scheduled.add(new ScheduledMessage(message, deviceTime ? timestamp : -1L, dueTime, scheduledSequence++));
+                ++enqueued;
+                updateMaximumDepth();
+            } else {
+                ++dropped;
+                controllerState.invalidate();
+                LOGGER.fine("Output schedule full, message dropped");
+            }
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Add a message to the queue, applying the backpressure policy if it is
+     * full. Must be called with the lock held.
+     *
+     * @param message the message
+     */
+    private void enqueue(final MidiMessage message) {
+        if (queue.size() >= capacity && !makeSpace(message)) {
+            return;
+        }
+        queue.addLast(message);
+        ++queueAdded;
+        ++enqueued;
+        updateMaximumDepth();
+    }
+
+    /**
+     * Make space in the full queue for a message according to the
+     * backpressure policy. Under {@link BackpressurePolicy#BLOCK} a message
+     * enqueued by the sender thread itself, such as from a flush callback, is
+     * dropped at once, as only the sender thread can make space and it would
+     * always wait out the timeout. Must be called with the lock held.
+     *
+     * @param message the message
+     * @return whether there is space for the message, otherwise it has been
+     *         dropped
+     */
+    private boolean makeSpace(final MidiMessage message) {
+        BackpressurePolicy policy = backpressurePolicy;
+        if (policy == BackpressurePolicy.BLOCK) {
+            if (Thread.currentThread() != thread && awaitSpace()) {
+                return true;
+            }
+            ++dropped;
+            controllerState.invalidate();
+            LOGGER.fine("Output queue full, message dropped");
+            return false;
+        }
+        if (policy == BackpressurePolicy.COALESCE && removeCoalescable(message)) {
+            ++coalesced;
+            return true;
+        }
+        queue.removeFirst();
+        ++queueTaken;
+        ++dropped;
+        controllerState.invalidate();
+        LOGGER.fine("Output queue full, oldest message dropped");
+        return true;
+    }
+
+    /**
+     * Wait for space in the queue. Must be called with the lock held.
+     *
+     * @return whether there is space in the queue, otherwise the wait timed
+     *         out, was interrupted or the dispatcher was closed
+     */
+    private boolean awaitSpace() {
+        long remaining = BLOCK_TIMEOUT;
+        try {
+            while (open && queue.size() >= capacity && remaining > 0L) {
+                remaining = notFull.awaitNanos(remaining);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return open && queue.size() < capacity;
+    }
+
+    /**
+     * Remove the newest queued message that a message replaces, that is a
+     * short message with the same status and, for control changes and
+     * polyphonic key pressure, the same first data byte. Only messages that
+     * set a value are replaced: control changes, polyphonic key pressure,
+     * program changes, channel pressure and pitch bend. Notes are never
+     * replaced, as dropping a note on or note off for one note because of
+     * another would leave notes stuck. Must be called with the lock held.
+     *
+     * @param message the message
+     * @return whether a queued message was removed
+     */
+    private boolean removeCoalescable(final MidiMessage message) {
+        if (!(message instanceof ShortMessage)) {
+            return false;
+        }
+        ShortMessage shortMessage = (ShortMessage) message;
+        int command = shortMessage.getCommand();
+        boolean keyed = command == ShortMessage.CONTROL_CHANGE || command == ShortMessage.POLY_PRESSURE;
+        if (!keyed && command != ShortMessage.PROGRAM_CHANGE && command != ShortMessage.CHANNEL_PRESSURE && command != ShortMessage.PITCH_BEND) {
+            return false;
+        }
+        for (Iterator<MidiMessage> iterator = queue.descendingIterator(); iterator.hasNext();) {
+            MidiMessage queued = iterator.next();
+            if (queued instanceof ShortMessage
+                && ((ShortMessage) queued).getStatus() == shortMessage.getStatus()
+                && (!keyed || ((ShortMessage) queued).getData1() == shortMessage.getData1())) {
+                iterator.remove();
+                ++queueTaken;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of messages waiting to be sent. Must be called with the
+     * lock held.
+     *
+     * @return the number of messages waiting to be sent
+     */
+    private long getDepth() {
+        return queue.size() + slotsHeld + scheduled.size();
+    }
+
+    /**
+     * Update the maximum number of messages that have been waiting to be
+     * sent. Must be called with the lock held.
+     */
+    private void updateMaximumDepth() {
+        maximumDepth = Math.max(maximumDepth, getDepth());
+    }
+
+    /**
+     * Get a future that completes once every message enqueued so far has been
+     * sent and carried by the link, for example to time a burst of control
+     * changes. The future is cancelled if the dispatcher is closed first.
+     *
+     * @return the future
+     */
+    public CompletableFuture<Void> flush() {
+        if (!open) {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+        PendingFlush flush;
+        lock.lock();
+        try {
+            flush = new PendingFlush(queueAdded);
+            flushes.addLast(flush);
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+        return flush.future;
+    }
+
+    /**
+     * Close the dispatcher, discarding any messages that have not been sent,
+     * and release the receiver of the device.
+     */
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            thread.interrupt();
+            try {
+                thread.join(JOIN_TIMEOUT);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            receiver.close();
+            releaseWaiters();
+        }
+    }
+
+    /**
+     * Wake callers waiting for space in the queue and cancel the flushes that
+     * are still waiting for messages to be sent.
+     */
+    private void releaseWaiters() {
+        List<PendingFlush> cancelled;
+        lock.lock();
+        try {
+            notFull.signalAll();
+            cancelled = new ArrayList<>(flushes);
+            flushes.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (PendingFlush flush : cancelled) {
+            flush.future.completeExceptionally(new CancellationException("Dispatcher closed"));
+        }
+    }
+
+    /**
+     * Send messages to the receiver until the dispatcher is closed.
+     */
+    private void dispatch() {
+        while (open) {
+            try {
+                awaitLink();
+                MidiMessage message = take();
+                logMessage(message);
+                if (sendDueTime != 0L) {
+                    recordLateness(System.nanoTime() - sendDueTime);
+                }
+                receiver.send(message, sendTimestamp);
+                ++sent;
+                occupyLink(message.getLength());
+                MidiTrace currentTrace = trace;
+                if (currentTrace != null) {
+                    currentTrace.recordOutgoing(message);
+                }
+            } catch (InterruptedException exception) {
+                break;
+            } catch (InvalidMidiDataException | RuntimeException exception) {
+                ++failed;
+                controllerState.invalidate();
+                lastFailure = exception;
+                LOGGER.log(Level.WARNING, "Failed to send message", exception);
+            }
+        }
+    }
+
+    /**
+     * Wait until the link has carried everything sent so far. Messages are
+     * not taken while waiting, so control changes can still be replaced.
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void awaitLink() throws InterruptedException {
+        long delay = linkFreeTime - System.nanoTime();
+        while (delay > 0L) {
+            LockSupport.parkNanos(delay);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            delay = linkFreeTime - System.nanoTime();
+        }
+    }
+
+    /**
+     * Wait until a scheduled message is due, parking until shortly before and
+     * then spinning.
+     *
+     * @param dueTime the time, from {@link System#nanoTime()}, the message is due
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void awaitDueTime(final long dueTime) throws InterruptedException {
+        long delay = dueTime - System.nanoTime();
+        while (delay > SPIN_THRESHOLD) {
+            LockSupport.parkNanos(this, delay - SPIN_THRESHOLD);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            delay = dueTime - System.nanoTime();
+        }
+        while (System.nanoTime() < dueTime) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Record how late a scheduled message was sent.
+     *
+     * @param lateness the number of nanoseconds the message was sent late by
+     */
+    private void recordLateness(final long lateness) {
+        long late = Math.max(lateness, 0L);
+        totalLateness += late;
+        if (late > maximumLateness) {
+            maximumLateness = late;
+        }
+        ++scheduledSent;
+    }
+
+    /**
+     * Record that the link is busy carrying a message.
+     *
+     * @param length the length of the message in bytes
+     */
+    private void occupyLink(final int length) {
+        long now = System.nanoTime();
+        linkFreeTime = Math.max(now, linkFreeTime) + length * nanosPerByte;
+    }
+
+    /**
+     * Take the next message to send, waiting until there is one. Scheduled
+     * messages that are due are taken first, then queued messages and then
+     * control changes held in slots. The link is free when this is called, so
+     * flushes whose messages have all been taken are completed while waiting.
+     *
+     * @return the next message to send
+     * @throws InterruptedException if the thread is interrupted
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    private MidiMessage take() throws InterruptedException, InvalidMidiDataException {
+        while (true) {
+            PendingFlush flushed = null;
+            ScheduledMessage due = null;
+            long delay = -1L;
+            lock.lockInterruptibly();
+            try {
+                ScheduledMessage next = scheduled.peek();
+                if (!flushes.isEmpty() && flushes.peekFirst().position <= queueTaken) {
+                    flushed = flushes.removeFirst();
+                } else if (next != null && next.dueTime - System.nanoTime() <= SPIN_THRESHOLD) {
+                    due = scheduled.poll();
+                } else {
+                    sendTimestamp = -1L;
+                    sendDueTime = 0L;
+                    if (!queue.isEmpty()) {
+                        ++queueTaken;
+                        notFull.signal();
+                        return queue.removeFirst();
+                    }
+                    int slot = takeSlot();
+                    if (slot != EMPTY_SLOT) {
+                        return takeControlChanges(slot);
+                    }
+                    if (next != null) {
+                        delay = Math.max(next.dueTime - System.nanoTime() - SPIN_THRESHOLD, 1L);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (flushed != null) {
+                flushed.future.complete(null);
+                continue;
+            }
+            if (due != null) {
+                awaitDueTime(due.dueTime);
+                sendTimestamp = due.timestamp;
+                sendDueTime = due.dueTime;
+                return due.message;
+            }
+            if (delay > 0L) {
+                LockSupport.parkNanos(this, delay);
+            } else {
+                LockSupport.park(this);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Take the next slot that has a value waiting to be sent. Must be called
+     * with the lock held.
+     *
+     * @return the slot, or {@link #EMPTY_SLOT} if there is none
+     */
+    private int takeSlot() {
+        while (slotCount > 0) {
+            int slot = removeSlot();
+            if (slotValues[slot] != EMPTY_SLOT) {
+                return slot;
+            }
+        }
+        return EMPTY_SLOT;
+    }
+
+    /**
+     * Remove the first entry from the order of slots waiting to be sent. Must
+     * be called with the lock held.
+     *
+     * @return the slot
+     */
+    private int removeSlot() {
+        int slot = slotOrder[slotHead];
+        slotHead = (slotHead + 1) % slotOrder.length;
+        --slotCount;
+        slotQueued[slot] = false;
+        return slot;
+    }
+
+    /**
+     * Take the value of a slot and, if running status is enabled, the values
+     * of the slots that follow it for the same channel. Must be called with
+     * the lock held.
+     *
+     * @param first the first slot
+     * @return a message for the control changes
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    private MidiMessage takeControlChanges(final int first) throws InvalidMidiDataException {
+        int channel = first / CONTROLLERS;
+        int value = slotValues[first];
+        slotValues[first] = EMPTY_SLOT;
+        --slotsHeld;
+        if (!runningStatus || slotCount == 0) {
+            return getSlotMessage(first, value);
+        }
+        int status = ShortMessage.CONTROL_CHANGE | channel;
+        encoder.reset();
+        int length = encoder.encode(status, first % CONTROLLERS, value, encoderBuffer, 0);
+        int count = 1;
+        while (count < encoder.getRefreshInterval() && slotCount > 0) {
+            int slot = slotOrder[slotHead];
+            if (slotValues[slot] != EMPTY_SLOT && slot / CONTROLLERS != channel) {
+                break;
+            }
+            removeSlot();
+            if (slotValues[slot] != EMPTY_SLOT) {
+                length += encoder.encode(status, slot % CONTROLLERS, slotValues[slot], encoderBuffer, length);
+                slotValues[slot] = EMPTY_SLOT;
+                --slotsHeld;
+                ++count;
+            }
+        }
+        if (count == 1) {
+            return getSlotMessage(first, value);
+        }
+        encoderMessage.setMessage(encoderBuffer, length);
+        return encoderMessage;
+    }
+
+    /**
+     * Get the reusable message for a slot, set to a value.
+     *
+     * @param slot the slot
+     * @param value the value of the control change
+     * @return the message
+     * @throws InvalidMidiDataException if the control change cannot be created
+     */
+    private ShortMessage getSlotMessage(final int slot, final int value) throws InvalidMidiDataException {
+        ShortMessage message = slotMessages[slot];
+        if (message == null) {
+            message = new ShortMessage(ShortMessage.CONTROL_CHANGE, slot / CONTROLLERS, slot % CONTROLLERS, value);
+            slotMessages[slot] = message;
+        } else {
+            message.setMessage(ShortMessage.CONTROL_CHANGE, slot / CONTROLLERS, slot % CONTROLLERS, value);
+        }
+        return message;
+    }
+
+    /**
+     * Encode a burst of control changes for a channel as messages, using
+     * running status if it is enabled.
+     *
+     * @param channel the MIDI channel, 0-15
+     * @param ccNumbers the numbers of the control changes
+     * @param ccValues the values of the control changes
+     * @param count the number of control changes
+     * @return the messages
+     * @throws InvalidMidiDataException if a control change cannot be created
+     */
+    private List<MidiMessage> encodeControlChanges(final int channel, final int[] ccNumbers, final int[] ccValues, final int count) throws InvalidMidiDataException {
+        List<MidiMessage> messages = new ArrayList<>();
+        if (!runningStatus) {
+            for (int i = 0; i < count; ++i) {
+                messages.add(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, ccNumbers[i] & 0x7F, ccValues[i] & 0x7F));
+            }
+            return messages;
+        }
+        RunningStatusEncoder burstEncoder = new RunningStatusEncoder(encoder.getRefreshInterval());
+        byte[] buffer = new byte[burstEncoder.getRefreshInterval() * RunningStatusEncoder.MAXIMUM_LENGTH];
+        int status = ShortMessage.CONTROL_CHANGE | channel;
+        for (int i = 0; i < count; i += burstEncoder.getRefreshInterval()) {
+            burstEncoder.reset();
+            int length = 0;
+            for (int j = i; j < Math.min(count, i + burstEncoder.getRefreshInterval()); ++j) {
+                length += burstEncoder.encode(status, ccNumbers[j], ccValues[j], buffer, length);
+            }
+            messages.add(new RawMidiMessage(buffer, length));
+        }
+        return messages;
+    }
+
+    /**
+     * Log a MIDI message if tracing is enabled.
+     *
+     * @param message the MIDI message to log
+     */
+    private void logMessage(final MidiMessage message) {
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("Message : " + MidiUtils.toHexString(message));
+        }
+    }
+
+    /**
+     * This class describes a message scheduled to be sent at a time.
+     */
+    private static final class ScheduledMessage implements Comparable<ScheduledMessage> {
+        /**
+         * The message.
+         */
+        private final MidiMessage message;
+
+        /**
+         * The timestamp to send the message with.
+         */
+        private final long timestamp;
+
+        /**
+         * The time, from {@link System#nanoTime()}, the message is due.
+         */
+        private final long dueTime;
+
+        /**
+         * The order the message was scheduled in.
+         */
+        private final long sequence;
+
+        /**
+         * Construct an instance of a message scheduled to be sent at a time.
+         *
+         * @param message the message
+         * @param timestamp the timestamp to send the message with
+         * @param dueTime the time, from {@link System#nanoTime()}, the message is due
+         * @param sequence the order the message was scheduled in
+         */
+        ScheduledMessage(final MidiMessage message, final long timestamp, final long dueTime, final long sequence) {
+            this.message = message;
+            this.timestamp = timestamp;
+            this.dueTime = dueTime;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Compare the message to another by the time they are due, and then
+         * by the order they were scheduled in.
+         *
+         * @param that the other message
+         * @return the result of the comparison
+         */
+        @Override
+        public int compareTo(final ScheduledMessage that) {
+            int result = Long.compare(dueTime - that.dueTime, 0L);
+            return result != 0 ? result : Long.compare(sequence, that.sequence);
+        }
+    }
+
+    /**
+     * This class describes a flush waiting for queued messages to be sent.
+     */
+    private static final class PendingFlush {
+        /**
+         * The number of messages that must have been taken from the queue.
+         */
+        private final long position;
+
+        /**
+         * The future to complete.
+         */
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * Construct an instance of a flush waiting for queued messages to be
+         * sent.
+         *
+         * @param position the number of messages that must have been taken
+         *        from the queue
+         */
+        PendingFlush(final long position) {
+            this.position = position;
+        }
+    }
+}
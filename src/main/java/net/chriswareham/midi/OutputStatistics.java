@@ -0,0 +1,184 @@
+package net.chriswareham.midi;
+
+/**
+ * This class describes a snapshot of the counters of an
+ * {@link OutputDispatcher}. The counters count messages, so a burst of
+ * control changes encoded with running status counts as one message however
+ * many control changes it carries.
+ */
+public class OutputStatistics {
+    /**
+     * The number of messages that have been accepted to be sent.
+     */
+    private final long enqueued;
+
+    /**
+     * The number of messages that have been sent.
+     */
+    private final long sent;
+
+    /**
+     * The number of messages that were replaced by a newer message before
+     * they could be sent.
+     */
+    private final long coalesced;
+
+    /**
+     * The number of messages that were dropped because the dispatcher was
+     * full.
+     */
+    private final long dropped;
+
+    /**
+     * The number of messages that the receiver failed to send.
+     */
+    private final long failed;
+
+    /**
+     * The number of messages waiting to be sent.
+     */
+    private final long depth;
+
+    /**
+     * The maximum number of messages that have been waiting to be sent.
+     */
+    private final long maximumDepth;
+
+    /**
+     * The number of scheduled messages that have been sent.
+     */
+    private final long scheduledSent;
+
+    /**
+     * The mean number of microseconds scheduled messages were sent late by.
+     */
+    private final long meanLateness;
+
+    /**
+     * The maximum number of microseconds a scheduled message was sent late by.
+     */
+    private final long maximumLateness;
+
+    /**
+     * Construct an instance of a snapshot of the counters of a dispatcher.
+     *
+     * @param enqueued the number of messages that have been accepted to be sent
+     * @param sent the number of messages that have been sent
+     * @param coalesced the number of messages that were replaced by a newer message
+     * @param dropped the number of messages that were dropped
+     * @param failed the number of messages that the receiver failed to send
+     * @param depth the number of messages waiting to be sent
+     * @param maximumDepth the maximum number of messages that have been waiting to be sent
+     * @param scheduledSent the number of scheduled messages that have been sent
+     * @param meanLateness the mean number of microseconds scheduled messages were sent late by
+     * @param maximumLateness the maximum number of microseconds a scheduled message was sent late by
+     */
+    OutputStatistics(final long enqueued, final long sent, final long coalesced, final long dropped, final long failed,
+        final long depth, final long maximumDepth, final long scheduledSent, final long meanLateness, final long maximumLateness) {
+        this.enqueued = enqueued;
+        this.sent = sent;
+        this.coalesced = coalesced;
+        this.dropped = dropped;
+        this.failed = failed;
+        this.depth = depth;
+        this.maximumDepth = maximumDepth;
+        this.scheduledSent = scheduledSent;
+        this.meanLateness = meanLateness;
+        this.maximumLateness = maximumLateness;
+    }
+
+    /**
+     * Get the number of messages that have been accepted to be sent.
+     *
+     * @return the number of messages that have been accepted to be sent
+     */
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    /**
+     * Get the number of messages that have been sent. A burst of control
+     * changes encoded with running status counts as one message.
+     *
+     * @return the number of messages that have been sent
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Get the number of messages that were replaced by a newer message
+     * before they could be sent.
+     *
+     * @return the number of messages that were coalesced
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Get the number of messages that were dropped because the dispatcher was
+     * full.
+     *
+     * @return the number of messages that were dropped
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get the number of messages that the receiver failed to send.
+     *
+     * @return the number of messages that failed
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the number of messages waiting to be sent.
+     *
+     * @return the number of messages waiting to be sent
+     */
+    public long getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the maximum number of messages that have been waiting to be sent.
+     *
+     * @return the maximum number of messages that have been waiting to be sent
+     */
+    public long getMaximumDepth() {
+        return maximumDepth;
+    }
+
+    /**
+     * Get the number of scheduled messages that have been sent.
+     *
+     * @return the number of scheduled messages that have been sent
+     */
+    public long getScheduledSent() {
+        return scheduledSent;
+    }
+
+    /**
+     * Get the mean number of microseconds scheduled messages were sent after
+     * they were due.
+     *
+     * @return the mean lateness in microseconds
+     */
+    public long getMeanLateness() {
+        return meanLateness;
+    }
+
+    /**
+     * Get the maximum number of microseconds a scheduled message was sent
+     * after it was due.
+     *
+     * @return the maximum lateness in microseconds
+     */
+    public long getMaximumLateness() {
+        return maximumLateness;
+    }
+}
@@ -0,0 +1,58 @@
+package net.chriswareham.midi;
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+
+/**
+ * This class describes a MIDI message that carries a raw stream of bytes, such
+ * as several channel messages encoded with running status. Output devices send
+ * messages that are neither short nor System Exclusive messages as they are.
+ */
+public class RawMidiMessage extends MidiMessage {
+    /**
+     * Construct an instance of an empty MIDI message that can be reused for
+     * raw streams of bytes up to a capacity.
+     *
+     * @param capacity the maximum number of bytes of the message
+     */
+    public RawMidiMessage(final int capacity) {
+        super(new byte[capacity]);
+        length = 0;
+    }
+
+    /**
+     * Construct an instance of a MIDI message that carries a raw stream of
+     * bytes.
+     *
+     * @param data the bytes of the message
+     * @param length the number of bytes of the message
+     */
+    public RawMidiMessage(final byte[] data, final int length) {
+        super(Arrays.copyOf(data, length));
+    }
+
+    /**
+     * Set the bytes of the message. The bytes are copied into the existing
+     * buffer of the message if it is large enough.
+     *
+     * @param data the bytes of the message
+     * @param length the number of bytes of the message
+     * @throws InvalidMidiDataException if the length is invalid
+     */
+    @Override
+    public void setMessage(final byte[] data, final int length) throws InvalidMidiDataException {
+        super.setMessage(data, length);
+    }
+
+    /**
+     * Create a copy of the message.
+     *
+     * @return a copy of the message
+     */
+    @Override
+    public Object clone() {
+        return new RawMidiMessage(data, length);
+    }
+}
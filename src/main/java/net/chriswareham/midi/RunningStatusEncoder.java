@@ -0,0 +1,131 @@
+package net.chriswareham.midi;
+
+/**
+ * This class provides an encoder that writes channel messages to a raw byte
+ * stream using MIDI running status, where the status byte is omitted when it
+ * is the same as that of the previous message. The status byte is written
+ * again after a number of messages so that a receiver that loses a byte
+ * recovers quickly. Callers that must not use running status, for devices
+ * or MIDI stacks that do not handle it, send messages without the encoder.
+ */
+public class RunningStatusEncoder {
+    /**
+     * The default number of messages after which the status byte is written
+     * again.
+     */
+    public static final int DEFAULT_REFRESH_INTERVAL = 8;
+
+    /**
+     * The maximum number of bytes a message is encoded to.
+     */
+    public static final int MAXIMUM_LENGTH = 3;
+
+    /**
+     * Get the number of data bytes that follow a status byte.
+     *
+     * @param status the status byte
+     * @return the number of data bytes
+     */
+    private static int getDataLength(final int status) {
+        switch (status & 0xF0) {
+        case 0xC0:
+        case 0xD0:
+            return 1;
+        case 0xF0:
+            return status == 0xF1 || status == 0xF3 ? 1 : status == 0xF2 ? 2 : 0;
+        default:
+            return 2;
+        }
+    }
+
+    /**
+     * The number of messages after which the status byte is written again.
+     */
+    private final int refreshInterval;
+
+    /**
+     * The current running status, or zero if there is none.
+     */
+    private int runningStatus;
+
+    /**
+     * The number of messages written since the status byte was last written.
+     */
+    private int messagesSinceStatus;
+
+    /**
+     * Construct an instance of a running status encoder.
+     */
+    public RunningStatusEncoder() {
+        this(DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Construct an instance of a running status encoder.
+     *
+     * @param refreshInterval the number of messages after which the status
+     *        byte is written again
+     */
+    public RunningStatusEncoder(final int refreshInterval) {
+        if (refreshInterval < 1) {
+            throw new IllegalArgumentException("Invalid refresh interval " + refreshInterval);
+        }
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Get the number of messages after which the status byte is written again.
+     *
+     * @return the number of messages after which the status byte is written again
+     */
+    public int getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Reset the encoder so that the next message is written with its status
+     * byte, for example at the start of a new stream.
+     */
+    public void reset() {
+        runningStatus = 0;
+        messagesSinceStatus = 0;
+    }
+
+    /**
+     * Encode a channel message. System messages are written in full and
+     * cancel running status, apart from real time messages which do not
+     * affect it.
+     *
+     * @param status the status byte of the message
+     * @param data1 the first data byte of the message
+     * @param data2 the second data byte of the message, ignored for messages
+     *        with one data byte
+     * @param buffer the buffer to write to
+     * @param offset the offset in the buffer to write at
+     * @return the number of bytes written
+     */
+    public int encode(final int status, final int data1, final int data2, final byte[] buffer, final int offset) {
+        int length = 0;
+        if (status >= 0xF8) {
+            buffer[offset] = (byte) status;
+            return 1;
+        }
+        if (status >= 0xF0) {
+            runningStatus = 0;
+            buffer[offset + length++] = (byte) status;
+        } else if (status != runningStatus || messagesSinceStatus >= refreshInterval) {
+            runningStatus = status;
+            messagesSinceStatus = 0;
+            buffer[offset + length++] = (byte) status;
+        }
+        ++messagesSinceStatus;
+        int dataLength = getDataLength(status);
+        if (dataLength > 0) {
+            buffer[offset + length++] = (byte) (data1 & 0x7F);
+        }
+        if (dataLength > 1) {
+            buffer[offset + length++] = (byte) (data2 & 0x7F);
+        }
+        return length;
+    }
+}
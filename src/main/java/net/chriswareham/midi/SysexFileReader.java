@@ -0,0 +1,212 @@
+package net.chriswareham.midi;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class provides a reader that scans System Exclusive files for frames
+ * running from 0xF0 to 0xF7. Files are memory mapped a window at a time, so
+ * only the frames themselves are copied onto the heap, into a buffer that is
+ * reused for every frame; files of any size and directories of any number of
+ * files are read in a single pass. Bytes outside a frame, frames cut short by
+ * another status byte and frames longer than the maximum frame length are
+ * skipped.
+ */
+public class SysexFileReader {
+    /**
+     * The default size of the window of a file that is mapped at a time.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The default maximum length of a frame.
+     */
+    public static final int DEFAULT_MAXIMUM_FRAME_LENGTH = 64 * 1024;
+
+    /**
+     * The extension of System Exclusive files.
+     */
+    private static final String EXTENSION = ".syx";
+
+    /**
+     * The size of the window of a file that is mapped at a time.
+     */
+    private final int windowSize;
+
+    /**
+     * The buffer frames are copied into.
+     */
+    private final byte[] frame;
+
+    /**
+     * The number of frames found.
+     */
+    private long frames;
+
+    /**
+     * The number of bytes skipped.
+     */
+    private long skipped;
+
+    /**
+     * Whether the listener has asked for the read to stop.
+     */
+    private boolean stopped;
+
+    /**
+     * Construct an instance of a reader of System Exclusive files.
+     */
+    public SysexFileReader() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MAXIMUM_FRAME_LENGTH);
+    }
+
+    /**
+     * Construct an instance of a reader of System Exclusive files.
+     *
+     * @param windowSize the size of the window of a file that is mapped at a
+     *        time, which must be at least the maximum frame length
+     * @param maximumFrameLength the maximum length of a frame
+     */
+    public SysexFileReader(final int windowSize, final int maximumFrameLength) {
+        if (maximumFrameLength < 2 || windowSize < maximumFrameLength) {
+            throw new IllegalArgumentException("Invalid window size " + windowSize + " or maximum frame length " + maximumFrameLength);
+        }
+        this.windowSize = windowSize;
+        frame = new byte[maximumFrameLength];
+    }
+
+    /**
+     * Get the number of frames found.
+     *
+     * @return the number of frames found
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Get the number of bytes skipped because they were not part of a
+     * complete frame of at most the maximum length.
+     *
+     * @return the number of bytes skipped
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Stop the read in progress once the listener returns from the frame it
+     * is being notified of. Must only be called by the listener.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Read the frames in a System Exclusive file, or in every System
+     * Exclusive file under a directory in the order of their paths, until
+     * the listener stops the read.
+     *
+     * @param path the file or directory
+     * @param listener the listener to notify of each frame
+     * @return the number of frames found
+     * @throws IOException if a file cannot be read
+     */
+    public long read(final Path path, final SysexFrameListener listener) throws IOException {
+        long start = frames;
+        stopped = false;
+        if (Files.isDirectory(path)) {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(path)) {
+                files = paths
+                    .filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(EXTENSION) && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+            for (int i = 0; i < files.size() && !stopped; ++i) {
+                readFile(files.get(i), listener);
+            }
+        } else {
+            readFile(path, listener);
+        }
+        return frames - start;
+    }
+
+    /**
+     * Read the frames in a file a window at a time. A window that ends part
+     * way through a frame is followed by a window that starts with the frame.
+     *
+     * @param file the file
+     * @param listener the listener to notify of each frame
+     * @throws IOException if the file cannot be read
+     */
+    private void readFile(final Path file, final SysexFrameListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0L;
+            while (position < size && !stopped) {
+                int length = (int) Math.min(windowSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += scan(window, length, position + length == size, listener);
+            }
+        }
+    }
+
+    /**
+     * Scan a window of a file for frames.
+     *
+     * @param window the window
+     * @param length the length of the window
+     * @param last whether the window is the last of the file
+     * @param listener the listener to notify of each frame
+     * @return the number of bytes of the window consumed, which is less than
+     *         its length only if a frame continues past its end
+     */
+    private int scan(final MappedByteBuffer window, final int length, final boolean last, final SysexFrameListener listener) {
+        int start = 0;
+        while (start < length) {
+            if (window.get(start) != MidiUtils.SYSEX_INITIAL_BYTE) {
+                ++skipped;
+                ++start;
+                continue;
+            }
+            int end = start + 1;
+            while (end < length && window.get(end) >= 0) {
+                ++end;
+            }
+            if (end == length) {
+                if (!last && start > 0) {
+                    return start;
+                }
+                skipped += length - start;
+                return length;
+            }
+            if (window.get(end) != MidiUtils.SYSEX_TERMINATING_BYTE) {
+                skipped += end - start;
+                start = end;
+                continue;
+            }
+            int frameLength = end + 1 - start;
+            if (frameLength <= frame.length) {
+                window.get(start, frame, 0, frameLength);
+                ++frames;
+                listener.frame(frame, frameLength);
+                if (stopped) {
+                    return length;
+                }
+            } else {
+                skipped += frameLength;
+            }
+            start = end + 1;
+        }
+        return length;
+    }
+}
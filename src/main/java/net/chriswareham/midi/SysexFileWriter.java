@@ -0,0 +1,60 @@
+package net.chriswareham.midi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class provides a writer of System Exclusive files. Frames are written
+ * with gathering writes, so frames held in separate buffers reach the file in
+ * one system call. Frames in direct buffers are written where they are,
+ * while the JDK copies frames in heap buffers into a temporary direct buffer
+ * first.
+ */
+public class SysexFileWriter implements AutoCloseable {
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Construct an instance of a writer of a System Exclusive file, replacing
+     * the file if it exists.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be created
+     */
+    public SysexFileWriter(final Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Write frames to the file. The remaining bytes of each buffer are
+     * written, in order.
+     *
+     * @param frames the buffers holding the frames
+     * @param count the number of buffers to write
+     * @throws IOException if the frames cannot be written
+     */
+    public void write(final ByteBuffer[] frames, final int count) throws IOException {
+        int first = 0;
+        while (first < count) {
+            channel.write(frames, first, count - first);
+            while (first < count && !frames[first].hasRemaining()) {
+                ++first;
+            }
+        }
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,17 @@
+package net.chriswareham.midi;
+
+/**
+ * This interface is implemented by classes that want to be notified of the
+ * System Exclusive frames found in a file.
+ */
+public interface SysexFrameListener {
+    /**
+     * Notify the listener that a System Exclusive frame has been found. The
+     * buffer is reused for the next frame, so the listener must copy any
+     * bytes it needs to keep.
+     *
+     * @param data the buffer holding the frame, from 0xF0 to 0xF7 inclusive
+     * @param length the length of the frame
+     */
+    void frame(byte[] data, int length);
+}
@@ -0,0 +1,384 @@
+package net.chriswareham.midi;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Transmitter;
+
+/**
+ * This class provides an engine that sends System Exclusive requests to a
+ * device and matches the System Exclusive responses the device transmits to
+ * the outstanding requests. A response matches a request if it starts with
+ * the header the request expects and has the expected key, such as a patch
+ * number, at the expected offset. Each request completes a future, so
+ * callers never block while a response is in flight; a request that has no
+ * response within its timeout is sent again, up to its number of retries,
+ * before its future fails with a {@link TimeoutException}.
+ */
+public class SysexRequestEngine implements Receiver {
+    /**
+     * The default time to wait for a response.
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(1L);
+
+    /**
+     * The default number of times to send a request again.
+     */
+    public static final int DEFAULT_RETRIES = 2;
+
+    /**
+     * The dispatcher that sends requests to the output device.
+     */
+    private final OutputDispatcher dispatcher;
+
+    /**
+     * The transmitter of the input device that responses are received from.
+     */
+    private final Transmitter transmitter;
+
+    /**
+     * The executor that times out requests.
+     */
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "SysEx request timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The requests waiting for a response, oldest first. Guarded by the
+     * engine.
+     */
+    private final List<PendingRequest> pending = new ArrayList<>();
+
+    /**
+     * The time to wait for a response to requests that do not give one.
+     */
+    private volatile Duration timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * The number of times to send requests again that do not give one.
+     */
+    private volatile int retries = DEFAULT_RETRIES;
+
+    /**
+     * Whether the engine is open.
+     */
+    private volatile boolean open = true;
+
+    /**
+     * Construct an instance of an engine that sends System Exclusive requests
+     * and matches their responses.
+     *
+     * @param inputDevice the device that transmits responses
+     * @param dispatcher the dispatcher that sends requests
+     * @throws MidiUnavailableException if a transmitter cannot be obtained
+     */
+    public SysexRequestEngine(final Device inputDevice, final OutputDispatcher dispatcher) throws MidiUnavailableException {
+        this.dispatcher = dispatcher;
+        transmitter = inputDevice.getTransmitter();
+        if (transmitter == null) {
+            throw new MidiUnavailableException("No transmitter for device " + inputDevice);
+        }
+        timer.setRemoveOnCancelPolicy(true);
+        transmitter.setReceiver(this);
+    }
+
+    /**
+     * Get the default time to wait for a response.
+     *
+     * @return the default time to wait for a response
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the default time to wait for a response.
+     *
+     * @param timeout the default time to wait for a response
+     */
+    public void setTimeout(final Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Get the default number of times to send a request again.
+     *
+     * @return the default number of times to send a request again
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Set the default number of times to send a request again.
+     *
+     * @param retries the default number of times to send a request again
+     */
+    public void setRetries(final int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Get the number of requests waiting for a response.
+     *
+     * @return the number of requests waiting for a response
+     */
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Send a request with the default timeout and retries.
+     *
+     * @param request the request
+     * @param header the bytes a response starts with, including the System
+     *        Exclusive status byte
+     * @param keyOffset the offset of the key in a response
+     * @param key the key
+     * @return a future that completes with the response
+     */
+    public CompletableFuture<SysexMessage> request(final MidiMessage request, final byte[] header, final int keyOffset, final int key) {
+        return request(request, header, keyOffset, key, timeout, retries);
+    }
+
+    /**
+     * Send a request.
+     *
+     * @param request the request
+     * @param header the bytes a response starts with, including the System
+     *        Exclusive status byte
+     * @param keyOffset the offset of the key in a response
+     * @param key the key
+     * @param requestTimeout the time to wait for a response
+     * @param requestRetries the number of times to send the request again
+     * @return a future that completes with the response, or fails with a
+     *         {@link TimeoutException} if there is none
+     */
+    public CompletableFuture<SysexMessage> request(final MidiMessage request, final byte[] header, final int keyOffset, final int key, final Duration requestTimeout, final int requestRetries) {
+        if (!open) {
+            throw new IllegalStateException("Request engine is closed");
+        }
+        PendingRequest pendingRequest = new PendingRequest(request, header, keyOffset, key, requestTimeout.toNanos(), requestRetries);
+        synchronized (this) {
+            pending.add(pendingRequest);
+        }
+        attempt(pendingRequest);
+        return pendingRequest.future;
+    }
+
+    /**
+     * Send a request and start timing it out.
+     *
+     * @param request the request
+     */
+    private void attempt(final PendingRequest request) {
+        try {
+            synchronized (this) {
+                if (!pending.contains(request)) {
+                    return;
+                }
+                request.timeoutFuture = timer.schedule(() -> timedOut(request), request.timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            dispatcher.sendRequest(request.message);
+        } catch (RuntimeException exception) {
+            if (remove(request)) {
+                request.future.completeExceptionally(exception);
+            }
+        }
+    }
+
+    /**
+     * Handle a request that has had no response within its timeout, by
+     * sending it again or failing it if it has no retries left.
+     *
+     * @param request the request
+     */
+    private void timedOut(final PendingRequest request) {
+        boolean retry;
+        synchronized (this) {
+            if (!pending.contains(request)) {
+                return;
+            }
+            retry = request.attempts <= request.retries;
+            if (retry) {
+                ++request.attempts;
+            } else {
+                pending.remove(request);
+            }
+        }
+        if (retry) {
+            attempt(request);
+        } else {
+            request.future.completeExceptionally(new TimeoutException("No response to SysEx request after " + request.attempts + " attempts"));
+        }
+    }
+
+    /**
+     * Remove a request that is waiting for a response and stop timing it out.
+     *
+     * @param request the request
+     * @return whether the request was waiting for a response
+     */
+    private synchronized boolean remove(final PendingRequest request) {
+        if (request.timeoutFuture != null) {
+            request.timeoutFuture.cancel(false);
+        }
+        return pending.remove(request);
+    }
+
+    /**
+     * Match a message received from the device to the oldest request it is a
+     * response to, and complete that request. Messages that are not System
+     * Exclusive or do not match a request are ignored.
+     *
+     * @param message the message
+     * @param timestamp the timestamp of the message, ignored
+     */
+    @Override
+    public void send(final MidiMessage message, final long timestamp) {
+        if (!(message instanceof SysexMessage)) {
+            return;
+        }
+        byte[] data = message.getMessage();
+        PendingRequest matched = null;
+        synchronized (this) {
+            for (Iterator<PendingRequest> i = pending.iterator(); i.hasNext();) {
+                PendingRequest request = i.next();
+                if (request.matches(data)) {
+                    i.remove();
+                    if (request.timeoutFuture != null) {
+                        request.timeoutFuture.cancel(false);
+                    }
+                    matched = request;
+                    break;
+                }
+            }
+        }
+        if (matched != null) {
+            matched.future.complete((SysexMessage) message);
+        }
+    }
+
+    /**
+     * Close the engine, detaching it from the input device and cancelling
+     * the requests that are waiting for a response.
+     */
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            transmitter.close();
+            timer.shutdownNow();
+            List<PendingRequest> cancelled;
+            synchronized (this) {
+                cancelled = new ArrayList<>(pending);
+                pending.clear();
+            }
+            for (PendingRequest request : cancelled) {
+                request.future.completeExceptionally(new CancellationException("Request engine closed"));
+            }
+        }
+    }
+
+    /**
+     * This class describes a request waiting for a response.
+     */
+    private static final class PendingRequest {
+        /**
+         * The request.
+         */
+        private final MidiMessage message;
+
+        /**
+         * The bytes a response starts with.
+         */
+        private final byte[] header;
+
+        /**
+         * The offset of the key in a response.
+         */
+        private final int keyOffset;
+
+        /**
+         * The key.
+         */
+        private final int key;
+
+        /**
+         * The time to wait for a response in nanoseconds.
+         */
+        private final long timeoutNanos;
+
+        /**
+         * The number of times to send the request again.
+         */
+        private final int retries;
+
+        /**
+         * The future that completes with the response.
+         */
+        private final CompletableFuture<SysexMessage> future = new CompletableFuture<>();
+
+        /**
+         * The number of times the request has been sent. Guarded by the
+         * engine.
+         */
+        private int attempts = 1;
+
+        /**
+         * The timeout of the current attempt. Guarded by the engine.
+         */
+        private ScheduledFuture<?> timeoutFuture;
+
+        /**
+         * Construct an instance of a request waiting for a response.
+         *
+         * @param message the request
+         * @param header the bytes a response starts with
+         * @param keyOffset the offset of the key in a response
+         * @param key the key
+         * @param timeoutNanos the time to wait for a response in nanoseconds
+         * @param retries the number of times to send the request again
+         */
+        PendingRequest(final MidiMessage message, final byte[] header, final int keyOffset, final int key, final long timeoutNanos, final int retries) {
+            this.message = message;
+            this.header = header;
+            this.keyOffset = keyOffset;
+            this.key = key;
+            this.timeoutNanos = timeoutNanos;
+            this.retries = retries;
+        }
+
+        /**
+         * Get whether a message is a response to the request.
+         *
+         * @param data the bytes of the message
+         * @return whether the message is a response to the request
+         */
+        boolean matches(final byte[] data) {
+            if (data.length <= keyOffset || data.length < header.length || (data[keyOffset] & 0xFF) != key) {
+                return false;
+            }
+            for (int i = 0; i < header.length; ++i) {
+                if (data[i] != header[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
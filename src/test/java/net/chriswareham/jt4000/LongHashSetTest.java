@@ -0,0 +1,92 @@
+package net.chriswareham.jt4000;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the set of long values against a hash set of boxed
+ * longs.
+ */
+class LongHashSetTest {
+    /**
+     * The number of values added.
+     */
+    private static final int VALUES = 100000;
+
+    /**
+     * Test that the set holds the same values as a hash set as it grows,
+     * with values drawn from a small range so that many are added twice.
+     */
+    @Test
+    void addAndContains() {
+        LongHashSet set = new LongHashSet(16);
+        Set<Long> expected = new HashSet<>();
+        SplittableRandom random = new SplittableRandom(1L);
+        for (int i = 0; i < VALUES; ++i) {
+            long value = random.nextLong(-VALUES, VALUES);
+            assertEquals(expected.add(value), set.add(value), "value " + value);
+        }
+        assertEquals(expected.size(), set.size());
+        for (long value = -VALUES; value < VALUES; ++value) {
+            assertEquals(expected.contains(value), set.contains(value), "value " + value);
+        }
+    }
+
+    /**
+     * Test that values that share the low or high bits, which crowd the
+     * slots of a poorly spread table, are all held.
+     */
+    @Test
+    void clusteredValues() {
+        LongHashSet set = new LongHashSet();
+        for (int i = 1; i <= VALUES; ++i) {
+            assertTrue(set.add((long) i << 32));
+            assertTrue(set.add(i * 1024L));
+        }
+        assertEquals(2 * VALUES, set.size());
+        for (int i = 1; i <= VALUES; ++i) {
+            assertTrue(set.contains((long) i << 32));
+            assertTrue(set.contains(i * 1024L));
+            assertFalse(set.contains(i * 1024L + 1L));
+        }
+    }
+
+    /**
+     * Test that zero, which marks an empty slot, is held like any other
+     * value.
+     */
+    @Test
+    void zero() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertEquals(1, set.size());
+    }
+
+    /**
+     * Test that a cleared set holds no values and can be filled again.
+     */
+    @Test
+    void clear() {
+        LongHashSet set = new LongHashSet();
+        for (long value = 0L; value < VALUES; ++value) {
+            set.add(value);
+        }
+        set.clear();
+        assertEquals(0, set.size());
+        for (long value = 0L; value < VALUES; ++value) {
+            assertFalse(set.contains(value), "value " + value);
+        }
+        assertTrue(set.add(1L));
+        assertEquals(1, set.size());
+    }
+}
@@ -0,0 +1,167 @@
+package net.chriswareham.jt4000;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests the reading of patch dumps from System Exclusive files,
+ * and their deduplication by fingerprint.
+ */
+class PatchFileReaderTest {
+    /**
+     * The number of distinct patches written.
+     */
+    private static final int PATCHES = 200;
+
+    /**
+     * The directory the files are created in.
+     */
+    @TempDir
+    private Path directory;
+
+    /**
+     * Write every patch of a bank to a file, each on a MIDI channel and in a
+     * slot that depends on a number.
+     *
+     * @param path the path of the file
+     * @param bank the bank
+     * @param number the number the channels and slots depend on
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(final Path path, final PatchBank bank, final int number) throws IOException {
+        Patch patch = new Patch();
+        patch.initialise();
+        try (PatchFileWriter writer = new PatchFileWriter(path, 16)) {
+            for (int i = 0; i < bank.size(); ++i) {
+                bank.get(i, patch);
+                patch.setMidiChannel((i + number) % 16);
+                patch.setPatchNumber((i + number) % Patch.BANK_SIZE);
+                writer.write(patch);
+            }
+        }
+    }
+
+    /**
+     * Create a bank of random patches with distinct names.
+     *
+     * @param seed the seed of the random number generator
+     * @return the bank
+     */
+    private static PatchBank createBank(final long seed) {
+        PatchBank bank = new PatchGenerator(new PatchQuery()).generate(PATCHES, seed);
+        for (int i = 0; i < bank.size(); ++i) {
+            bank.setPatchName(i, "P" + seed + "-" + i);
+        }
+        return bank;
+    }
+
+    /**
+     * Test that patches written to a file are read back unchanged.
+     *
+     * @throws IOException if a file cannot be read or written
+     */
+    @Test
+    void roundTrip() throws IOException {
+        PatchBank bank = createBank(1L);
+        Path path = directory.resolve("patches.syx");
+        write(path, bank, 0);
+        List<Long> fingerprints = new ArrayList<>();
+        PatchFileReader reader = new PatchFileReader();
+        assertEquals(PATCHES, reader.read(path, patch -> fingerprints.add(patch.getFingerprint())));
+        assertEquals(0L, reader.getInvalid());
+        Patch patch = new Patch();
+        patch.initialise();
+        for (int i = 0; i < bank.size(); ++i) {
+            bank.get(i, patch);
+            assertEquals(patch.getFingerprint(), fingerprints.get(i), "patch " + i);
+        }
+    }
+
+    /**
+     * Test that reading the first patch skips frames that are not patch
+     * dumps, and stops at the first patch dump.
+     *
+     * @throws IOException if a file cannot be read or written
+     */
+    @Test
+    void readFirst() throws IOException {
+        PatchBank bank = createBank(1L);
+        Patch patch = new Patch();
+        patch.initialise();
+        bank.get(0, patch);
+        byte[] data = new byte[3 + 2 * Patch.DUMP_LENGTH];
+        data[0] = (byte) 0xF0;
+        data[1] = 0x01;
+        data[2] = (byte) 0xF7;
+        patch.serialise(data, 3);
+        bank.get(1, patch);
+        patch.serialise(data, 3 + Patch.DUMP_LENGTH);
+        Path path = directory.resolve("patches.syx");
+        Files.write(path, data);
+        PatchFileReader reader = new PatchFileReader();
+        Patch first = new Patch();
+        first.initialise();
+        assertTrue(reader.readFirst(path, first));
+        assertEquals(bank.getPatchName(0), first.getPatchName());
+        assertEquals(2L, reader.getFrames());
+        Files.write(path, new byte[] {(byte) 0xF0, 0x01, (byte) 0xF7});
+        assertFalse(reader.readFirst(path, first));
+    }
+
+    /**
+     * Test that copies of patches in other files, on other channels and in
+     * other slots, are skipped as duplicates across archives.
+     *
+     * @throws IOException if a file cannot be read or written
+     */
+    @Test
+    void readUnique() throws IOException {
+        PatchBank first = createBank(1L);
+        PatchBank second = createBank(2L);
+        write(directory.resolve("first.syx"), first, 0);
+        write(directory.resolve("copy.syx"), first, 5);
+        write(directory.resolve("second.syx"), second, 0);
+        LongHashSet fingerprints = new LongHashSet();
+        PatchBank bank = new PatchBank();
+        PatchFileReader reader = new PatchFileReader();
+        assertEquals(2 * PATCHES, reader.readUnique(directory, fingerprints, bank));
+        assertEquals(PATCHES, reader.getDuplicates());
+        assertEquals(2 * PATCHES, fingerprints.size());
+        assertEquals(0L, reader.readUnique(directory.resolve("second.syx"), fingerprints, bank));
+        assertEquals(2 * PATCHES, bank.size());
+    }
+
+    /**
+     * Test that the fingerprint ignores the channel, slot and trailing
+     * spaces of the name, but not a change to any parameter.
+     */
+    @Test
+    void fingerprint() {
+        Patch patch = new Patch();
+        patch.initialise();
+        createBank(3L).get(0, patch);
+        long fingerprint = patch.getFingerprint();
+        patch.setMidiChannel((patch.getMidiChannel() + 1) % 16);
+        patch.setPatchNumber((patch.getPatchNumber() + 1) % Patch.BANK_SIZE);
+        patch.setPatchName(patch.getPatchName() + "  ");
+        assertEquals(fingerprint, patch.getFingerprint());
+        for (Parameter parameter : Parameter.values()) {
+            int ccValue = parameter.getCcValue(patch);
+            parameter.setCcValue(patch, ccValue == 0 ? 127 : 0);
+            assertNotEquals(fingerprint, patch.getFingerprint(), parameter.name());
+            parameter.setCcValue(patch, ccValue);
+        }
+        assertEquals(fingerprint, patch.getFingerprint());
+    }
+}
@@ -0,0 +1,158 @@
+package net.chriswareham.jt4000;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the columnar index against a check of every patch.
+ */
+class PatchIndexTest {
+    /**
+     * The number of random queries run against each bank.
+     */
+    private static final int QUERIES = 500;
+
+    /**
+     * The parameters that can be queried.
+     */
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    /**
+     * Create a random query of between one and four parameters, each
+     * constrained to a random range that may reach past the values the
+     * parameter can have.
+     *
+     * @param random the source of random values
+     * @return the query
+     */
+    private static PatchQuery createQuery(final SplittableRandom random) {
+        PatchQuery query = new PatchQuery();
+        int conditions = 1 + random.nextInt(4);
+        for (int i = 0; i < conditions; ++i) {
+            Parameter parameter = PARAMETERS[random.nextInt(PARAMETERS.length)];
+            int highest = PatchBank.getHighestValue(parameter);
+            int minimum = random.nextInt(highest + 2);
+            int maximum = minimum + random.nextInt(highest + 2);
+            switch (random.nextInt(4)) {
+            case 0:
+                query.equal(parameter, minimum);
+                break;
+            case 1:
+                query.greaterThan(parameter, minimum);
+                break;
+            case 2:
+                query.lessThan(parameter, maximum);
+                break;
+            default:
+                query.between(parameter, minimum, maximum);
+                break;
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Find the patches that match a query by checking every patch.
+     *
+     * @param bank the bank
+     * @param query the query
+     * @return the indexes of the matching patches
+     */
+    private static BitSet filter(final PatchBank bank, final PatchQuery query) {
+        BitSet matches = new BitSet();
+        for (int patch = 0; patch < bank.size(); ++patch) {
+            boolean match = true;
+            for (Parameter parameter : PARAMETERS) {
+                int value = bank.getValue(patch, parameter);
+                match &= value >= query.getMinimum(parameter) && value <= query.getMaximum(parameter);
+            }
+            matches.set(patch, match);
+        }
+        return matches;
+    }
+
+    /**
+     * Check that an index answers random queries as a check of every patch
+     * does.
+     *
+     * @param index the index
+     * @param bank the bank indexed
+     * @param random the source of random values
+     */
+    private static void assertQueries(final PatchIndex index, final PatchBank bank, final SplittableRandom random) {
+        for (int i = 0; i < QUERIES; ++i) {
+            PatchQuery query = createQuery(random);
+            assertEquals(filter(bank, query), index.query(query), "query " + i);
+        }
+        assertEquals(filter(bank, new PatchQuery()), index.query(new PatchQuery()));
+    }
+
+    /**
+     * Test banks whose sizes fill the last word of a bitmap, leave it part
+     * filled, or leave it with a single patch.
+     */
+    @Test
+    void query() {
+        SplittableRandom random = new SplittableRandom(1L);
+        for (int size : new int[] {0, 1, 63, 64, 65, 1000}) {
+            PatchBank bank = new PatchGenerator(new PatchQuery()).generate(size, size);
+            PatchIndex index = new PatchIndex(bank);
+            assertEquals(size, index.size());
+            assertQueries(index, bank, random);
+        }
+    }
+
+    /**
+     * Test an index updated with patches added to a bank that has grown.
+     */
+    @Test
+    void update() {
+        SplittableRandom random = new SplittableRandom(2L);
+        PatchBank bank = new PatchBank(16);
+        PatchBank generated = new PatchGenerator(new PatchQuery()).generate(1500, 3L);
+        Patch patch = new Patch();
+        patch.initialise();
+        PatchIndex index = new PatchIndex(bank);
+        for (int size : new int[] {10, 64, 100, 700, 1500}) {
+            while (bank.size() < size) {
+                generated.get(bank.size(), patch);
+                bank.add(patch);
+            }
+            index.update(bank);
+            assertEquals(size, index.size());
+            assertQueries(index, bank, random);
+        }
+    }
+
+    /**
+     * Test that a patch with an enumerated value out of range fails to be
+     * indexed rather than being indexed under the wrong value, and that the
+     * patches indexed before it are left as they were.
+     */
+    @Test
+    void invalidValue() {
+        PatchBank generated = new PatchGenerator(new PatchQuery()).generate(100, 4L);
+        PatchBank bank = new PatchBank();
+        Patch patch = new Patch();
+        patch.initialise();
+        for (int i = 0; i < generated.size(); ++i) {
+            generated.get(i, patch);
+            bank.add(patch);
+        }
+        PatchIndex index = new PatchIndex(bank);
+        int added = bank.add(patch);
+        bank.setValue(added, Parameter.OSC1_WAVE, 9);
+        assertThrows(IllegalArgumentException.class, () -> index.update(bank));
+        assertThrows(IllegalArgumentException.class, () -> new PatchIndex(bank));
+        assertEquals(100, index.size());
+        PatchQuery query = new PatchQuery().equal(Parameter.OSC1_WAVE, 1);
+        BitSet expected = filter(bank, query);
+        expected.clear(added);
+        assertEquals(expected, index.query(query));
+    }
+}
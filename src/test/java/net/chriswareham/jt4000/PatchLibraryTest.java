@@ -0,0 +1,252 @@
+package net.chriswareham.jt4000;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests the reading and writing of patch library files, and the
+ * handling of stale indexes and corrupt files.
+ */
+class PatchLibraryTest {
+    /**
+     * The number of patches in the library.
+     */
+    private static final int PATCHES = 500;
+
+    /**
+     * The offset of the number of records in the header.
+     */
+    private static final int COUNT_OFFSET = 12;
+
+    /**
+     * The offset of the number of records the name index covers in the
+     * header.
+     */
+    private static final int INDEXED_OFFSET = 16;
+
+    /**
+     * The offset of the parameters in a record.
+     */
+    private static final int PARAMETERS_OFFSET = 11;
+
+    /**
+     * The directory the library is created in.
+     */
+    @TempDir
+    private Path directory;
+
+    /**
+     * The path of the library.
+     */
+    private Path path;
+
+    /**
+     * The patches written to the library.
+     */
+    private PatchBank bank;
+
+    /**
+     * Create a library of random patches, each named after its index in
+     * reverse order so that the name index is not the order of the records.
+     *
+     * @throws IOException if the library cannot be written
+     */
+    @BeforeEach
+    void createLibrary() throws IOException {
+        path = directory.resolve("patches.jtl");
+        bank = new PatchGenerator(new PatchQuery()).generate(PATCHES, 1L);
+        for (int i = 0; i < bank.size(); ++i) {
+            bank.setPatchName(i, getPatchName(bank.size() - i));
+        }
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            library.append(bank);
+        }
+    }
+
+    /**
+     * Get the name of a test patch.
+     *
+     * @param number the number of the patch
+     * @return the name of the patch
+     */
+    private static String getPatchName(final int number) {
+        return String.format("P%05d", number);
+    }
+
+    /**
+     * Check that every patch in the bank is in a library and is found by
+     * name.
+     *
+     * @param library the library
+     */
+    private void assertPatches(final PatchLibrary library) {
+        assertEquals(bank.getRecords(), library.getPatches().getRecords().limit(bank.size() * PatchBank.RECORD_LENGTH));
+        for (int i = 0; i < bank.size(); ++i) {
+            assertEquals(i, library.find(bank.getPatchName(i)), bank.getPatchName(i));
+        }
+    }
+
+    /**
+     * Overwrite an int in the file.
+     *
+     * @param position the position of the int
+     * @param value the value
+     * @throws IOException if the file cannot be written
+     */
+    private void writeInt(final long position, final int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), position);
+        }
+    }
+
+    /**
+     * Overwrite a byte of a record in the file.
+     *
+     * @param index the index of the record
+     * @param offset the offset of the byte in the record
+     * @param value the value
+     * @throws IOException if the file cannot be written
+     */
+    private void writeRecordByte(final int index, final int offset, final int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) value}), PatchLibrary.HEADER_LENGTH + (long) index * PatchBank.RECORD_LENGTH + offset);
+        }
+    }
+
+    /**
+     * Test that a library reopened holds the patches written to it.
+     *
+     * @throws IOException if the library cannot be read
+     */
+    @Test
+    void roundTrip() throws IOException {
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertEquals(PATCHES, library.size());
+            assertPatches(library);
+            assertEquals(-1, library.find("Missing"));
+        }
+    }
+
+    /**
+     * Test that patches appended to a reopened library are found, both
+     * before and after the name index is merged.
+     *
+     * @throws IOException if the library cannot be read or written
+     */
+    @Test
+    void append() throws IOException {
+        Patch patch = new Patch();
+        patch.initialise();
+        patch.setPatchName(getPatchName(0));
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertEquals(PATCHES, library.append(patch));
+            assertEquals(PATCHES, library.find(getPatchName(0)));
+            library.flush();
+            assertEquals(PATCHES, library.find(getPatchName(0)));
+        }
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertEquals(PATCHES + 1, library.size());
+            assertPatches(library);
+            assertEquals(PATCHES, library.find(getPatchName(0)));
+        }
+    }
+
+    /**
+     * Test that a library whose name index was left stale, as it is if the
+     * library is not closed after patches are appended, has its index
+     * rebuilt when it is opened.
+     *
+     * @throws IOException if the library cannot be read
+     */
+    @Test
+    void staleIndex() throws IOException {
+        writeInt(INDEXED_OFFSET, 0);
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertPatches(library);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(PatchLibrary.HEADER_LENGTH);
+            channel.read(header, 0L);
+            assertEquals(PATCHES, header.getInt(INDEXED_OFFSET));
+        }
+    }
+
+    /**
+     * Test that a name index that names a record that does not exist, or
+     * names a record twice, is rebuilt when the library is opened.
+     *
+     * @throws IOException if the library cannot be read
+     */
+    @Test
+    void corruptIndex() throws IOException {
+        long index = PatchLibrary.HEADER_LENGTH + (long) PATCHES * PatchBank.RECORD_LENGTH;
+        writeInt(index, PATCHES);
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertPatches(library);
+        }
+        writeInt(index, 0);
+        writeInt(index + Integer.BYTES, 0);
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertPatches(library);
+        }
+    }
+
+    /**
+     * Test that a library with a record holding an invalid value fails to
+     * open.
+     *
+     * @throws IOException if the library cannot be written
+     */
+    @Test
+    void corruptRecord() throws IOException {
+        writeRecordByte(7, PARAMETERS_OFFSET + Parameter.OSC1_WAVE.ordinal(), Osc1Wave.values().length);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeRecordByte(7, PARAMETERS_OFFSET + Parameter.OSC1_WAVE.ordinal(), 0);
+        writeRecordByte(8, PARAMETERS_OFFSET + Parameter.VCF_CUTOFF.ordinal(), 100);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeRecordByte(8, PARAMETERS_OFFSET + Parameter.VCF_CUTOFF.ordinal(), 99);
+        writeRecordByte(9, 2, 0x80);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeRecordByte(9, 2, 'P');
+        try (PatchLibrary library = new PatchLibrary(path)) {
+            assertEquals(PATCHES, library.size());
+        }
+    }
+
+    /**
+     * Test that a file with a corrupt header, or that is truncated, fails to
+     * open.
+     *
+     * @throws IOException if the library cannot be written
+     */
+    @Test
+    void corruptHeader() throws IOException {
+        writeInt(COUNT_OFFSET, -1);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeInt(COUNT_OFFSET, PATCHES + 1);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeInt(COUNT_OFFSET, PATCHES);
+        writeInt(INDEXED_OFFSET, PATCHES + 1);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeInt(INDEXED_OFFSET, PATCHES);
+        writeInt(0L, 0);
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        writeInt(0L, PatchLibrary.MAGIC);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(PatchLibrary.HEADER_LENGTH + (long) PATCHES * PatchBank.RECORD_LENGTH);
+        }
+        assertThrows(IOException.class, () -> new PatchLibrary(path).close());
+        assertEquals(PatchLibrary.HEADER_LENGTH + (long) PATCHES * PatchBank.RECORD_LENGTH, Files.size(path));
+    }
+}
@@ -0,0 +1,121 @@
+package net.chriswareham.jt4000;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the encoding and decoding of patch dumps.
+ */
+class PatchTest {
+    /**
+     * The number of random patches round-tripped.
+     */
+    private static final int PATCHES = 1000;
+
+    /**
+     * The offset of the checksum in a patch dump.
+     */
+    private static final int CHECKSUM_OFFSET = Patch.DUMP_LENGTH - 2;
+
+    /**
+     * Create a patch with a random value for every parameter.
+     *
+     * @param seed the seed of the random number generator
+     * @return the patch
+     */
+    private static Patch createPatch(final long seed) {
+        Patch patch = new Patch();
+        patch.initialise();
+        new PatchGenerator(new PatchQuery()).generate(1, seed).get(0, patch);
+        patch.setMidiChannel(5);
+        patch.setPatchNumber(31);
+        patch.setPatchName("Test Bass");
+        return patch;
+    }
+
+    /**
+     * Encode a patch as a patch dump.
+     *
+     * @param patch the patch
+     * @return the patch dump
+     */
+    private static byte[] serialise(final Patch patch) {
+        byte[] data = new byte[Patch.DUMP_LENGTH];
+        patch.serialise(data, 0);
+        return data;
+    }
+
+    /**
+     * Test that decoding the dump of a patch gives the same patch.
+     *
+     * @throws InvalidMidiDataException if a dump is rejected
+     */
+    @Test
+    void roundTrip() throws InvalidMidiDataException {
+        PatchBank bank = new PatchGenerator(new PatchQuery()).generate(PATCHES, 1L);
+        Patch patch = new Patch();
+        patch.initialise();
+        Patch decoded = new Patch();
+        decoded.initialise();
+        for (int i = 0; i < bank.size(); ++i) {
+            bank.get(i, patch);
+            patch.setPatchName("Patch " + i);
+            byte[] data = serialise(patch);
+            decoded.deserialise(data, 0, data.length);
+            assertArrayEquals(data, serialise(decoded), "patch " + i);
+            assertEquals(patch.getFingerprint(), decoded.getFingerprint(), "patch " + i);
+            assertEquals(patch.getPatchName(), decoded.getPatchName(), "patch " + i);
+        }
+    }
+
+    /**
+     * Test that a dump with any one byte corrupted is rejected, and leaves
+     * the patch it is decoded into unchanged.
+     */
+    @Test
+    void corruptByte() {
+        byte[] original = serialise(createPatch(2L));
+        Patch patch = createPatch(3L);
+        byte[] unchanged = serialise(patch);
+        for (int i = 0; i < original.length; ++i) {
+            byte[] data = original.clone();
+            data[i] ^= 0x01;
+            assertThrows(InvalidMidiDataException.class, () -> patch.deserialise(data, 0, data.length), "byte " + i);
+            assertArrayEquals(unchanged, serialise(patch), "byte " + i);
+        }
+    }
+
+    /**
+     * Test that a dump with a valid checksum but a patch number outside the
+     * bank is rejected.
+     */
+    @Test
+    void patchNumberOutOfRange() {
+        byte[] data = serialise(createPatch(4L));
+        int difference = Patch.BANK_SIZE - data[Patch.NUMBER_OFFSET];
+        data[Patch.NUMBER_OFFSET] = (byte) Patch.BANK_SIZE;
+        data[CHECKSUM_OFFSET] = (byte) (data[CHECKSUM_OFFSET] - difference & 0x7F);
+        Patch patch = new Patch();
+        patch.initialise();
+        InvalidMidiDataException exception = assertThrows(InvalidMidiDataException.class, () -> patch.deserialise(data, 0, data.length));
+        assertEquals("Patch dump has an invalid patch number " + Patch.BANK_SIZE, exception.getMessage());
+    }
+
+    /**
+     * Test that a dump of the wrong length, or that runs past the end of its
+     * buffer, is rejected.
+     */
+    @Test
+    void invalidLength() {
+        byte[] data = serialise(createPatch(5L));
+        Patch patch = new Patch();
+        patch.initialise();
+        assertThrows(InvalidMidiDataException.class, () -> patch.deserialise(data, 0, data.length - 1));
+        assertThrows(InvalidMidiDataException.class, () -> patch.deserialise(data, 1, data.length));
+    }
+}
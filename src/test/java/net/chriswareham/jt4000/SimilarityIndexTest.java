@@ -0,0 +1,158 @@
+package net.chriswareham.jt4000;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the similarity index against a scan of every patch.
+ */
+class SimilarityIndexTest {
+    /**
+     * The number of patches in the bank searched.
+     */
+    private static final int PATCHES = 2000;
+
+    /**
+     * The number of patches found by each search.
+     */
+    private static final int COUNT = 10;
+
+    /**
+     * Get the distances of the patches nearest a patch in the index by
+     * scanning every other patch.
+     *
+     * @param index the index
+     * @param patch the index of the patch in the bank
+     * @param count the number of patches to find
+     * @return the distances of the patches found, nearest first
+     */
+    private static float[] scan(final SimilarityIndex index, final int patch, final int count) {
+        float[] distances = new float[index.size() - 1];
+        for (int other = 0, i = 0; other < index.size(); ++other) {
+            if (other != patch) {
+                distances[i++] = index.distance(patch, other);
+            }
+        }
+        Arrays.sort(distances);
+        return Arrays.copyOf(distances, Math.min(Math.max(count, 0), distances.length));
+    }
+
+    /**
+     * Get the distances of patches found by the index from a patch.
+     *
+     * @param index the index
+     * @param patch the index of the patch in the bank
+     * @param found the indexes of the patches found
+     * @return the distances of the patches found
+     */
+    private static float[] distances(final SimilarityIndex index, final int patch, final int[] found) {
+        float[] distances = new float[found.length];
+        for (int i = 0; i < found.length; ++i) {
+            distances[i] = index.distance(patch, found[i]);
+        }
+        return distances;
+    }
+
+    /**
+     * Check that the index finds the nearest patches to every patch. The
+     * distances are compared rather than the patches, as patches at the same
+     * distance can be found in any order.
+     *
+     * @param index the index
+     * @param count the number of patches to find
+     */
+    private static void assertNearest(final SimilarityIndex index, final int count) {
+        for (int patch = 0; patch < index.size(); ++patch) {
+            int[] found = index.findSimilar(patch, count);
+            for (int other : found) {
+                assertNotEquals(patch, other, "patch " + patch + " found itself");
+            }
+            assertArrayEquals(scan(index, patch, count), distances(index, patch, found), "patch " + patch);
+        }
+    }
+
+    /**
+     * Test that the patches found with equal weights are the nearest.
+     */
+    @Test
+    void findSimilar() {
+        PatchBank bank = new PatchGenerator(new PatchQuery()).generate(PATCHES, 1L);
+        assertNearest(new SimilarityIndex(bank), COUNT);
+    }
+
+    /**
+     * Test that the patches found with random weights, some of them zero,
+     * are the nearest.
+     */
+    @Test
+    void findSimilarWeighted() {
+        PatchBank bank = new PatchGenerator(new PatchQuery()).generate(PATCHES, 2L);
+        SplittableRandom random = new SplittableRandom(3L);
+        Map<Parameter, Float> weights = new EnumMap<>(Parameter.class);
+        for (Parameter parameter : Parameter.values()) {
+            weights.put(parameter, random.nextInt(4) == 0 ? 0.0f : (float) random.nextDouble(0.0, 5.0));
+        }
+        assertNearest(new SimilarityIndex(bank, weights), COUNT);
+    }
+
+    /**
+     * Test that a patch that is not in the bank finds the nearest patches in
+     * it. The distances are measured by an index of the bank with the patch
+     * added after every other patch.
+     */
+    @Test
+    void findSimilarPatch() {
+        PatchBank bank = new PatchGenerator(new PatchQuery()).generate(PATCHES + 1, 4L);
+        PatchBank indexed = new PatchBank(PATCHES);
+        Patch patch = new Patch();
+        patch.initialise();
+        for (int i = 0; i < PATCHES; ++i) {
+            bank.get(i, patch);
+            indexed.add(patch);
+        }
+        bank.get(PATCHES, patch);
+        int[] found = new SimilarityIndex(indexed).findSimilar(patch, COUNT);
+        SimilarityIndex all = new SimilarityIndex(bank);
+        assertArrayEquals(scan(all, PATCHES, COUNT), distances(all, PATCHES, found));
+    }
+
+    /**
+     * Test that banks of one, two and three patches, which build trees of a
+     * vantage point with at most one patch each side, find every other patch
+     * for any count.
+     */
+    @Test
+    void smallBanks() {
+        for (int size = 1; size <= 3; ++size) {
+            PatchBank bank = new PatchGenerator(new PatchQuery()).generate(size, size);
+            SimilarityIndex index = new SimilarityIndex(bank);
+            assertEquals(size, index.size());
+            for (int count = 0; count <= 4; ++count) {
+                assertNearest(index, count);
+                for (int patch = 0; patch < size; ++patch) {
+                    assertEquals(Math.min(count, size - 1), index.findSimilar(patch, count).length, "size " + size + " count " + count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a weight that would break the metric is rejected.
+     */
+    @Test
+    void invalidWeight() {
+        PatchBank bank = new PatchGenerator(new PatchQuery()).generate(10, 5L);
+        for (float weight : new float[] {-1.0f, Float.NaN, Float.POSITIVE_INFINITY}) {
+            assertThrows(IllegalArgumentException.class, () -> new SimilarityIndex(bank, Map.of(Parameter.VCF_CUTOFF, weight)), "weight " + weight);
+        }
+    }
+}